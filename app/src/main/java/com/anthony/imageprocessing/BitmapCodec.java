@@ -0,0 +1,65 @@
+package com.anthony.imageprocessing;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import com.anthony.imageprocessing.core.BufferPool;
+import com.anthony.imageprocessing.core.ImageCodec;
+import com.anthony.imageprocessing.core.Raster;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * {@link ImageCodec} for the formats android decodes. Files are written as PNG
+ * when their name ends in .png and as JPEG otherwise.
+ */
+public class BitmapCodec implements ImageCodec {
+
+    private static final int JPEG_QUALITY = 90;
+
+    private final Bitmap.Config mConfig;
+
+    /**
+     * @param config the config of the bitmaps encoded
+     */
+    public BitmapCodec(Bitmap.Config config) {
+        mConfig = config;
+    }
+
+    @Override
+    public Raster decode(File file, BufferPool pool) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getPath(), options);
+        if (bitmap == null) {
+            throw new IOException("Could not decode " + file);
+        }
+        try {
+            Raster raster = pool.acquire(bitmap.getWidth(), bitmap.getHeight());
+            RasterBitmaps.readPixels(bitmap, raster);
+            return raster;
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    @Override
+    public void encode(Raster raster, File file) throws IOException {
+        Bitmap bitmap = RasterBitmaps.toBitmap(raster, mConfig);
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            boolean png = file.getName().toLowerCase().endsWith(".png");
+            if (!bitmap.compress(png ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out)) {
+                throw new IOException("Could not encode " + file);
+            }
+        } finally {
+            out.close();
+            bitmap.recycle();
+        }
+    }
+
+}
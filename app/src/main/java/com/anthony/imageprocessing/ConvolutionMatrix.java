@@ -1,7 +1,10 @@
 package com.anthony.imageprocessing;
 
 import android.graphics.Bitmap;
-import android.graphics.Color;
+
+import com.anthony.imageprocessing.core.ConvolutionEngine;
+import com.anthony.imageprocessing.core.Effect;
+import com.anthony.imageprocessing.core.Raster;
 
 /**
  * Created by anthonyliu on 15/9/13.
@@ -11,87 +14,82 @@ import android.graphics.Color;
  */
 public class ConvolutionMatrix
 {
+    /** Size of the classic 3x3 kernels */
     public static final int SIZE = 3;
 
     public double[][] Matrix;
     public double Factor = 1;
     public double Offset = 1;
 
+    /**
+     * @param size width and height of the kernel, must be odd
+     */
     public ConvolutionMatrix(int size) {
+        if (size <= 0 || size % 2 == 0) {
+            throw new IllegalArgumentException("Kernel size must be odd and positive, was " + size);
+        }
         Matrix = new double[size][size];
     }
 
+    public int getSize() {
+        return Matrix.length;
+    }
+
     public void setAll(double value) {
-        for (int x = 0; x < SIZE; ++x) {
-            for (int y = 0; y < SIZE; ++y) {
+        for (int x = 0; x < Matrix.length; ++x) {
+            for (int y = 0; y < Matrix.length; ++y) {
                 Matrix[x][y] = value;
             }
         }
     }
 
     public void applyConfig(double[][] config) {
-        for(int x = 0; x < SIZE; ++x) {
-            for(int y = 0; y < SIZE; ++y) {
+        if (config.length != Matrix.length) {
+            throw new IllegalArgumentException("Expected a " + Matrix.length + "x" + Matrix.length + " config");
+        }
+        for(int x = 0; x < Matrix.length; ++x) {
+            for(int y = 0; y < Matrix.length; ++y) {
                 Matrix[x][y] = config[x][y];
             }
         }
     }
 
-    public static Bitmap computeConvolution3x3(Bitmap src, ConvolutionMatrix matrix) {
-        int width = src.getWidth();
-        int height = src.getHeight();
-        Bitmap result = Bitmap.createBitmap(width, height, src.getConfig());
-
-        int A, R, G, B;
-        int sumR, sumG, sumB;
-        int[][] pixels = new int[SIZE][SIZE];
-
-        for(int y = 0; y < height - 2; ++y) {
-            for(int x = 0; x < width - 2; ++x) {
-
-                // get pixel matrix
-                for(int i = 0; i < SIZE; ++i) {
-                    for(int j = 0; j < SIZE; ++j) {
-                        pixels[i][j] = src.getPixel(x + i, y + j);
-                    }
-                }
-
-                // get alpha of center pixel
-                A = Color.alpha(pixels[1][1]);
-
-                // init color sum
-                sumR = sumG = sumB = 0;
-
-                // get sum of RGB on matrix
-                for(int i = 0; i < SIZE; ++i) {
-                    for(int j = 0; j < SIZE; ++j) {
-                        sumR += (Color.red(pixels[i][j]) * matrix.Matrix[i][j]);
-                        sumG += (Color.green(pixels[i][j]) * matrix.Matrix[i][j]);
-                        sumB += (Color.blue(pixels[i][j]) * matrix.Matrix[i][j]);
-                    }
-                }
+    /**
+     * Compile the current Matrix, Factor and Offset into integer weights, with
+     * the division by Factor turned into a multiply and shift. Later changes to
+     * the fields do not affect the result. Pixels are within 1 of the double
+     * precision sum; kernels that cannot be compiled that closely are rejected.
+     *
+     * @throws IllegalArgumentException if Factor is 0, a weight or Factor is not
+     *                                  finite, or the integer sums could overflow
+     *                                  or not get within 1
+     */
+    public ConvolutionEngine compile() {
+        return new ConvolutionEngine(Matrix, Factor, Offset);
+    }
 
-                // get final Red
-                R = (int)(sumR / matrix.Factor + matrix.Offset);
-                if(R < 0) { R = 0; }
-                else if(R > 255) { R = 255; }
+    /**
+     * @return the effect computing this convolution
+     */
+    public Effect toEffect() {
+        return compile();
+    }
 
-                // get final Green
-                G = (int)(sumG / matrix.Factor + matrix.Offset);
-                if(G < 0) { G = 0; }
-                else if(G > 255) { G = 255; }
+    /**
+     * @deprecated works for any kernel size, use {@link #computeConvolution(Bitmap, ConvolutionMatrix)}
+     */
+    @Deprecated
+    public static Bitmap computeConvolution3x3(Bitmap src, ConvolutionMatrix matrix) {
+        return computeConvolution(src, matrix);
+    }
 
-                // get final Blue
-                B = (int)(sumB / matrix.Factor + matrix.Offset);
-                if(B < 0) { B = 0; }
-                else if(B > 255) { B = 255; }
+    public static Bitmap computeConvolution(Bitmap src, ConvolutionMatrix matrix) {
+        Raster in = RasterBitmaps.toRaster(src);
+        Raster out = in.sameSize();
 
-                // apply new pixel
-                result.setPixel(x + 1, y + 1, Color.argb(A, R, G, B));
-            }
-        }
+        matrix.toEffect().apply(in, out, 0, in.height);
 
         // final image
-        return result;
+        return RasterBitmaps.toBitmap(out, src.getConfig());
     }
 }
\ No newline at end of file
@@ -0,0 +1,283 @@
+package com.anthony.imageprocessing;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import com.anthony.imageprocessing.core.Raster;
+import com.anthony.imageprocessing.core.RasterFile;
+import com.anthony.imageprocessing.core.Resampler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps decoded images as {@link RasterFile}s, so picking the same photo again
+ * maps its pixels instead of decoding the JPEG a second time.
+ * <p/>
+ * Entries are named after the photo's path, size and modification time, so an
+ * edited photo is decoded again, and after the decoded size for photos decoded
+ * to fit the screen. Writing an entry deletes those of older versions of the
+ * same photo. Entries are kept up to a total size, least recently used first
+ * out, like the disk tier of {@link com.anthony.imageprocessing.core.ResultCache}.
+ * <p/>
+ * Pixels move between bitmaps and entries a row at a time, so no full size int
+ * array is made on the way.
+ */
+public class DecodeCache {
+
+    private static final String PREFIX = "decode-";
+    private static final String SUFFIX = ".raster";
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+
+    // entry files, least recently used first
+    private final LinkedHashMap<String, File> mEntries = new LinkedHashMap<String, File>(16, 0.75f, true);
+    private long mBytes;
+
+    /**
+     * @param maxBytes how much the entries may take up together
+     */
+    public DecodeCache(File directory, long maxBytes) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+        index();
+    }
+
+    /**
+     * @return the photo at path as an ARGB_8888 bitmap, or null if it cannot be decoded
+     */
+    public Bitmap decode(String path) {
+        File entry = entry(path, "");
+        Bitmap bitmap = read(entry);
+        if (bitmap != null) {
+            return bitmap;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        bitmap = BitmapFactory.decodeFile(path, options);
+        if (bitmap != null) {
+            save(path, bitmap, entry);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Decode the photo at path no larger than needed to show it in maxWidth x
+     * maxHeight: the decoder skips whole powers of two of the pixels with
+     * inSampleSize, and what is left is area averaged down to fit.
+     *
+     * @return the photo at path as an ARGB_8888 bitmap that fits in maxWidth x
+     * maxHeight with its aspect ratio, or null if it cannot be decoded
+     */
+    public Bitmap decode(String path, int maxWidth, int maxHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        int[] size = Resampler.fit(options.outWidth, options.outHeight, maxWidth, maxHeight);
+        int width = size[0];
+        int height = size[1];
+        if (width == options.outWidth && height == options.outHeight) {
+            return decode(path);
+        }
+
+        File entry = entry(path, "-" + width + "x" + height);
+        Bitmap bitmap = read(entry);
+        if (bitmap != null) {
+            return bitmap;
+        }
+
+        // the largest power of two that still leaves at least the target size
+        int sampleSize = 1;
+        while (options.outWidth / (2 * sampleSize) >= width && options.outHeight / (2 * sampleSize) >= height) {
+            sampleSize *= 2;
+        }
+        options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inSampleSize = sampleSize;
+        bitmap = BitmapFactory.decodeFile(path, options);
+        if (bitmap == null) {
+            return null;
+        }
+
+        if (bitmap.getWidth() != width || bitmap.getHeight() != height) {
+            Raster raster = Resampler.resize(RasterBitmaps.toRaster(bitmap), width, height, Resampler.FILTER_AREA);
+            bitmap.recycle();
+            bitmap = RasterBitmaps.toBitmap(raster, Bitmap.Config.ARGB_8888);
+        }
+        save(path, bitmap, entry);
+        return bitmap;
+    }
+
+    /**
+     * @return how much the entries take up together
+     */
+    public synchronized long getBytes() {
+        return mBytes;
+    }
+
+    /**
+     * Delete every entry.
+     */
+    public synchronized void clear() {
+        for (File entry : mEntries.values()) {
+            entry.delete();
+        }
+        mEntries.clear();
+        mBytes = 0;
+    }
+
+    private File entry(String path, String suffix) {
+        return new File(mDirectory, photoPrefix(path) + version(path) + suffix + SUFFIX);
+    }
+
+    private static String photoPrefix(String path) {
+        return PREFIX + Integer.toHexString(path.hashCode()) + "-";
+    }
+
+    private static String version(String path) {
+        File photo = new File(path);
+        return Long.toHexString(photo.length()) + "-" + Long.toHexString(photo.lastModified());
+    }
+
+    /**
+     * @return the bitmap kept in entry, or null if there is none
+     */
+    private Bitmap read(File entry) {
+        synchronized (this) {
+            if (mEntries.get(entry.getName()) == null) {
+                return null;
+            }
+        }
+        try {
+            RasterFile file = RasterFile.open(entry, false);
+            try {
+                int width = file.getWidth();
+                Bitmap bitmap = Bitmap.createBitmap(width, file.getHeight(), Bitmap.Config.ARGB_8888);
+                IntBuffer pixels = file.pixels();
+                int[] row = new int[width];
+                for (int y = 0; y < file.getHeight(); ++y) {
+                    pixels.position(y * file.getStride());
+                    pixels.get(row);
+                    bitmap.setPixels(row, 0, width, 0, y, width, 1);
+                }
+                // so the order survives a restart
+                entry.setLastModified(System.currentTimeMillis());
+                return bitmap;
+            } finally {
+                file.close();
+            }
+        } catch (IOException e) {
+            // unreadable entry, fall back to decoding
+            remove(entry);
+            return null;
+        }
+    }
+
+    private void save(String path, Bitmap bitmap, File entry) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        if (4L * width * height + RasterFile.HEADER_SIZE > mMaxBytes) {
+            return;
+        }
+        removeOtherVersions(path);
+        try {
+            RasterFile file = RasterFile.create(entry, width, height);
+            try {
+                IntBuffer pixels = file.pixels();
+                int[] row = new int[width];
+                for (int y = 0; y < height; ++y) {
+                    bitmap.getPixels(row, 0, width, 0, y, width, 1);
+                    pixels.put(row);
+                }
+            } finally {
+                file.close();
+            }
+        } catch (IOException e) {
+            // the cache is only an optimization
+            entry.delete();
+            return;
+        }
+        synchronized (this) {
+            add(entry);
+            trim();
+        }
+    }
+
+    /**
+     * Delete the entries of path whose size or modification time is not the photo's.
+     */
+    private synchronized void removeOtherVersions(String path) {
+        String prefix = photoPrefix(path);
+        String current = prefix + version(path);
+        Iterator<Map.Entry<String, File>> entries = mEntries.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, File> entry = entries.next();
+            String name = entry.getKey();
+            if (name.startsWith(prefix) && !name.equals(current + SUFFIX) && !name.startsWith(current + "-")) {
+                entries.remove();
+                mBytes -= entry.getValue().length();
+                entry.getValue().delete();
+            }
+        }
+    }
+
+    private synchronized void remove(File entry) {
+        if (mEntries.remove(entry.getName()) != null) {
+            mBytes -= entry.length();
+        }
+        entry.delete();
+    }
+
+    private void add(File entry) {
+        File previous = mEntries.put(entry.getName(), entry);
+        if (previous != null) {
+            mBytes -= previous.length();
+        }
+        mBytes += entry.length();
+    }
+
+    private void trim() {
+        Iterator<File> eldest = mEntries.values().iterator();
+        while (mBytes > mMaxBytes && eldest.hasNext()) {
+            File old = eldest.next();
+            eldest.remove();
+            mBytes -= old.length();
+            old.delete();
+        }
+    }
+
+    private synchronized void index() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        // least recently used first, entries are touched whenever they are read
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long ta = a.lastModified();
+                long tb = b.lastModified();
+                return ta < tb ? -1 : (ta == tb ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(PREFIX) && name.endsWith(SUFFIX)) {
+                add(file);
+            }
+        }
+        trim();
+    }
+
+}
@@ -0,0 +1,120 @@
+package com.anthony.imageprocessing;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.anthony.imageprocessing.core.Cancellation;
+import com.anthony.imageprocessing.core.EffectScheduler;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * An effect run by an {@link EffectScheduler}, with the callbacks of an
+ * AsyncTask on the main thread.
+ * <p/>
+ * Unlike an AsyncTask it can be cancelled and superseded: once cancelled,
+ * neither progress nor the result reach the main thread any more, even if
+ * they were already on their way, so a stale result never replaces a newer one.
+ * Unlike an AsyncTask, an exception in the background reaches {@link #onError(Throwable)}
+ * instead of ending the app.
+ */
+public abstract class EffectTask implements EffectScheduler.Job {
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private Cancellation mCancellation;
+
+    /**
+     * Submit the task, cancelling the scheduler's earlier tasks of group. Call on the main thread.
+     */
+    public final void execute(EffectScheduler scheduler, String group, int priority) {
+        onPreExecute();
+        mCancellation = scheduler.submit(group, priority, this);
+    }
+
+    public final void cancel() {
+        if (mCancellation != null) {
+            mCancellation.cancel();
+        }
+    }
+
+    public final boolean isCancelled() {
+        return mCancellation != null && mCancellation.isCancelled();
+    }
+
+    @Override
+    public final void run(final Cancellation cancellation) {
+        Bitmap result;
+        try {
+            result = doInBackground(cancellation);
+        } catch (CancellationException e) {
+            result = null;
+        }
+
+        final Bitmap bitmap = result;
+        sMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (cancellation.isCancelled()) {
+                    onCancelled();
+                } else {
+                    onPostExecute(bitmap);
+                }
+            }
+        });
+    }
+
+    @Override
+    public final void onFailure(final Throwable e) {
+        sMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (isCancelled()) {
+                    onCancelled();
+                } else {
+                    onError(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Show values on the main thread through {@link #onProgressUpdate(Bitmap...)}, unless cancelled by then.
+     */
+    protected final void publishProgress(final Bitmap... values) {
+        sMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!isCancelled()) {
+                    onProgressUpdate(values);
+                }
+            }
+        });
+    }
+
+    protected void onPreExecute() {
+    }
+
+    /**
+     * Compute the result on the scheduler's thread, checking cancellation now and then.
+     */
+    protected abstract Bitmap doInBackground(Cancellation cancellation);
+
+    protected void onProgressUpdate(Bitmap... values) {
+    }
+
+    protected void onPostExecute(Bitmap result) {
+    }
+
+    protected void onCancelled() {
+    }
+
+    /**
+     * Called on the main thread instead of {@link #onPostExecute(Bitmap)} when
+     * {@link #doInBackground(Cancellation)} threw, unless cancelled by then.
+     */
+    protected void onError(Throwable e) {
+    }
+
+}
@@ -1,8 +1,42 @@
 package com.anthony.imageprocessing;
 
 import android.graphics.Bitmap;
-import android.graphics.Color;
 
+import com.anthony.imageprocessing.core.BatchProcessor;
+import com.anthony.imageprocessing.core.BatchReport;
+import com.anthony.imageprocessing.core.BoxBlurEffect;
+import com.anthony.imageprocessing.core.BufferPool;
+import com.anthony.imageprocessing.core.Cancellation;
+import com.anthony.imageprocessing.core.ChannelLut;
+import com.anthony.imageprocessing.core.ColorMapEffect;
+import com.anthony.imageprocessing.core.ColorReplaceEffect;
+import com.anthony.imageprocessing.core.Effect;
+import com.anthony.imageprocessing.core.EffectPipeline;
+import com.anthony.imageprocessing.core.EditSession;
+import com.anthony.imageprocessing.core.GaussianBlurEffect;
+import com.anthony.imageprocessing.core.HsvAdjustEffect;
+import com.anthony.imageprocessing.core.HistogramMetrics;
+import com.anthony.imageprocessing.core.HueEffect;
+import com.anthony.imageprocessing.core.ImageStatistics;
+import com.anthony.imageprocessing.core.Metrics;
+import com.anthony.imageprocessing.core.ParallelExecutor;
+import com.anthony.imageprocessing.core.PixelFormats;
+import com.anthony.imageprocessing.core.PointEffect;
+import com.anthony.imageprocessing.core.ProgressiveProcessor;
+import com.anthony.imageprocessing.core.Raster;
+import com.anthony.imageprocessing.core.ResultCache;
+import com.anthony.imageprocessing.core.Rgb565Effect;
+import com.anthony.imageprocessing.core.Rgb565Lut;
+import com.anthony.imageprocessing.core.Rgb565Raster;
+import com.anthony.imageprocessing.core.SnowEffect;
+import com.anthony.imageprocessing.core.TileSink;
+import com.anthony.imageprocessing.core.TileSource;
+import com.anthony.imageprocessing.core.TiledProcessor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 
 /**
@@ -10,23 +44,229 @@ import java.util.Random;
  */
 public class ImageProcessor {
 
-    Bitmap mImage;
+    // fraction of the darkest and of the brightest pixels auto levels ignores
+    private static final double AUTO_LEVELS_CLIP = 0.005;
+    private static final double SMOOTH_OFFSET = 1;
+
+    // the image's pixels, extracted once in setImage and reused by every effect;
+    // for an RGB_565 image only widened once an effect needs ARGB, see source()
+    Raster mSource;
+    Bitmap.Config mConfig;
+    // the pixels of an RGB_565 image as they are, null for other configs
+    Rgb565Raster mSource565;
+    private boolean mSourceStale;
+    // reused by every RGB_565 effect, the result is copied into a bitmap anyway
+    private Rgb565Raster mResult565;
+    // the bitmap the pixels were read from, to skip reading it again
+    private Bitmap mImage;
+    private int mImageGeneration;
+    // intermediates of the image kept for the effects writing into a given bitmap
+    private EditSession mSession;
+
+    private final BufferPool mPool = BufferPool.getDefault();
+    private final Random mRandom = new Random();
+    private ParallelExecutor mExecutor;
+
+    private ResultCache mCache;
+    private ProgressListener mListener;
+    private Cancellation mCancellation;
+    private volatile Metrics mMetrics = Metrics.NONE;
+    // fingerprint of the image for the cache, computed on first use after setImage
+    private long mFingerprint;
+    private boolean mFingerprinted;
+    // histograms of the image, gathered on first use after setImage
+    private ImageStatistics mStatistics;
 
     public ImageProcessor(final Bitmap image) {
         if (image != null) {
-            mImage = image.copy(image.getConfig(), image.isMutable());
+            setImage(image);
         }
     }
 
+    /**
+     * Use image for the following effects. Setting the same, unchanged bitmap
+     * again keeps its pixels and everything computed from them.
+     */
     public void setImage(final Bitmap image) {
-        mImage = image.copy(image.getConfig(), image.isMutable());
+        if (image == mImage && image.getGenerationId() == mImageGeneration) {
+            return;
+        }
+        if (mSession != null) {
+            mSession.release();
+            mSession = null;
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        mConfig = image.getConfig();
+        if (mConfig == Bitmap.Config.RGB_565) {
+            if (mSource565 == null || mSource565.width != width || mSource565.height != height) {
+                mSource565 = Rgb565Raster.create(width, height);
+            }
+            readPixels(image, mSource565);
+            mSourceStale = true;
+        } else {
+            if (mSource == null || mSource.width != width || mSource.height != height) {
+                mPool.release(mSource);
+                mSource = mPool.acquire(width, height);
+            }
+            readPixels(image, mSource);
+            mSource565 = null;
+            mSourceStale = false;
+        }
+        mImage = image;
+        mImageGeneration = image.getGenerationId();
+        synchronized (this) {
+            mFingerprinted = false;
+            mStatistics = null;
+        }
     }
 
     public Bitmap getImage() {
-        if (mImage == null) {
+        if (!hasImage()) {
             return null;
         }
-        return mImage.copy(mImage.getConfig(), mImage.isMutable());
+        if (mSource565 != null) {
+            Bitmap bitmap = Bitmap.createBitmap(mSource565.width, mSource565.height, mConfig);
+            writePixels(mSource565, bitmap);
+            return bitmap;
+        }
+        return toBitmap(mSource, mConfig);
+    }
+
+    /**
+     * Copy the image into a mutable bitmap of the same size, without allocating.
+     *
+     * @return dst, or null if there is no image
+     */
+    public Bitmap getImage(Bitmap dst) {
+        if (!hasImage()) {
+            return null;
+        }
+        if (mSource565 != null) {
+            writePixels(mSource565, dst);
+        } else {
+            writePixels(mSource, dst);
+        }
+        return dst;
+    }
+
+    private boolean hasImage() {
+        return mSource != null || mSource565 != null;
+    }
+
+    /**
+     * @return the image as ARGB, widening an RGB_565 image the first time
+     */
+    private Raster source() {
+        if (mSourceStale) {
+            int width = mSource565.width;
+            int height = mSource565.height;
+            if (mSource == null || mSource.width != width || mSource.height != height) {
+                mPool.release(mSource);
+                mSource = mPool.acquire(width, height);
+            }
+            PixelFormats.convert(mSource565, mSource);
+            mSourceStale = false;
+        }
+        return mSource;
+    }
+
+    private EditSession session() {
+        if (mSession == null) {
+            mSession = new EditSession(source(), getExecutor(), mPool);
+        }
+        return mSession;
+    }
+
+    /**
+     * Set how many threads the effects run on. By default every core is used,
+     * 1 runs effects on the calling thread only.
+     */
+    public synchronized void setParallelism(int parallelism) {
+        if (mExecutor != null) {
+            if (mExecutor.getParallelism() == parallelism) {
+                return;
+            }
+            mExecutor.shutdown();
+        }
+        mExecutor = new ParallelExecutor(parallelism);
+        if (mSession != null) {
+            // runs on the old executor
+            mSession.release();
+            mSession = null;
+        }
+    }
+
+    /**
+     * Receives intermediate results of effects that return a new Bitmap while
+     * {@link #setProgressListener(ProgressListener)} is set. Called on the
+     * thread that runs the effect.
+     */
+    public interface ProgressListener {
+
+        /**
+         * A downscaled result, within about {@link ProgressiveProcessor#DEFAULT_PREVIEW_BUDGET_MILLIS}
+         * ms; finer previews may follow.
+         */
+        void onPreview(Bitmap preview);
+
+        /**
+         * result, the bitmap the effect will return, has percent of its pixels
+         * final; the rest still shows the enlarged preview.
+         */
+        void onProgress(Bitmap result, int percent);
+
+    }
+
+    /**
+     * Show progress of the following effects on listener, null for none. Effects
+     * writing into a given Bitmap do not report progress.
+     */
+    public void setProgressListener(ProgressListener listener) {
+        setProgressListener(listener, null);
+    }
+
+    /**
+     * Like {@link #setProgressListener(ProgressListener)}, also making the
+     * following effects give up with a CancellationException once cancellation
+     * is cancelled. Results of cancelled effects are not cached.
+     */
+    public synchronized void setProgressListener(ProgressListener listener, Cancellation cancellation) {
+        mListener = listener;
+        mCancellation = cancellation;
+    }
+
+    private synchronized ProgressListener getProgressListener() {
+        return mListener;
+    }
+
+    private synchronized Cancellation getCancellation() {
+        return mCancellation;
+    }
+
+    /**
+     * Record how long copying pixels in and out of bitmaps, creating bitmaps
+     * and the effects themselves take, see {@link HistogramMetrics}. null
+     * stops recording.
+     */
+    public void setMetrics(Metrics metrics) {
+        mMetrics = metrics != null ? metrics : Metrics.NONE;
+    }
+
+    /**
+     * Remember effect results in cache, so the same effect with the same
+     * parameters on the same image is only computed once. Snow is only cached
+     * when given a seed, it is meant to look different every time. null turns caching off.
+     */
+    public synchronized void setResultCache(ResultCache cache) {
+        mCache = cache;
+    }
+
+    private synchronized ParallelExecutor getExecutor() {
+        if (mExecutor == null) {
+            mExecutor = new ParallelExecutor(ParallelExecutor.defaultParallelism());
+        }
+        return mExecutor;
     }
 
     /**
@@ -39,46 +279,51 @@ public class ImageProcessor {
      */
     public Bitmap getColorReplace(int fromColor, int targetColor) {
 
-        int threshold = 60;
-
-        int R = Color.red(fromColor);
-        int G = Color.green(fromColor);
-        int B = Color.blue(fromColor);
-
-        if (mImage == null) {
+        if (!hasImage()) {
             return null;
         }
 
-        int width = mImage.getWidth();
-        int height = mImage.getHeight();
+        return applyEffect(colorReplaceEffect(fromColor, targetColor), mConfig, "colorReplace", fromColor, targetColor);
 
-        int[] pixels = new int[width * height];
-
-        mImage.getPixels(pixels, 0, width, 0, 0, width, height);
+    }
 
-        int c_R, c_G, c_B = 0;
+    /**
+     * Effect1 written into dst, a mutable bitmap of the image's size, without allocating
+     */
+    public Bitmap getColorReplace(int fromColor, int targetColor, Bitmap dst) {
 
-        for (int index = 0; index < pixels.length; ++index) {
+        return applyEffect(colorReplaceEffect(fromColor, targetColor), dst, "colorReplace", fromColor, targetColor);
 
-            c_R = Color.red(pixels[index]);
-            c_G = Color.green(pixels[index]);
-            c_B = Color.blue(pixels[index]);
+    }
 
-            if (((R - threshold) <= c_R && c_R <= (R + threshold)) &&
-                    ((G - threshold) <= c_G && c_G <= (G + threshold)) &&
-                    ((B - threshold) <= c_B && c_B <= (B + threshold))) {
-                pixels[index] = targetColor;
-            }
+    /**
+     * Replace every color that looks close to one of fromColors with its
+     * counterpart in targetColors. Colors near several of them take the
+     * replacement of the nearest.
+     *
+     * @param tolerance how far a color may be from one of fromColors, in CIELAB
+     *                  Delta E: about 2 is just noticeable, 10 a clearly different shade
+     */
+    public Bitmap getColorMap(int[] fromColors, int[] targetColors, double tolerance) {
 
+        if (!hasImage()) {
+            return null;
         }
 
-        Bitmap newImage = Bitmap.createBitmap(width, height, mImage.getConfig());
-        newImage.setPixels(pixels, 0, width, 0, 0, width, height);
-
-        return newImage;
+        return applyEffect(colorMapEffect(fromColors, targetColors, tolerance), mConfig, "colorMap",
+                Arrays.toString(fromColors), Arrays.toString(targetColors), tolerance);
 
     }
 
+    /**
+     * Color map written into dst, a mutable bitmap of the image's size, without allocating
+     */
+    public Bitmap getColorMap(int[] fromColors, int[] targetColors, double tolerance, Bitmap dst) {
+
+        return applyEffect(colorMapEffect(fromColors, targetColors, tolerance), dst, "colorMap",
+                Arrays.toString(fromColors), Arrays.toString(targetColors), tolerance);
+
+    }
 
     /**
      * Effect2 - apply hue filter to the image
@@ -89,34 +334,36 @@ public class ImageProcessor {
      */
     public Bitmap getHueEffect(int level) {
 
-        // get image size
-        int width = mImage.getWidth();
-        int height = mImage.getHeight();
-        int[] pixels = new int[width * height];
-        float[] HSV = new float[3];
-        // get pixel array from source
-        mImage.getPixels(pixels, 0, width, 0, 0, width, height);
-
-        int index = 0;
-        // iteration through pixels
-        for (int y = 0; y < height; ++y) {
-            for (int x = 0; x < width; ++x) {
-                // get current index in 2D-matrix
-                index = y * width + x;
-                // convert to HSV
-                Color.colorToHSV(pixels[index], HSV);
-                // increase Saturation level
-                HSV[0] *= level;
-                HSV[0] = (float) Math.max(0.0, Math.min(HSV[0], 360.0));
-                // take color back
-                pixels[index] |= Color.HSVToColor(HSV);
+        return applyEffect(new HueEffect(level), Bitmap.Config.ARGB_8888, "hue", level);
+
+    }
+
+    /**
+     * Effect2 written into dst, a mutable bitmap of the image's size, without allocating.
+     * Trying level after level on the same image reuses its hue and saturation.
+     */
+    public Bitmap getHueEffect(final int level, Bitmap dst) {
+
+        return applyEffect(new HueEffect(level), new SessionStep() {
+            @Override
+            public void run(EditSession session, Raster dst, Cancellation cancellation) {
+                session.hue(level, dst, cancellation);
             }
-        }
-        // output bitmap
-        Bitmap newImage = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-        newImage.setPixels(pixels, 0, width, 0, 0, width, height);
+        }, dst, "hue", level);
+
+    }
+
+    /**
+     * Rotate the hue and scale the saturation and value of the image
+     *
+     * @param hueDegrees hue rotation in degrees
+     * @param saturation saturation multiplier, 1 keeps it
+     * @param value      value multiplier, 1 keeps it
+     */
+    public Bitmap getHsvAdjustEffect(float hueDegrees, float saturation, float value) {
 
-        return newImage;
+        return applyEffect(new HsvAdjustEffect(hueDegrees, saturation, value), mConfig,
+                "hsvAdjust", hueDegrees, saturation, value);
 
     }
 
@@ -127,17 +374,16 @@ public class ImageProcessor {
      */
     public Bitmap getEmbossEffect() {
 
-        double[][] EmbossConfig = new double[][]{
-                {-1, 0, -1},
-                {0, 4, 0},
-                {-1, 0, -1}
-        };
-        ConvolutionMatrix convMatrix = new ConvolutionMatrix(3);
-        convMatrix.applyConfig(EmbossConfig);
-        convMatrix.Factor = 1;
-        convMatrix.Offset = 127;
+        return applyEffect(embossEffect(), mConfig, "emboss");
+
+    }
+
+    /**
+     * Effect 3 written into dst, a mutable bitmap of the image's size, without allocating
+     */
+    public Bitmap getEmbossEffect(Bitmap dst) {
 
-        return ConvolutionMatrix.computeConvolution3x3(mImage, convMatrix);
+        return applyEffect(embossEffect(), dst, "emboss");
 
     }
 
@@ -148,13 +394,63 @@ public class ImageProcessor {
      */
     public Bitmap getSmoothEffect(double value) {
 
-        ConvolutionMatrix convMatrix = new ConvolutionMatrix(3);
-        convMatrix.setAll(1);
-        convMatrix.Matrix[1][1] = value;
-        convMatrix.Factor = value + 8;
-        convMatrix.Offset = 1;
+        return getSmoothEffect(value, ConvolutionMatrix.SIZE);
 
-        return ConvolutionMatrix.computeConvolution3x3(mImage, convMatrix);
+    }
+
+    /**
+     * Effect 4 written into dst, a mutable bitmap of the image's size, without allocating.
+     * Trying value after value on the same image reuses its neighbourhood sums.
+     */
+    public Bitmap getSmoothEffect(final double value, Bitmap dst) {
+
+        final int size = ConvolutionMatrix.SIZE;
+        return applyEffect(smoothEffect(value, size), new SessionStep() {
+            @Override
+            public void run(EditSession session, Raster dst, Cancellation cancellation) {
+                session.smooth(value, size, smoothFactor(value, size), SMOOTH_OFFSET, dst, cancellation);
+            }
+        }, dst, "smooth", value, size);
+
+    }
+
+    /**
+     * Smooth effect over a size x size window, the center pixel weighted by value
+     * and every other pixel by 1
+     */
+    public Bitmap getSmoothEffect(double value, int size) {
+
+        return applyEffect(smoothEffect(value, size), mConfig, "smooth", value, size);
+
+    }
+
+    /**
+     * Sharpen effect over a size x size window, the center pixel weighted by value
+     * and every other pixel by -1
+     *
+     * @param value must be larger than size * size - 1
+     */
+    public Bitmap getSharpenEffect(double value, int size) {
+
+        return applyEffect(sharpenEffect(value, size), mConfig, "sharpen", value, size);
+
+    }
+
+    /**
+     * Box blur - average over a (2 * radius + 1) square, same speed for any radius
+     */
+    public Bitmap getBoxBlurEffect(int radius) {
+
+        return applyEffect(new BoxBlurEffect(radius), mConfig, "boxBlur", radius);
+
+    }
+
+    /**
+     * Gaussian blur - same speed for any sigma
+     */
+    public Bitmap getGaussianBlurEffect(double sigma) {
+
+        return applyEffect(new GaussianBlurEffect(sigma), mConfig, "gaussianBlur", sigma);
 
     }
 
@@ -167,54 +463,103 @@ public class ImageProcessor {
      */
     public Bitmap getBrightnessEffect(int value) {
 
-        // image size
-        int width = mImage.getWidth();
-        int height = mImage.getHeight();
-        // create output bitmap
-        Bitmap newImage = Bitmap.createBitmap(width, height, mImage.getConfig());
-        // color information
-        int A, R, G, B;
-        int pixel;
-
-        // scan through all pixels
-        for (int x = 0; x < width; ++x) {
-            for (int y = 0; y < height; ++y) {
-                // get pixel color
-                pixel = mImage.getPixel(x, y);
-                A = Color.alpha(pixel);
-                R = Color.red(pixel);
-                G = Color.green(pixel);
-                B = Color.blue(pixel);
-
-                // increase/decrease each channel
-                R += value;
-                if (R > 255) {
-                    R = 255;
-                } else if (R < 0) {
-                    R = 0;
-                }
-
-                G += value;
-                if (G > 255) {
-                    G = 255;
-                } else if (G < 0) {
-                    G = 0;
-                }
-
-                B += value;
-                if (B > 255) {
-                    B = 255;
-                } else if (B < 0) {
-                    B = 0;
-                }
-
-                // apply new pixel color to output bitmap
-                newImage.setPixel(x, y, Color.argb(A, R, G, B));
+        return applyEffect(ChannelLut.brightness(value), mConfig, "brightness", value);
+
+    }
+
+    /**
+     * Effect 5 written into dst, a mutable bitmap of the image's size, without allocating
+     */
+    public Bitmap getBrightnessEffect(final int value, Bitmap dst) {
+
+        return applyEffect(ChannelLut.brightness(value), new SessionStep() {
+            @Override
+            public void run(EditSession session, Raster dst, Cancellation cancellation) {
+                session.brightness(value, dst, cancellation);
             }
+        }, dst, "brightness", value);
+
+    }
+
+    /**
+     * Contrast effect
+     *
+     * @param factor how far every channel is pushed away from mid gray, 1 keeps the image as it is
+     */
+    public Bitmap getContrastEffect(double factor) {
+
+        return applyEffect(ChannelLut.contrast(factor), mConfig, "contrast", factor);
+
+    }
+
+    /**
+     * Gamma correction, values above 1 brighten the mid tones
+     */
+    public Bitmap getGammaEffect(double gamma) {
+
+        return applyEffect(ChannelLut.gamma(gamma), mConfig, "gamma", gamma);
+
+    }
+
+    /**
+     * Levels - map [inLow, inHigh] onto [outLow, outHigh] through a gamma curve
+     */
+    public Bitmap getLevelsEffect(int inLow, int inHigh, double gamma, int outLow, int outHigh) {
+
+        return applyEffect(ChannelLut.levels(inLow, inHigh, gamma, outLow, outHigh), mConfig,
+                "levels", inLow, inHigh, gamma, outLow, outHigh);
+
+    }
+
+    /**
+     * @return histograms, minimum, maximum, mean and percentiles of the image,
+     * e.g. to suggest effect parameters; null without an image
+     */
+    public synchronized ImageStatistics getStatistics() {
+
+        if (!hasImage()) {
+            return null;
+        }
+        if (mStatistics == null) {
+            Metrics metrics = mMetrics;
+            long start = metrics.isEnabled() ? System.nanoTime() : 0;
+            Raster source = source();
+            ParallelExecutor executor = getExecutor();
+            mStatistics = ImageStatistics.of(source, executor, getCancellation());
+            if (metrics.isEnabled()) {
+                metrics.record("statistics", System.nanoTime() - start, (long) source.width * source.height,
+                        0, executor.getParallelism());
+            }
+        }
+        return mStatistics;
+
+    }
+
+    /**
+     * Stretch each channel to the full range, ignoring the darkest and the
+     * brightest 0.5% of the pixels. No value to guess, the image says how much.
+     */
+    public Bitmap getAutoLevelsEffect() {
+
+        if (!hasImage()) {
+            return null;
+        }
+
+        return applyEffect(ChannelLut.autoLevels(getStatistics(), AUTO_LEVELS_CLIP), mConfig, "autoLevels");
+
+    }
+
+    /**
+     * Equalize the brightness histogram of the image, bringing out detail in
+     * images that use only part of the range.
+     */
+    public Bitmap getEqualizeEffect() {
+
+        if (!hasImage()) {
+            return null;
         }
 
-        // return final image
-        return newImage;
+        return applyEffect(ChannelLut.equalize(getStatistics()), mConfig, "equalize");
 
     }
 
@@ -225,38 +570,559 @@ public class ImageProcessor {
      */
     public Bitmap getSnowEffect(int COLOR_MAX) {
 
-        // image size
-        int width = mImage.getWidth();
-        int height = mImage.getHeight();
-        int[] pixels = new int[width * height];
-        // get pixel array from source
-        mImage.getPixels(pixels, 0, width, 0, 0, width, height);
-        // random object
-        Random random = new Random();
-
-        int R, G, B, index = 0, thresHold = 50;
-        // iteration through pixels
-        for (int y = 0; y < height; ++y) {
-            for (int x = 0; x < width; ++x) {
-                // get current index in 2D-matrix
-                index = y * width + x;
-                // get color
-                R = Color.red(pixels[index]);
-                G = Color.green(pixels[index]);
-                B = Color.blue(pixels[index]);
-                // generate threshold
-                thresHold = random.nextInt(COLOR_MAX);
-                if (R > thresHold && G > thresHold && B > thresHold) {
-                    pixels[index] = Color.rgb(COLOR_MAX, COLOR_MAX, COLOR_MAX);
-                }
+        return applyEffect(new SnowEffect(COLOR_MAX, mRandom.nextLong()), Bitmap.Config.RGB_565);
+
+    }
+
+    /**
+     * Effect 6 with the flakes in the same places for the same seed, on any
+     * number of threads
+     */
+    public Bitmap getSnowEffect(int COLOR_MAX, long seed) {
+
+        return applyEffect(new SnowEffect(COLOR_MAX, seed), Bitmap.Config.RGB_565, "snow", COLOR_MAX, seed);
+
+    }
+
+    /**
+     * Effect 6 written into dst, a mutable bitmap of the image's size, without allocating
+     */
+    public Bitmap getSnowEffect(int COLOR_MAX, Bitmap dst) {
+
+        return applyEffect(new SnowEffect(COLOR_MAX, mRandom.nextLong()), dst);
+
+    }
+
+    /**
+     * Seeded effect 6 written into dst, a mutable bitmap of the image's size, without allocating
+     */
+    public Bitmap getSnowEffect(int COLOR_MAX, long seed, Bitmap dst) {
+
+        return applyEffect(new SnowEffect(COLOR_MAX, seed), dst, "snow", COLOR_MAX, seed);
+
+    }
+
+    /**
+     * Start a chain of effects that is applied to the image in one go. Per-pixel
+     * effects in the chain are fused into a single pass, so e.g. brightness
+     * followed by color replace costs one trip over the pixels instead of two.
+     */
+    public Pipeline newPipeline() {
+        return new Pipeline();
+    }
+
+    public class Pipeline {
+
+        private final EffectPipeline mPipeline = new EffectPipeline();
+        private Bitmap.Config mConfig;
+
+        private Pipeline() {
+        }
+
+        public Pipeline colorReplace(int fromColor, int targetColor) {
+            mPipeline.add(colorReplaceEffect(fromColor, targetColor));
+            return this;
+        }
+
+        public Pipeline colorMap(int[] fromColors, int[] targetColors, double tolerance) {
+            mPipeline.add(colorMapEffect(fromColors, targetColors, tolerance));
+            return this;
+        }
+
+        public Pipeline hue(int level) {
+            mPipeline.add(new HueEffect(level));
+            mConfig = Bitmap.Config.ARGB_8888;
+            return this;
+        }
+
+        public Pipeline hsvAdjust(float hueDegrees, float saturation, float value) {
+            mPipeline.add(new HsvAdjustEffect(hueDegrees, saturation, value));
+            return this;
+        }
+
+        public Pipeline emboss() {
+            mPipeline.add(embossEffect());
+            return this;
+        }
+
+        public Pipeline smooth(double value, int size) {
+            mPipeline.add(smoothEffect(value, size));
+            return this;
+        }
+
+        public Pipeline sharpen(double value, int size) {
+            mPipeline.add(sharpenEffect(value, size));
+            return this;
+        }
+
+        public Pipeline boxBlur(int radius) {
+            mPipeline.add(new BoxBlurEffect(radius));
+            return this;
+        }
+
+        public Pipeline gaussianBlur(double sigma) {
+            mPipeline.add(new GaussianBlurEffect(sigma));
+            return this;
+        }
+
+        public Pipeline brightness(int value) {
+            mPipeline.add(ChannelLut.brightness(value));
+            return this;
+        }
+
+        public Pipeline contrast(double factor) {
+            mPipeline.add(ChannelLut.contrast(factor));
+            return this;
+        }
+
+        public Pipeline gamma(double gamma) {
+            mPipeline.add(ChannelLut.gamma(gamma));
+            return this;
+        }
+
+        public Pipeline levels(int inLow, int inHigh, double gamma, int outLow, int outHigh) {
+            mPipeline.add(ChannelLut.levels(inLow, inHigh, gamma, outLow, outHigh));
+            return this;
+        }
+
+        public Pipeline snow(int colorMax) {
+            return snow(colorMax, mRandom.nextLong());
+        }
+
+        public Pipeline snow(int colorMax, long seed) {
+            mPipeline.add(new SnowEffect(colorMax, seed));
+            mConfig = Bitmap.Config.RGB_565;
+            return this;
+        }
+
+        /**
+         * @return the image with every effect of the chain applied, in the
+         * config the last effect that needs one asks for
+         */
+        public Bitmap apply() {
+
+            if (!hasImage()) {
+                return null;
+            }
+
+            Raster source = source();
+            Raster result = mPool.acquire(source.width, source.height);
+            try {
+                runPipeline(mPipeline, result);
+                return toBitmap(result, mConfig != null ? mConfig : ImageProcessor.this.mConfig);
+            } finally {
+                mPool.release(result);
+            }
+
+        }
+
+        /**
+         * Like {@link #apply()}, but writes into dst, a mutable bitmap of the image's size
+         *
+         * @return dst, or null if there is no image
+         */
+        public Bitmap apply(Bitmap dst) {
+
+            if (!hasImage()) {
+                return null;
+            }
+
+            Raster source = source();
+            Raster result = mPool.acquire(source.width, source.height);
+            try {
+                runPipeline(mPipeline, result);
+                writePixels(result, dst);
+                return dst;
+            } finally {
+                mPool.release(result);
             }
+
+        }
+
+        /**
+         * Run the chain over an image that does not need to be loaded, e.g. a
+         * {@link RegionDecoderTileSource}, tile by tile, independent of {@link #setImage(Bitmap)}
+         */
+        public void apply(TileSource source, TileSink sink) throws IOException {
+            new TiledProcessor(getExecutor()).process(source, mPipeline, sink);
+        }
+
+        /**
+         * Run the chain over every image file in inputs, writing the results to
+         * files of the same name in outputDirectory. Independent of {@link #setImage(Bitmap)}.
+         *
+         * @param ioThreads  threads decoding, and as many encoding
+         * @param cpuThreads images processed at once
+         */
+        public BatchReport applyToFiles(List<File> inputs, File outputDirectory, int ioThreads, int cpuThreads) {
+            BitmapCodec codec = new BitmapCodec(mConfig != null ? mConfig : Bitmap.Config.ARGB_8888);
+            return new BatchProcessor(codec, ioThreads, cpuThreads, mPool).process(inputs, outputDirectory,
+                    mPipeline, null);
         }
-        // output bitmap
-        Bitmap bmOut = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
-        bmOut.setPixels(pixels, 0, width, 0, 0, width, height);
 
-        return bmOut;
+    }
+
+    private static Effect colorReplaceEffect(int fromColor, int targetColor) {
+        return new ColorReplaceEffect(fromColor, targetColor, 60);
+    }
+
+    private static Effect colorMapEffect(int[] fromColors, int[] targetColors, double tolerance) {
+        return new ColorMapEffect(fromColors, targetColors, tolerance, ColorMapEffect.SPACE_CIELAB);
+    }
+
+    private static Effect embossEffect() {
+
+        double[][] EmbossConfig = new double[][]{
+                {-1, 0, -1},
+                {0, 4, 0},
+                {-1, 0, -1}
+        };
+        ConvolutionMatrix convMatrix = new ConvolutionMatrix(3);
+        convMatrix.applyConfig(EmbossConfig);
+        convMatrix.Factor = 1;
+        convMatrix.Offset = 127;
+
+        return convMatrix.toEffect();
+
+    }
+
+    private static Effect smoothEffect(double value, int size) {
+
+        ConvolutionMatrix convMatrix = new ConvolutionMatrix(size);
+        convMatrix.setAll(1);
+        convMatrix.Matrix[size / 2][size / 2] = value;
+        convMatrix.Factor = smoothFactor(value, size);
+        convMatrix.Offset = SMOOTH_OFFSET;
+
+        return convMatrix.toEffect();
+
+    }
+
+    private static double smoothFactor(double value, int size) {
+        return value + size * size - 1;
+    }
+
+    private static Effect sharpenEffect(double value, int size) {
+
+        ConvolutionMatrix convMatrix = new ConvolutionMatrix(size);
+        convMatrix.setAll(-1);
+        convMatrix.Matrix[size / 2][size / 2] = value;
+        convMatrix.Factor = value - (size * size - 1);
+        convMatrix.Offset = 0;
+
+        return convMatrix.toEffect();
+
+    }
+
+    /**
+     * Run an effect over the whole image and hand the result back as a Bitmap.
+     * Only here and in {@link RasterBitmaps} do the effects touch android types.
+     */
+    private Bitmap applyEffect(Effect effect, Bitmap.Config config) {
+
+        return applyEffect(effect, config, null);
+
+    }
+
+    /**
+     * Like {@link #applyEffect(Effect, Bitmap.Config)}, going through the result
+     * cache under name and params unless name is null
+     */
+    private Bitmap applyEffect(Effect effect, Bitmap.Config config, String name, Object... params) {
+
+        Rgb565Effect effect565 = rgb565Effect(effect, config);
+        if (effect565 != null) {
+            Bitmap bitmap = Bitmap.createBitmap(mSource565.width, mSource565.height, config);
+            return applyEffect565(effect565, bitmap);
+        }
+
+        String key = cacheKey(name, params);
+        Raster cached = key != null ? mCache.get(key) : null;
+        if (cached != null) {
+            return toBitmap(cached, config);
+        }
 
+        ProgressListener listener = getProgressListener();
+        if (listener != null) {
+            return applyProgressively(effect, config, key, listener);
+        }
+
+        Raster source = source();
+        Raster dst = mPool.acquire(source.width, source.height);
+        try {
+            runEffect(effect, dst);
+            if (key != null) {
+                mCache.put(key, dst);
+            }
+            return toBitmap(dst, config);
+        } finally {
+            mPool.release(dst);
+        }
+
+    }
+
+    private Bitmap applyProgressively(Effect effect, final Bitmap.Config config, String key,
+                                      final ProgressListener listener) {
+
+        Raster source = source();
+        final Bitmap result = Bitmap.createBitmap(source.width, source.height, config);
+        final long total = (long) source.width * source.height;
+        final Raster dst = mPool.acquire(source.width, source.height);
+        Metrics metrics = mMetrics;
+        long start = metrics.isEnabled() ? System.nanoTime() : 0;
+        long allocated = mPool.getAllocatedBytes();
+        try {
+            new ProgressiveProcessor(getExecutor()).process(source, new EffectPipeline().add(effect), dst,
+                    new ProgressiveProcessor.Listener() {
+
+                        private boolean mPreviewed;
+                        private boolean mStarted;
+                        private long mDone;
+
+                        @Override
+                        public void onPreview(Raster preview, int factor) {
+                            mPreviewed = true;
+                            listener.onPreview(toBitmap(preview, config));
+                        }
+
+                        @Override
+                        public void onTile(int x, int y, Raster tile) {
+                            if (mPreviewed && !mStarted) {
+                                // the enlarged preview, for the tiles still to come
+                                writePixels(dst, result);
+                                mStarted = true;
+                            }
+                            result.setPixels(tile.pixels, tile.offset, tile.stride, x, y, tile.width, tile.height);
+                            mDone += (long) tile.width * tile.height;
+                            listener.onProgress(result, (int) (100 * mDone / total));
+                        }
+
+                    }, getCancellation());
+            if (metrics.isEnabled()) {
+                metrics.record("progressive " + effect.getClass().getSimpleName(), System.nanoTime() - start,
+                        total, mPool.getAllocatedBytes() - allocated, getExecutor().getParallelism());
+            }
+            if (key != null) {
+                mCache.put(key, dst);
+            }
+            return result;
+        } finally {
+            mPool.release(dst);
+        }
+
+    }
+
+    private Bitmap applyEffect(Effect effect, Bitmap bitmap) {
+
+        return applyEffect(effect, bitmap, null);
+
+    }
+
+    private Bitmap applyEffect(Effect effect, Bitmap bitmap, String name, Object... params) {
+
+        return applyEffect(effect, null, bitmap, name, params);
+
+    }
+
+    /**
+     * The part of an effect that depends on its parameters, run on the
+     * intermediates {@link EditSession} keeps for the image
+     */
+    private interface SessionStep {
+        void run(EditSession session, Raster dst, Cancellation cancellation);
+    }
+
+    /**
+     * Like {@link #applyEffect(Effect, Bitmap, String, Object...)}, computing the
+     * result with step, if not null, instead of running effect from scratch
+     */
+    private Bitmap applyEffect(Effect effect, SessionStep step, Bitmap bitmap, String name, Object... params) {
+
+        Rgb565Effect effect565 = rgb565Effect(effect, bitmap.getConfig());
+        if (effect565 != null) {
+            return applyEffect565(effect565, bitmap);
+        }
+
+        String key = cacheKey(name, params);
+        Raster cached = key != null ? mCache.get(key) : null;
+        if (cached != null) {
+            writePixels(cached, bitmap);
+            return bitmap;
+        }
+
+        Raster source = source();
+        Raster dst = mPool.acquire(source.width, source.height);
+        try {
+            if (step != null) {
+                runStep(step, name, dst);
+            } else {
+                runEffect(effect, dst);
+            }
+            if (key != null) {
+                mCache.put(key, dst);
+            }
+            writePixels(dst, bitmap);
+            return bitmap;
+        } finally {
+            mPool.release(dst);
+        }
+
+    }
+
+    /**
+     * @return effect as it runs on the RGB_565 image for an RGB_565 result, null
+     * when the image is not RGB_565 or the effect needs ARGB
+     */
+    private Rgb565Effect rgb565Effect(Effect effect, Bitmap.Config config) {
+
+        if (mSource565 == null || config != Bitmap.Config.RGB_565) {
+            return null;
+        }
+        if (effect instanceof Rgb565Effect) {
+            return (Rgb565Effect) effect;
+        }
+        // the only point effect that depends on the position, snow, is an Rgb565Effect;
+        // a table over all 65536 colors costs as much as the effect on 256x256 pixels
+        if (effect instanceof PointEffect && (long) mSource565.width * mSource565.height > 1 << 16) {
+            return Rgb565Lut.of((PointEffect) effect);
+        }
+        return null;
+
+    }
+
+    /**
+     * Run effect on the RGB_565 image straight into bitmap, without widening
+     * it to ARGB. Neither cached nor progressive, both work on ARGB.
+     */
+    private Bitmap applyEffect565(Rgb565Effect effect, Bitmap bitmap) {
+
+        Rgb565Raster src = mSource565;
+        if (mResult565 == null || mResult565.width != src.width || mResult565.height != src.height) {
+            mResult565 = Rgb565Raster.create(src.width, src.height);
+        }
+        Metrics metrics = mMetrics;
+        long start = metrics.isEnabled() ? System.nanoTime() : 0;
+        ParallelExecutor executor = getExecutor();
+        executor.run(effect, src, mResult565, 0, src.height, getCancellation());
+        if (metrics.isEnabled()) {
+            metrics.record("effect565 " + effect.getClass().getSimpleName(), System.nanoTime() - start,
+                    (long) src.width * src.height, 0, executor.getParallelism());
+        }
+        writePixels(mResult565, bitmap);
+        return bitmap;
+
+    }
+
+    private void runEffect(Effect effect, Raster dst) {
+
+        Metrics metrics = mMetrics;
+        long start = metrics.isEnabled() ? System.nanoTime() : 0;
+        long allocated = mPool.getAllocatedBytes();
+        ParallelExecutor executor = getExecutor();
+        executor.run(effect, source(), dst, 0, dst.height, getCancellation());
+        if (metrics.isEnabled()) {
+            metrics.record("effect " + effect.getClass().getSimpleName(), System.nanoTime() - start,
+                    (long) dst.width * dst.height, mPool.getAllocatedBytes() - allocated, executor.getParallelism());
+        }
+
+    }
+
+    private void runStep(SessionStep step, String name, Raster dst) {
+
+        Metrics metrics = mMetrics;
+        long start = metrics.isEnabled() ? System.nanoTime() : 0;
+        long allocated = mPool.getAllocatedBytes();
+        step.run(session(), dst, getCancellation());
+        if (metrics.isEnabled()) {
+            metrics.record("session " + name, System.nanoTime() - start, (long) dst.width * dst.height,
+                    mPool.getAllocatedBytes() - allocated, getExecutor().getParallelism());
+        }
+
+    }
+
+    private void runPipeline(EffectPipeline pipeline, Raster dst) {
+
+        Metrics metrics = mMetrics;
+        long start = metrics.isEnabled() ? System.nanoTime() : 0;
+        long allocated = mPool.getAllocatedBytes();
+        ParallelExecutor executor = getExecutor();
+        pipeline.run(source(), dst, executor, mPool, getCancellation());
+        if (metrics.isEnabled()) {
+            metrics.record("pipeline", System.nanoTime() - start, (long) dst.width * dst.height,
+                    mPool.getAllocatedBytes() - allocated, executor.getParallelism());
+        }
+
+    }
+
+    // Bitmap <-> Raster copies, timed as their own stages
+
+    private void readPixels(Bitmap bitmap, Raster raster) {
+
+        Metrics metrics = mMetrics;
+        long start = metrics.isEnabled() ? System.nanoTime() : 0;
+        RasterBitmaps.readPixels(bitmap, raster);
+        if (metrics.isEnabled()) {
+            metrics.record("getPixels", System.nanoTime() - start, (long) raster.width * raster.height, 0, 1);
+        }
+
+    }
+
+    private void writePixels(Raster raster, Bitmap bitmap) {
+
+        Metrics metrics = mMetrics;
+        long start = metrics.isEnabled() ? System.nanoTime() : 0;
+        RasterBitmaps.writePixels(raster, bitmap);
+        if (metrics.isEnabled()) {
+            metrics.record("setPixels", System.nanoTime() - start, (long) raster.width * raster.height, 0, 1);
+        }
+
+    }
+
+    private void readPixels(Bitmap bitmap, Rgb565Raster raster) {
+
+        Metrics metrics = mMetrics;
+        long start = metrics.isEnabled() ? System.nanoTime() : 0;
+        RasterBitmaps.readPixels(bitmap, raster);
+        if (metrics.isEnabled()) {
+            metrics.record("getPixels565", System.nanoTime() - start, (long) raster.width * raster.height, 0, 1);
+        }
+
+    }
+
+    private void writePixels(Rgb565Raster raster, Bitmap bitmap) {
+
+        Metrics metrics = mMetrics;
+        long start = metrics.isEnabled() ? System.nanoTime() : 0;
+        RasterBitmaps.writePixels(raster, bitmap);
+        if (metrics.isEnabled()) {
+            metrics.record("setPixels565", System.nanoTime() - start, (long) raster.width * raster.height, 0, 1);
+        }
+
+    }
+
+    private Bitmap toBitmap(Raster raster, Bitmap.Config config) {
+
+        Metrics metrics = mMetrics;
+        long start = metrics.isEnabled() ? System.nanoTime() : 0;
+        Bitmap bitmap = Bitmap.createBitmap(raster.width, raster.height, config);
+        if (metrics.isEnabled()) {
+            metrics.record("createBitmap", System.nanoTime() - start, (long) raster.width * raster.height,
+                    bitmap.getByteCount(), 1);
+        }
+        writePixels(raster, bitmap);
+        return bitmap;
+
+    }
+
+    private synchronized String cacheKey(String name, Object... params) {
+        if (mCache == null || name == null) {
+            return null;
+        }
+        if (!mFingerprinted) {
+            mFingerprint = ResultCache.fingerprint(source());
+            mFingerprinted = true;
+        }
+        return ResultCache.key(mFingerprint, name, params);
     }
 
-}
\ No newline at end of file
+}
@@ -5,13 +5,13 @@ import android.app.ProgressDialog;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Color;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.design.widget.FloatingActionButton;
 import android.support.v7.app.AppCompatActivity;
 import android.text.InputType;
+import android.util.DisplayMetrics;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
@@ -19,6 +19,12 @@ import android.view.View;
 import android.widget.EditText;
 import android.widget.Toast;
 
+import com.anthony.imageprocessing.core.Cancellation;
+import com.anthony.imageprocessing.core.EffectScheduler;
+import com.anthony.imageprocessing.core.HistogramMetrics;
+import com.anthony.imageprocessing.core.ResultCache;
+
+import java.io.File;
 import java.util.ArrayList;
 
 import it.sephiroth.android.library.imagezoom.ImageViewTouch;
@@ -35,6 +41,10 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
 
     private final int REQUEST_CODE = 99;
     private static final int REQUEST_CODE_SELECT_COLOR = 111;
+    private static final long RESULT_CACHE_DISK_BYTES = 64L * 1024 * 1024;
+    private static final long DECODE_CACHE_DISK_BYTES = 64L * 1024 * 1024;
+    private static final String EFFECT_ON_SCREEN = "effect";
+    private static final String TAG = "MainActivity";
 
     private int effectType;
     private int effectValue;
@@ -43,7 +53,15 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
     private int replacingColor;
 
     private Bitmap bitmap;
+    // the effects that are tried value after value take turns writing into
+    // these two, so the one on screen is never written to
+    private final Bitmap[] effectBuffers = new Bitmap[2];
+    private Bitmap displayed;
     private ImageProcessor imageProcessor;
+    private DecodeCache decodeCache;
+    private final EffectScheduler scheduler = new EffectScheduler();
+    // timings of every effect, logged after each one in debug builds
+    private HistogramMetrics metrics;
 
     private FloatingActionButton selectImage;
     private ImageViewTouch imgOriginal;
@@ -62,6 +80,20 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         selectImage.setOnClickListener(this);
 
         imageProcessor = new ImageProcessor(null);
+        imageProcessor.setResultCache(new ResultCache(Runtime.getRuntime().maxMemory() / 8,
+                new File(getCacheDir(), "results"), RESULT_CACHE_DISK_BYTES));
+        decodeCache = new DecodeCache(getCacheDir(), DECODE_CACHE_DISK_BYTES);
+
+        if (BuildConfig.DEBUG) {
+            metrics = new HistogramMetrics();
+            imageProcessor.setMetrics(metrics);
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        scheduler.shutdown();
+        super.onDestroy();
     }
 
     @Override
@@ -108,6 +140,14 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
                     effectType = 5;
                     askForInput(0, 255);
                     break;
+                case R.id.effect6:
+                    effectType = 6;
+                    showEffect();
+                    break;
+                case R.id.effect7:
+                    effectType = 7;
+                    showEffect();
+                    break;
                 default:
                     break;
             }
@@ -158,11 +198,14 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
 
                     ArrayList<String> photos = data.getStringArrayListExtra(PhotoPickerActivity.KEY_SELECTED_PHOTOS);
 
-                    BitmapFactory.Options options = new BitmapFactory.Options();
-                    options.inPreferredConfig = Bitmap.Config.ARGB_8888;
-                    bitmap = BitmapFactory.decodeFile(photos.get(0), options);
+                    // effects run on what is shown, so there is no use decoding more
+                    // pixels than the screen has; either side may end up the long one
+                    DisplayMetrics display = getResources().getDisplayMetrics();
+                    int side = Math.max(display.widthPixels, display.heightPixels);
+                    bitmap = decodeCache.decode(photos.get(0), side, side);
                     imgOriginal.setImageBitmap(bitmap);
                     imgEffect.setImageBitmap(bitmap);
+                    displayed = bitmap;
                 }
             }
 
@@ -171,9 +214,9 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
 
     private void showEffect() {
 
-        imageProcessor.setImage(bitmap);
         showLoadingWheel();
-        new processEffect().execute();
+        // supersedes the effect still being computed, if any
+        new processEffect().execute(scheduler, EFFECT_ON_SCREEN, EffectScheduler.PRIORITY_INTERACTIVE);
 
     }
 
@@ -221,45 +264,105 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         builder.show();
     }
 
-    class processEffect extends AsyncTask<Void, Void, Bitmap> {
+    class processEffect extends EffectTask implements ImageProcessor.ProgressListener {
+
+        // what to compute, fixed when the task is created
+        private final Bitmap source = bitmap;
+        private final int effectType = MainActivity.this.effectType;
+        private final int effectValue = MainActivity.this.effectValue;
+        private final int replacedColor = MainActivity.this.replacedColor;
+        private final int replacingColor = MainActivity.this.replacingColor;
+        // tasks are created on the main thread, after the previous one is cancelled
+        private final int bufferIndex = displayed == effectBuffers[0] ? 1 : 0;
+
+        private Bitmap shown;
 
         @Override
-        protected Bitmap doInBackground(Void... voids) {
+        protected Bitmap doInBackground(Cancellation cancellation) {
+
+            // tasks run one at a time, so no other task uses the processor meanwhile
+            imageProcessor.setImage(source);
+            imageProcessor.setProgressListener(this, cancellation);
+            try {
+                return applyEffect();
+            } finally {
+                imageProcessor.setProgressListener(null);
+            }
+
+        }
+
+        private Bitmap applyEffect() {
 
             switch (effectType) {
                 case 0:
                     return imageProcessor.getColorReplace(replacedColor == 0 ? Color.BLACK : replacedColor, replacingColor == 0 ? Color.WHITE : replacingColor);
                 case 1:
-                    return imageProcessor.getHueEffect(effectValue);
+                    return imageProcessor.getHueEffect(effectValue, buffer(Bitmap.Config.ARGB_8888));
                 case 2:
                     return imageProcessor.getEmbossEffect();
                 case 3:
-                    return imageProcessor.getSmoothEffect(effectValue);
+                    return imageProcessor.getSmoothEffect(effectValue, buffer(source.getConfig()));
                 case 4:
-                    return imageProcessor.getBrightnessEffect(effectValue);
+                    return imageProcessor.getBrightnessEffect(effectValue, buffer(source.getConfig()));
                 case 5:
                     return imageProcessor.getSnowEffect(effectValue);
+                case 6:
+                    return imageProcessor.getAutoLevelsEffect();
+                case 7:
+                    return imageProcessor.getEqualizeEffect();
                 default:
                     return null;
             }
 
         }
 
+        /**
+         * @return this task's effect buffer, made to fit the image and config
+         */
+        private Bitmap buffer(Bitmap.Config config) {
+            Bitmap buffer = effectBuffers[bufferIndex];
+            if (buffer == null || buffer.getWidth() != source.getWidth() || buffer.getHeight() != source.getHeight()
+                    || buffer.getConfig() != config) {
+                buffer = Bitmap.createBitmap(source.getWidth(), source.getHeight(), config);
+                effectBuffers[bufferIndex] = buffer;
+            }
+            return buffer;
+        }
+
+        @Override
+        public void onPreview(Bitmap preview) {
+            publishProgress(preview);
+        }
+
+        @Override
+        public void onProgress(Bitmap result, int percent) {
+            publishProgress(result);
+        }
+
         @Override
         protected void onPostExecute(Bitmap bitmap) {
             super.onPostExecute(bitmap);
 
-            imgEffect.setImageBitmap(bitmap);
+            show(bitmap);
             dismissLoadingWheel();
+
+            if (metrics != null) {
+                Log.d(TAG, metrics.toString());
+            }
         }
 
+        @Override
+        protected void onError(Throwable e) {
+            super.onError(e);
+
+            Log.e(TAG, "Effect " + effectType + " failed", e);
+            dismissLoadingWheel();
+            Toast.makeText(MainActivity.this, R.string.effect_failed, Toast.LENGTH_LONG).show();
+        }
 
         @Override
         protected void onPreExecute() {
             switch (effectType) {
-                case 1:
-                    Toast.makeText(MainActivity.this, "This will take some time", Toast.LENGTH_LONG).show();
-                    break;
                 case 2:
                     Toast.makeText(MainActivity.this, "This will take some time", Toast.LENGTH_LONG).show();
                     break;
@@ -273,8 +376,23 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         }
 
         @Override
-        protected void onProgressUpdate(Void... values) {
+        protected void onProgressUpdate(Bitmap... values) {
 
+            // something to look at already, the full resolution result keeps coming in
+            dismissLoadingWheel();
+            show(values[0]);
+
+        }
+
+        private void show(Bitmap bitmap) {
+            if (bitmap == shown) {
+                // the same bitmap with more tiles filled in
+                imgEffect.invalidate();
+            } else {
+                imgEffect.setImageBitmap(bitmap);
+                shown = bitmap;
+                displayed = bitmap;
+            }
         }
 
     }
@@ -0,0 +1,120 @@
+package com.anthony.imageprocessing;
+
+import android.graphics.Bitmap;
+
+import com.anthony.imageprocessing.core.GrayRaster;
+import com.anthony.imageprocessing.core.PixelFormats;
+import com.anthony.imageprocessing.core.Raster;
+import com.anthony.imageprocessing.core.Rgb565Raster;
+
+import java.nio.ShortBuffer;
+
+/**
+ * Moves pixels between android Bitmaps and the platform independent {@link Raster}.
+ * <p/>
+ * {@link Rgb565Raster}s are copied as they are to and from RGB_565 bitmaps, and
+ * converted a row at a time for any other config. {@link GrayRaster}s are always
+ * converted, android has no bitmap config for 8 bit gray.
+ */
+public class RasterBitmaps {
+
+    private RasterBitmaps() {
+    }
+
+    public static Raster toRaster(Bitmap bitmap) {
+        Raster raster = Raster.create(bitmap.getWidth(), bitmap.getHeight());
+        readPixels(bitmap, raster);
+        return raster;
+    }
+
+    public static Bitmap toBitmap(Raster raster, Bitmap.Config config) {
+        Bitmap bitmap = Bitmap.createBitmap(raster.width, raster.height, config);
+        writePixels(raster, bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Copy the pixels of bitmap into raster, which must have the same size.
+     */
+    public static void readPixels(Bitmap bitmap, Raster raster) {
+        checkSize(bitmap, raster);
+        bitmap.getPixels(raster.pixels, raster.offset, raster.stride, 0, 0, raster.width, raster.height);
+    }
+
+    /**
+     * Copy the pixels of raster into bitmap, which must be mutable and have the same size.
+     */
+    public static void writePixels(Raster raster, Bitmap bitmap) {
+        checkSize(bitmap, raster);
+        bitmap.setPixels(raster.pixels, raster.offset, raster.stride, 0, 0, raster.width, raster.height);
+    }
+
+    /**
+     * Copy the pixels of bitmap into raster, which must have the same size.
+     */
+    public static void readPixels(Bitmap bitmap, Rgb565Raster raster) {
+        checkSize(bitmap, raster.width, raster.height);
+        if (bitmap.getConfig() == Bitmap.Config.RGB_565 && raster.stride == raster.width) {
+            bitmap.copyPixelsToBuffer(ShortBuffer.wrap(raster.pixels, raster.offset, raster.width * raster.height));
+            return;
+        }
+        int[] row = new int[raster.width];
+        for (int y = 0; y < raster.height; ++y) {
+            bitmap.getPixels(row, 0, raster.width, 0, y, raster.width, 1);
+            PixelFormats.toRgb565(row, 0, raster.pixels, raster.index(0, y), raster.width);
+        }
+    }
+
+    /**
+     * Copy the pixels of raster into bitmap, which must be mutable and have the same size.
+     */
+    public static void writePixels(Rgb565Raster raster, Bitmap bitmap) {
+        checkSize(bitmap, raster.width, raster.height);
+        if (bitmap.getConfig() == Bitmap.Config.RGB_565 && raster.stride == raster.width) {
+            bitmap.copyPixelsFromBuffer(ShortBuffer.wrap(raster.pixels, raster.offset, raster.width * raster.height));
+            return;
+        }
+        int[] row = new int[raster.width];
+        for (int y = 0; y < raster.height; ++y) {
+            PixelFormats.rgb565ToArgb(raster.pixels, raster.index(0, y), row, 0, raster.width);
+            bitmap.setPixels(row, 0, raster.width, 0, y, raster.width, 1);
+        }
+    }
+
+    /**
+     * Copy the luma of the pixels of bitmap into raster, which must have the same size.
+     */
+    public static void readPixels(Bitmap bitmap, GrayRaster raster) {
+        checkSize(bitmap, raster.width, raster.height);
+        int[] row = new int[raster.width];
+        for (int y = 0; y < raster.height; ++y) {
+            bitmap.getPixels(row, 0, raster.width, 0, y, raster.width, 1);
+            PixelFormats.toGray(row, 0, raster.pixels, raster.index(0, y), raster.width);
+        }
+    }
+
+    /**
+     * Copy the pixels of raster into bitmap as shades of gray; bitmap must be
+     * mutable and have the same size.
+     */
+    public static void writePixels(GrayRaster raster, Bitmap bitmap) {
+        checkSize(bitmap, raster.width, raster.height);
+        int[] row = new int[raster.width];
+        for (int y = 0; y < raster.height; ++y) {
+            PixelFormats.grayToArgb(raster.pixels, raster.index(0, y), row, 0, raster.width);
+            bitmap.setPixels(row, 0, raster.width, 0, y, raster.width, 1);
+        }
+    }
+
+    private static void checkSize(Bitmap bitmap, Raster raster) {
+        checkSize(bitmap, raster.width, raster.height);
+    }
+
+    private static void checkSize(Bitmap bitmap, int width, int height) {
+        if (bitmap.getWidth() != width || bitmap.getHeight() != height) {
+            throw new IllegalArgumentException("Bitmap is " + bitmap.getWidth() + "x" + bitmap.getHeight()
+                    + ", expected " + width + "x" + height);
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.anthony.imageprocessing;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+
+import com.anthony.imageprocessing.core.Raster;
+import com.anthony.imageprocessing.core.TileSource;
+
+import java.io.IOException;
+
+/**
+ * Decodes an encoded image (JPEG or PNG) a rectangle at a time with
+ * {@link BitmapRegionDecoder}, so the whole image never has to fit in memory.
+ * <p/>
+ * Tiles of the same size are decoded into the same bitmap again.
+ */
+public class RegionDecoderTileSource implements TileSource {
+
+    private final BitmapRegionDecoder mDecoder;
+    private final BitmapFactory.Options mOptions = new BitmapFactory.Options();
+    private final Rect mRect = new Rect();
+
+    public RegionDecoderTileSource(String path) throws IOException {
+        mDecoder = BitmapRegionDecoder.newInstance(path, false);
+        mOptions.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        mOptions.inMutable = true;
+    }
+
+    @Override
+    public int getWidth() {
+        return mDecoder.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return mDecoder.getHeight();
+    }
+
+    @Override
+    public synchronized void read(int x, int y, Raster dst) throws IOException {
+        Bitmap reuse = mOptions.inBitmap;
+        if (reuse != null && (reuse.getWidth() != dst.width || reuse.getHeight() != dst.height)) {
+            // before KitKat only a bitmap of exactly the decoded size can be reused
+            mOptions.inBitmap = null;
+        }
+        mRect.set(x, y, x + dst.width, y + dst.height);
+        Bitmap tile = mDecoder.decodeRegion(mRect, mOptions);
+        if (tile == null) {
+            throw new IOException("Could not decode region " + dst.width + "x" + dst.height
+                    + " at (" + x + ", " + y + ")");
+        }
+        RasterBitmaps.readPixels(tile, dst);
+        mOptions.inBitmap = tile;
+    }
+
+    public void close() {
+        mDecoder.recycle();
+    }
+
+}
@@ -0,0 +1,129 @@
+package com.anthony.imageprocessing.benchmark;
+
+import com.anthony.imageprocessing.core.BrightnessEffect;
+import com.anthony.imageprocessing.core.ChannelLut;
+import com.anthony.imageprocessing.core.ColorMapEffect;
+import com.anthony.imageprocessing.core.ColorReplaceEffect;
+import com.anthony.imageprocessing.core.ConvolutionEngine;
+import com.anthony.imageprocessing.core.Effect;
+import com.anthony.imageprocessing.core.HueEffect;
+import com.anthony.imageprocessing.core.Raster;
+import com.anthony.imageprocessing.core.Resampler;
+import com.anthony.imageprocessing.core.SnowEffect;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One benchmark per ImageProcessor effect, configured the way ImageProcessor
+ * configures them, plus a general (non separable) convolution.
+ * <p/>
+ * The score is effect runs per second; the megapixels counter gives the same
+ * as megapixels per second, and gc.alloc.rate.norm the bytes allocated per run.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class EffectBenchmark {
+
+    private static final Effect COLOR_REPLACE = new ColorReplaceEffect(0xFF808080, 0xFFFFFFFF, 60);
+    private static final Effect COLOR_MAP = colorMap(32);
+    private static final Effect HUE = new HueEffect(3);
+    private static final Effect EMBOSS = new ConvolutionEngine(new double[][]{
+            {-1, 0, -1},
+            {0, 4, 0},
+            {-1, 0, -1}
+    }, 1, 127);
+    private static final Effect SMOOTH = new ConvolutionEngine(new double[][]{
+            {1, 1, 1},
+            {1, 5, 1},
+            {1, 1, 1}
+    }, 13, 1);
+    private static final Effect BRIGHTNESS = ChannelLut.brightness(40);
+    private static final Effect BRIGHTNESS_SWAR = new BrightnessEffect(40);
+    private static final Effect SNOW = new SnowEffect(120, 42);
+    private static final Effect SHARPEN = new ConvolutionEngine(new double[][]{
+            {0, -1, 0},
+            {-1, 6, -2},
+            {0, -1, 0}
+    }, 1, 0);
+
+    @Benchmark
+    public Object colorReplace(ImageState image, Megapixels counter) {
+        return image.run(COLOR_REPLACE, counter);
+    }
+
+    @Benchmark
+    public Object colorMap(ImageState image, Megapixels counter) {
+        return image.run(COLOR_MAP, counter);
+    }
+
+    @Benchmark
+    public Object hue(ImageState image, Megapixels counter) {
+        return image.run(HUE, counter);
+    }
+
+    @Benchmark
+    public Object emboss(ImageState image, Megapixels counter) {
+        return image.run(EMBOSS, counter);
+    }
+
+    @Benchmark
+    public Object smooth(ImageState image, Megapixels counter) {
+        return image.run(SMOOTH, counter);
+    }
+
+    @Benchmark
+    public Object brightness(ImageState image, Megapixels counter) {
+        return image.run(BRIGHTNESS, counter);
+    }
+
+    @Benchmark
+    public Object brightnessSwar(ImageState image, Megapixels counter) {
+        return image.run(BRIGHTNESS_SWAR, counter);
+    }
+
+    @Benchmark
+    public Object snow(ImageState image, Megapixels counter) {
+        return image.run(SNOW, counter);
+    }
+
+    @Benchmark
+    public Object convolution(ImageState image, Megapixels counter) {
+        return image.run(SHARPEN, counter);
+    }
+
+    @Benchmark
+    public Raster downscaleArea(ImageState image, Megapixels counter) {
+        return image.resize(Resampler.FILTER_AREA, counter);
+    }
+
+    @Benchmark
+    public Raster downscaleLanczos(ImageState image, Megapixels counter) {
+        return image.resize(Resampler.FILTER_LANCZOS, counter);
+    }
+
+    /**
+     * A palette of colors spread over the RGB cube, each replaced by its inverse
+     */
+    private static Effect colorMap(int colors) {
+        int[] from = new int[colors];
+        int[] to = new int[colors];
+        for (int k = 0; k < colors; ++k) {
+            int color = 0xFF000000 | (int) (k * 0x00FFFFFFL / colors);
+            from[k] = color;
+            to[k] = color ^ 0x00FFFFFF;
+        }
+        return new ColorMapEffect(from, to, 10, ColorMapEffect.SPACE_CIELAB);
+    }
+
+}
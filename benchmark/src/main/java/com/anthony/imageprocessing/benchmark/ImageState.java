@@ -0,0 +1,121 @@
+package com.anthony.imageprocessing.benchmark;
+
+import com.anthony.imageprocessing.core.Effect;
+import com.anthony.imageprocessing.core.ParallelExecutor;
+import com.anthony.imageprocessing.core.PixelFormats;
+import com.anthony.imageprocessing.core.PointEffect;
+import com.anthony.imageprocessing.core.Raster;
+import com.anthony.imageprocessing.core.Resampler;
+import com.anthony.imageprocessing.core.Rgb565Effect;
+import com.anthony.imageprocessing.core.Rgb565Lut;
+import com.anthony.imageprocessing.core.Rgb565Raster;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Random;
+
+/**
+ * Source image and output buffer shared by every benchmark, for each
+ * combination of image size, pixel config and execution mode.
+ */
+@State(Scope.Benchmark)
+public class ImageState {
+
+    /** VGA, 1080p, 12 MP (4000x3000) and 24 MP (6000x4000) */
+    @Param({"640x480", "1920x1080", "4000x3000", "6000x4000"})
+    public String size;
+
+    /**
+     * Pixel config of the Bitmap the pixels came from. Like ImageProcessor,
+     * effects run on RGB_565 images without widening them to ARGB when they
+     * can: {@link Rgb565Effect}s directly, other position independent point
+     * effects through an {@link Rgb565Lut} built for the run. The remaining
+     * effects, and resizing, see the 5/6/5 bits expanded to ARGB like
+     * Bitmap#getPixels does.
+     */
+    @Param({"ARGB_8888", "RGB_565"})
+    public String config;
+
+    /** sequential runs on the benchmark thread only, parallel uses every core */
+    @Param({"sequential", "parallel"})
+    public String mode;
+
+    public Raster src;
+    public Raster dst;
+    /** src and an output buffer as RGB 565, null for ARGB_8888 */
+    public Rgb565Raster src565;
+    public Rgb565Raster dst565;
+    /** a quarter of the width and height of src */
+    public Raster quarter;
+    public ParallelExecutor executor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] dimensions = size.split("x");
+        int width = Integer.parseInt(dimensions[0]);
+        int height = Integer.parseInt(dimensions[1]);
+
+        src = TestImages.photo(width, height, new Random(42));
+        if ("RGB_565".equals(config)) {
+            TestImages.quantizeTo565(src);
+            src565 = Rgb565Raster.create(width, height);
+            PixelFormats.convert(src, src565);
+            dst565 = src565.sameSize();
+        } else if (!"ARGB_8888".equals(config)) {
+            throw new IllegalArgumentException("Unknown config " + config);
+        }
+        dst = src.sameSize();
+        quarter = Raster.create(width / 4, height / 4);
+
+        executor = new ParallelExecutor("parallel".equals(mode) ? ParallelExecutor.defaultParallelism() : 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    /**
+     * @return the output, a Raster or for RGB_565 images possibly an Rgb565Raster
+     */
+    public Object run(Effect effect, Megapixels counter) {
+        counter.megapixels += src.width * (double) src.height / 1e6;
+        Rgb565Effect effect565 = rgb565Effect(effect);
+        if (effect565 != null) {
+            executor.run(effect565, src565, dst565, 0, src565.height, null);
+            return dst565;
+        }
+        executor.run(effect, src, dst);
+        return dst;
+    }
+
+    /**
+     * @return effect as ImageProcessor runs it on an RGB_565 image, or null
+     * when the image is ARGB_8888 or the effect needs ARGB
+     */
+    private Rgb565Effect rgb565Effect(Effect effect) {
+        if (src565 == null) {
+            return null;
+        }
+        if (effect instanceof Rgb565Effect) {
+            return (Rgb565Effect) effect;
+        }
+        // like ImageProcessor, the table is built anew for every run
+        if (effect instanceof PointEffect) {
+            return Rgb565Lut.of((PointEffect) effect);
+        }
+        return null;
+    }
+
+    public Raster resize(int filter, Megapixels counter) {
+        Resampler.resize(src, quarter, filter, executor, null);
+        counter.megapixels += src.width * (double) src.height / 1e6;
+        return quarter;
+    }
+
+}
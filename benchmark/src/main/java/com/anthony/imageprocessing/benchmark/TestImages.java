@@ -0,0 +1,48 @@
+package com.anthony.imageprocessing.benchmark;
+
+import com.anthony.imageprocessing.core.Raster;
+
+import java.util.Random;
+
+/**
+ * Synthetic images with photo like statistics: smooth gradients plus noise,
+ * so effects with data dependent branches see a realistic mix of pixels.
+ */
+final class TestImages {
+
+    private TestImages() {
+    }
+
+    static Raster photo(int width, int height, Random random) {
+        Raster raster = Raster.create(width, height);
+        int[] pixels = raster.pixels;
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                int r = clamp(x * 255 / width + random.nextInt(32) - 16);
+                int g = clamp(y * 255 / height + random.nextInt(32) - 16);
+                int b = clamp((x + y) * 255 / (width + height) + random.nextInt(32) - 16);
+                pixels[y * width + x] = 0xFF000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+        return raster;
+    }
+
+    /**
+     * Drop the bits an RGB_565 Bitmap cannot hold, and expand back to 8 bits per
+     * channel the way Skia does.
+     */
+    static void quantizeTo565(Raster raster) {
+        int[] pixels = raster.pixels;
+        for (int i = 0; i < pixels.length; ++i) {
+            int r = (pixels[i] >> 19) & 0x1F;
+            int g = (pixels[i] >> 10) & 0x3F;
+            int b = (pixels[i] >> 3) & 0x1F;
+            pixels[i] = 0xFF000000 | ((r << 3 | r >> 2) << 16) | ((g << 2 | g >> 4) << 8) | (b << 3 | b >> 2);
+        }
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+}
@@ -0,0 +1,252 @@
+package com.anthony.imageprocessing.core;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Applies an {@link EffectPipeline} to many image files.
+ * <p/>
+ * Decoding, processing and encoding are separate stages connected by bounded
+ * queues, so reading the next files and writing the previous ones overlaps
+ * with the effects. The decode and encode stages get I/O threads, which
+ * mostly wait on storage, and the process stage gets CPU threads, each working
+ * on a whole image of its own, which beats splitting every image into strips
+ * when there are plenty of images. A full queue holds back the stage feeding
+ * it, which bounds the number of images in memory.
+ * <p/>
+ * A file that fails to decode, process or encode, errors such as running out
+ * of memory included, is recorded in the report and the others carry on.
+ */
+public class BatchProcessor {
+
+    private static final int QUEUE_CAPACITY = 2;
+
+    private final ImageCodec mCodec;
+    private final int mIoThreads;
+    private final int mCpuThreads;
+    private final BufferPool mPool;
+
+    /**
+     * @param ioThreads  threads for decoding, and as many again for encoding
+     * @param cpuThreads images processed at once
+     */
+    public BatchProcessor(ImageCodec codec, int ioThreads, int cpuThreads, BufferPool pool) {
+        if (ioThreads < 1 || cpuThreads < 1) {
+            throw new IllegalArgumentException("Need at least one thread per stage, got "
+                    + ioThreads + " I/O and " + cpuThreads + " CPU threads");
+        }
+        mCodec = codec;
+        mIoThreads = ioThreads;
+        mCpuThreads = cpuThreads;
+        mPool = pool;
+    }
+
+    /**
+     * Process every file of directory, see {@link #process(List, File, EffectPipeline, Cancellation)}.
+     */
+    public BatchReport process(File directory, File outputDirectory, EffectPipeline recipe,
+                               Cancellation cancellation) {
+        File[] files = directory.listFiles();
+        List<File> inputs = new ArrayList<File>();
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                if (file.isFile()) {
+                    inputs.add(file);
+                }
+            }
+        }
+        return process(inputs, outputDirectory, recipe, cancellation);
+    }
+
+    /**
+     * Run recipe over every input, writing the result to a file of the same
+     * name in outputDirectory. Blocks until all are done.
+     *
+     * @param cancellation stops the run when cancelled, or null
+     * @throws CancellationException if cancelled; files written by then stay
+     */
+    public BatchReport process(final List<File> inputs, final File outputDirectory, final EffectPipeline recipe,
+                               final Cancellation cancellation) {
+        final BlockingQueue<Item> decoded = new ArrayBlockingQueue<Item>(QUEUE_CAPACITY * mCpuThreads);
+        final BlockingQueue<Item> processed = new ArrayBlockingQueue<Item>(QUEUE_CAPACITY * mIoThreads);
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger decoders = new AtomicInteger(mIoThreads);
+        final AtomicInteger processors = new AtomicInteger(mCpuThreads);
+
+        final AtomicInteger images = new AtomicInteger();
+        final AtomicLong pixels = new AtomicLong();
+        final AtomicLong decodeNanos = new AtomicLong();
+        final AtomicLong processNanos = new AtomicLong();
+        final AtomicLong encodeNanos = new AtomicLong();
+        final Map<File, Throwable> failures = Collections.synchronizedMap(new LinkedHashMap<File, Throwable>());
+
+        outputDirectory.mkdirs();
+        long start = System.nanoTime();
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for (int t = 0; t < mIoThreads; ++t) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        int index;
+                        while ((index = next.getAndIncrement()) < inputs.size() && !isCancelled(cancellation)) {
+                            File file = inputs.get(index);
+                            long begin = System.nanoTime();
+                            try {
+                                Raster raster = mCodec.decode(file, mPool);
+                                decodeNanos.addAndGet(System.nanoTime() - begin);
+                                decoded.put(new Item(file, raster));
+                            } catch (InterruptedException e) {
+                                return;
+                            } catch (Throwable e) {
+                                failures.put(file, e);
+                            }
+                        }
+                    } finally {
+                        if (decoders.decrementAndGet() == 0) {
+                            finish(decoded, mCpuThreads);
+                        }
+                    }
+                }
+            }, "batch-decode-" + t));
+        }
+
+        for (int t = 0; t < mCpuThreads; ++t) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    ParallelExecutor executor = new ParallelExecutor(1);
+                    try {
+                        Item item;
+                        while ((item = decoded.take()) != Item.END) {
+                            long begin = System.nanoTime();
+                            Raster result = null;
+                            try {
+                                result = mPool.acquire(item.mRaster.width, item.mRaster.height);
+                                recipe.run(item.mRaster, result, executor, mPool, cancellation);
+                                processNanos.addAndGet(System.nanoTime() - begin);
+                                processed.put(new Item(item.mFile, result));
+                                result = null;
+                            } catch (CancellationException e) {
+                                // drain the queue, the decoders may still be blocked on it
+                            } catch (InterruptedException e) {
+                                throw e;
+                            } catch (Throwable e) {
+                                // errors too, such as running out of memory on a large image: a
+                                // dead thread would leave the decoders blocked on a full queue
+                                failures.put(item.mFile, e);
+                            } finally {
+                                mPool.release(item.mRaster);
+                                mPool.release(result);
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        // only happens if someone else interrupts the batch
+                    } finally {
+                        executor.shutdown();
+                        if (processors.decrementAndGet() == 0) {
+                            finish(processed, mIoThreads);
+                        }
+                    }
+                }
+            }, "batch-process-" + t));
+        }
+
+        for (int t = 0; t < mIoThreads; ++t) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Item item;
+                        while ((item = processed.take()) != Item.END) {
+                            try {
+                                if (!isCancelled(cancellation)) {
+                                    long begin = System.nanoTime();
+                                    mCodec.encode(item.mRaster, new File(outputDirectory, item.mFile.getName()));
+                                    encodeNanos.addAndGet(System.nanoTime() - begin);
+                                    images.incrementAndGet();
+                                    pixels.addAndGet((long) item.mRaster.width * item.mRaster.height);
+                                }
+                            } catch (Throwable e) {
+                                failures.put(item.mFile, e);
+                            } finally {
+                                mPool.release(item.mRaster);
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        // only happens if someone else interrupts the batch
+                    }
+                }
+            }, "batch-encode-" + t));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        boolean interrupted = false;
+        for (Thread thread : threads) {
+            while (true) {
+                try {
+                    thread.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        Cancellation.check(cancellation);
+
+        return new BatchReport(images.get(), pixels.get(), System.nanoTime() - start, decodeNanos.get(),
+                processNanos.get(), encodeNanos.get(), new LinkedHashMap<File, Throwable>(failures));
+    }
+
+    private static boolean isCancelled(Cancellation cancellation) {
+        return cancellation != null && cancellation.isCancelled();
+    }
+
+    /**
+     * Tell each of the consumers of queue that nothing more is coming.
+     */
+    private static void finish(BlockingQueue<Item> queue, int consumers) {
+        for (int i = 0; i < consumers; ++i) {
+            while (true) {
+                try {
+                    queue.put(Item.END);
+                    break;
+                } catch (InterruptedException e) {
+                    // the consumers must learn about the end no matter what
+                }
+            }
+        }
+    }
+
+    private static class Item {
+
+        static final Item END = new Item(null, null);
+
+        final File mFile;
+        final Raster mRaster;
+
+        Item(File file, Raster raster) {
+            mFile = file;
+            mRaster = raster;
+        }
+
+    }
+
+}
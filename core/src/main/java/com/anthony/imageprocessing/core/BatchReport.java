@@ -0,0 +1,84 @@
+package com.anthony.imageprocessing.core;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * What a {@link BatchProcessor} run did and how long it took.
+ * <p/>
+ * Stage times add up the time every thread spent inside that stage, so with
+ * several threads per stage they can exceed the wall time.
+ */
+public class BatchReport {
+
+    private final int mImages;
+    private final long mPixels;
+    private final long mWallNanos;
+    private final long mDecodeNanos;
+    private final long mProcessNanos;
+    private final long mEncodeNanos;
+    private final Map<File, Throwable> mFailures;
+
+    BatchReport(int images, long pixels, long wallNanos, long decodeNanos, long processNanos, long encodeNanos,
+                Map<File, Throwable> failures) {
+        mImages = images;
+        mPixels = pixels;
+        mWallNanos = wallNanos;
+        mDecodeNanos = decodeNanos;
+        mProcessNanos = processNanos;
+        mEncodeNanos = encodeNanos;
+        mFailures = Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * @return images written successfully
+     */
+    public int getImages() {
+        return mImages;
+    }
+
+    public long getPixels() {
+        return mPixels;
+    }
+
+    public long getWallNanos() {
+        return mWallNanos;
+    }
+
+    public long getDecodeNanos() {
+        return mDecodeNanos;
+    }
+
+    public long getProcessNanos() {
+        return mProcessNanos;
+    }
+
+    public long getEncodeNanos() {
+        return mEncodeNanos;
+    }
+
+    /**
+     * @return the files that could not be done and why
+     */
+    public Map<File, Throwable> getFailures() {
+        return mFailures;
+    }
+
+    public double getImagesPerSecond() {
+        return mWallNanos > 0 ? mImages * 1e9 / mWallNanos : 0;
+    }
+
+    public double getMegapixelsPerSecond() {
+        return mWallNanos > 0 ? mPixels * 1e3 / mWallNanos : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d images, %d failed, %.1f MP in %.2f s: %.2f images/s, %.2f MP/s;"
+                        + " decode %.2f s, process %.2f s, encode %.2f s",
+                mImages, mFailures.size(), mPixels / 1e6, mWallNanos / 1e9, getImagesPerSecond(),
+                getMegapixelsPerSecond(), mDecodeNanos / 1e9, mProcessNanos / 1e9, mEncodeNanos / 1e9);
+    }
+
+}
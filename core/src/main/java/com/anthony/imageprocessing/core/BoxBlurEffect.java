@@ -0,0 +1,54 @@
+package com.anthony.imageprocessing.core;
+
+/**
+ * Average over a (2 * radius + 1) square window, computed with running sums so
+ * the cost per pixel does not depend on the radius.
+ */
+public class BoxBlurEffect implements ScalableEffect {
+
+    private final int mRadius;
+
+    public BoxBlurEffect(int radius) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("Radius must not be negative, was " + radius);
+        }
+        mRadius = radius;
+    }
+
+    @Override
+    public int radius() {
+        return mRadius;
+    }
+
+    @Override
+    public Effect scaled(double factor) {
+        return new BoxBlurEffect((int) Math.round(mRadius / factor));
+    }
+
+    @Override
+    public void apply(Raster src, Raster dst, int top, int bottom) {
+        if (top >= bottom) {
+            return;
+        }
+        int width = src.width;
+        int first = Math.max(0, top - mRadius);
+        int last = Math.min(src.height, bottom + mRadius);
+
+        BufferPool pool = BufferPool.getDefault();
+        // horizontally blurred rows [first, last)
+        int[] band = pool.acquire((last - first) * width);
+        int[] sums = pool.acquire(4 * width);
+        try {
+            for (int y = first; y < last; ++y) {
+                BoxFilter.horizontal(src.pixels, src.index(0, y), band, (y - first) * width, width, mRadius);
+            }
+
+            BoxFilter.vertical(band, -first * width, width, dst.pixels, dst.offset, dst.stride,
+                    width, src.height, top, bottom, mRadius, sums);
+        } finally {
+            pool.release(band);
+            pool.release(sums);
+        }
+    }
+
+}
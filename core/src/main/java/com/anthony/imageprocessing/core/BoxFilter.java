@@ -0,0 +1,108 @@
+package com.anthony.imageprocessing.core;
+
+/**
+ * Running-sum box filter passes over packed ARGB pixels. Every pass costs the
+ * same per pixel whatever the radius: one pixel enters the window and one
+ * leaves it. Pixels outside the image are clamped to the nearest edge pixel.
+ * <p/>
+ * All four channels are averaged and rounded to the nearest value.
+ */
+final class BoxFilter {
+
+    private BoxFilter() {
+    }
+
+    /**
+     * Blur one row of {@code width} pixels horizontally. in and out must not overlap.
+     */
+    static void horizontal(int[] in, int inPos, int[] out, int outPos, int width, int radius) {
+        long reciprocal = reciprocal(2 * radius + 1);
+        int last = width - 1;
+
+        int sumA = 0, sumR = 0, sumG = 0, sumB = 0;
+        for (int k = -radius; k <= radius; ++k) {
+            int pixel = in[inPos + Math.max(0, Math.min(k, last))];
+            sumA += pixel >>> 24;
+            sumR += (pixel >> 16) & 0xFF;
+            sumG += (pixel >> 8) & 0xFF;
+            sumB += pixel & 0xFF;
+        }
+
+        for (int x = 0; x < width; ++x) {
+            out[outPos + x] = pack(sumA, sumR, sumG, sumB, reciprocal);
+
+            int enter = in[inPos + Math.min(x + radius + 1, last)];
+            int leave = in[inPos + Math.max(x - radius, 0)];
+            sumA += (enter >>> 24) - (leave >>> 24);
+            sumR += ((enter >> 16) & 0xFF) - ((leave >> 16) & 0xFF);
+            sumG += ((enter >> 8) & 0xFF) - ((leave >> 8) & 0xFF);
+            sumB += (enter & 0xFF) - (leave & 0xFF);
+        }
+    }
+
+    /**
+     * Blur rows [top, bottom) of an image of {@code height} rows vertically.
+     * Row y is read from {@code in[inBase + y * inStride]} and written to
+     * {@code out[outBase + y * outStride]}, so the caller only needs to keep the
+     * rows [top - radius, bottom + radius), clamped to the image, around.
+     * in and out must not overlap.
+     *
+     * @param sums scratch space of at least 4 * width ints
+     */
+    static void vertical(int[] in, int inBase, int inStride, int[] out, int outBase, int outStride,
+                         int width, int height, int top, int bottom, int radius, int[] sums) {
+        long reciprocal = reciprocal(2 * radius + 1);
+        int last = height - 1;
+        int r = width, g = 2 * width, b = 3 * width;
+
+        for (int i = 0; i < 4 * width; ++i) {
+            sums[i] = 0;
+        }
+        for (int k = -radius; k <= radius; ++k) {
+            int row = inBase + Math.max(0, Math.min(top + k, last)) * inStride;
+            for (int x = 0; x < width; ++x) {
+                int pixel = in[row + x];
+                sums[x] += pixel >>> 24;
+                sums[r + x] += (pixel >> 16) & 0xFF;
+                sums[g + x] += (pixel >> 8) & 0xFF;
+                sums[b + x] += pixel & 0xFF;
+            }
+        }
+
+        for (int y = top; y < bottom; ++y) {
+            int o = outBase + y * outStride;
+            for (int x = 0; x < width; ++x) {
+                out[o + x] = pack(sums[x], sums[r + x], sums[g + x], sums[b + x], reciprocal);
+            }
+
+            if (y + 1 < bottom) {
+                int enter = inBase + Math.min(y + radius + 1, last) * inStride;
+                int leave = inBase + Math.max(y - radius, 0) * inStride;
+                for (int x = 0; x < width; ++x) {
+                    int e = in[enter + x];
+                    int l = in[leave + x];
+                    sums[x] += (e >>> 24) - (l >>> 24);
+                    sums[r + x] += ((e >> 16) & 0xFF) - ((l >> 16) & 0xFF);
+                    sums[g + x] += ((e >> 8) & 0xFF) - ((l >> 8) & 0xFF);
+                    sums[b + x] += (e & 0xFF) - (l & 0xFF);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 2^32 / n rounded up, so that {@code (sum * reciprocal) >>> 32} divides by n
+     */
+    private static long reciprocal(int n) {
+        return ((1L << 32) + n - 1) / n;
+    }
+
+    private static int pack(int a, int r, int g, int b, long reciprocal) {
+        long half = 1L << 31;
+        return (int) ((a * reciprocal + half) >>> 32) << 24
+                | (int) ((r * reciprocal + half) >>> 32) << 16
+                | (int) ((g * reciprocal + half) >>> 32) << 8
+                | (int) ((b * reciprocal + half) >>> 32);
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.anthony.imageprocessing.core;
+
+/**
+ * Add a constant to the R, G and B channels, clamping to 0..255 and keeping alpha.
+ * <p/>
+ * Two pixels are done at once: their R and B channels go into one long and
+ * their A and G channels into another, each channel in a 16 bit lane. One add
+ * or subtract then handles four channels, and the bit above each lane tells
+ * which of them went past 255 or below 0, so they can be clamped with masks
+ * instead of branches. The result is the same as clamping channel by channel.
+ */
+public class BrightnessEffect extends PointEffect {
+
+    private static final long LANE_LOW = 0x00FF00FF00FF00FFL;
+    private static final long LANE_GUARD = 0x0100010001000100L;
+
+    private final int mValue;
+    private final boolean mDarken;
+    // |value| in every R and B lane, and in the G lanes only, alpha stays
+    private final long mRedBlue;
+    private final long mAlphaGreen;
+
+    public BrightnessEffect(int value) {
+        mValue = value;
+        mDarken = value < 0;
+        long magnitude = Math.min(255, Math.abs(value));
+        mRedBlue = magnitude * 0x0001000100010001L;
+        mAlphaGreen = magnitude * 0x0000000100000001L;
+    }
+
+    @Override
+    public void filter(int[] src, int srcPos, int[] dst, int dstPos, int length, int x, int y) {
+        int i = 0;
+        for (; i + 1 < length; i += 2) {
+            int a = src[srcPos + i];
+            int b = src[srcPos + i + 1];
+            long rb = ((long) (a & 0x00FF00FF) << 32) | (b & 0x00FF00FF);
+            long ag = ((long) ((a >>> 8) & 0x00FF00FF) << 32) | ((b >>> 8) & 0x00FF00FF);
+
+            if (mDarken) {
+                // the guard bit absorbs the borrow, lanes that lost it went below 0
+                rb = (rb | LANE_GUARD) - mRedBlue;
+                long keep = rb & LANE_GUARD;
+                rb &= keep - (keep >>> 8);
+                ag = (ag | LANE_GUARD) - mAlphaGreen;
+                keep = ag & LANE_GUARD;
+                ag &= keep - (keep >>> 8);
+            } else {
+                // lanes that carried into the guard bit went past 255
+                rb += mRedBlue;
+                long over = rb & LANE_GUARD;
+                rb = (rb | (over - (over >>> 8))) & LANE_LOW;
+                ag += mAlphaGreen;
+                over = ag & LANE_GUARD;
+                ag = (ag | (over - (over >>> 8))) & LANE_LOW;
+            }
+
+            dst[dstPos + i] = (int) (rb >>> 32) | ((int) (ag >>> 32) << 8);
+            dst[dstPos + i + 1] = (int) rb | ((int) ag << 8);
+        }
+        if (i < length) {
+            dst[dstPos + i] = brighten(src[srcPos + i], mValue);
+        }
+    }
+
+    /**
+     * The channel by channel version, for a last odd pixel.
+     */
+    static int brighten(int pixel, int value) {
+        int r = Argb.clamp(((pixel >> 16) & 0xFF) + value);
+        int g = Argb.clamp(((pixel >> 8) & 0xFF) + value);
+        int b = Argb.clamp((pixel & 0xFF) + value);
+        return (pixel & 0xFF000000) | (r << 16) | (g << 8) | b;
+    }
+
+}
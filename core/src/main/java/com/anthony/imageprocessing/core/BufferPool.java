@@ -0,0 +1,181 @@
+package com.anthony.imageprocessing.core;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Recycles pixel and scratch arrays so that processing the same image size
+ * over and over stops allocating.
+ * <p/>
+ * Arrays are grouped by length into buckets a quarter octave apart (1024,
+ * 1280, 1536, 1792, 2048, 2560, ...), so an array is handed out for any request
+ * at most 25% smaller than it. Released arrays are kept up to a total size
+ * limit; beyond that they are left to the garbage collector.
+ * <p/>
+ * Arrays come back with whatever content they had when released.
+ */
+public class BufferPool {
+
+    private static final int MIN_BUCKET = 1024;
+    private static final BufferPool sDefault = new BufferPool(Runtime.getRuntime().maxMemory() / 4);
+
+    private final long mMaxRetainedBytes;
+    private final Map<Integer, ArrayDeque<int[]>> mBuckets = new HashMap<Integer, ArrayDeque<int[]>>();
+    private final Map<Integer, ArrayDeque<long[]>> mLongBuckets = new HashMap<Integer, ArrayDeque<long[]>>();
+    private long mRetainedBytes;
+
+    private long mHits;
+    private long mMisses;
+    private long mAllocatedBytes;
+
+    /**
+     * @param maxRetainedBytes how much memory released arrays may hold on to
+     */
+    public BufferPool(long maxRetainedBytes) {
+        mMaxRetainedBytes = maxRetainedBytes;
+    }
+
+    /**
+     * @return the pool the effects use for their scratch memory, keeping up to a quarter of the heap
+     */
+    public static BufferPool getDefault() {
+        return sDefault;
+    }
+
+    /**
+     * @return an array of at least minLength ints
+     */
+    public int[] acquire(int minLength) {
+        int size = bucketSize(minLength);
+        synchronized (this) {
+            ArrayDeque<int[]> bucket = mBuckets.get(size);
+            if (bucket != null && !bucket.isEmpty()) {
+                ++mHits;
+                mRetainedBytes -= 4L * size;
+                return bucket.pop();
+            }
+            ++mMisses;
+            mAllocatedBytes += 4L * size;
+        }
+        return new int[size];
+    }
+
+    /**
+     * @return a tightly packed raster backed by a pooled array
+     */
+    public Raster acquire(int width, int height) {
+        return new Raster(acquire(width * height), width, height);
+    }
+
+    /**
+     * Hand an array obtained from {@link #acquire(int)} back to the pool.
+     * Arrays of other lengths are ignored.
+     */
+    public void release(int[] buffer) {
+        if (buffer == null || buffer.length != bucketSize(buffer.length)) {
+            return;
+        }
+        synchronized (this) {
+            if (mRetainedBytes + 4L * buffer.length > mMaxRetainedBytes) {
+                return;
+            }
+            ArrayDeque<int[]> bucket = mBuckets.get(buffer.length);
+            if (bucket == null) {
+                bucket = new ArrayDeque<int[]>();
+                mBuckets.put(buffer.length, bucket);
+            }
+            bucket.push(buffer);
+            mRetainedBytes += 4L * buffer.length;
+        }
+    }
+
+    /**
+     * @return an array of at least minLength longs, for kernels packing several channels into one value
+     */
+    public long[] acquireLongs(int minLength) {
+        int size = bucketSize(minLength);
+        synchronized (this) {
+            ArrayDeque<long[]> bucket = mLongBuckets.get(size);
+            if (bucket != null && !bucket.isEmpty()) {
+                ++mHits;
+                mRetainedBytes -= 8L * size;
+                return bucket.pop();
+            }
+            ++mMisses;
+            mAllocatedBytes += 8L * size;
+        }
+        return new long[size];
+    }
+
+    /**
+     * Hand an array obtained from {@link #acquireLongs(int)} back to the pool.
+     */
+    public void release(long[] buffer) {
+        if (buffer == null || buffer.length != bucketSize(buffer.length)) {
+            return;
+        }
+        synchronized (this) {
+            if (mRetainedBytes + 8L * buffer.length > mMaxRetainedBytes) {
+                return;
+            }
+            ArrayDeque<long[]> bucket = mLongBuckets.get(buffer.length);
+            if (bucket == null) {
+                bucket = new ArrayDeque<long[]>();
+                mLongBuckets.put(buffer.length, bucket);
+            }
+            bucket.push(buffer);
+            mRetainedBytes += 8L * buffer.length;
+        }
+    }
+
+    public void release(Raster raster) {
+        if (raster != null) {
+            release(raster.pixels);
+        }
+    }
+
+    /**
+     * Drop every retained array.
+     */
+    public synchronized void clear() {
+        mBuckets.clear();
+        mLongBuckets.clear();
+        mRetainedBytes = 0;
+    }
+
+    public synchronized long getRetainedBytes() {
+        return mRetainedBytes;
+    }
+
+    /**
+     * @return how many requests were served from retained arrays
+     */
+    public synchronized long getHits() {
+        return mHits;
+    }
+
+    /**
+     * @return how many requests had to allocate a new array
+     */
+    public synchronized long getMisses() {
+        return mMisses;
+    }
+
+    /**
+     * @return bytes allocated for requests that missed the pool, since it was created
+     */
+    public synchronized long getAllocatedBytes() {
+        return mAllocatedBytes;
+    }
+
+    static int bucketSize(int length) {
+        if (length <= MIN_BUCKET) {
+            return MIN_BUCKET;
+        }
+        int highBit = 31 - Integer.numberOfLeadingZeros(length - 1);
+        int step = 1 << (highBit - 2);
+        return ((length - 1) / step + 1) * step;
+    }
+
+}
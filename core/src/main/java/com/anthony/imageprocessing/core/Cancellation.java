@@ -0,0 +1,39 @@
+package com.anthony.imageprocessing.core;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Asks running work to stop. Work checks it between rows or tiles and gives
+ * up by throwing {@link CancellationException}, leaving its output incomplete.
+ */
+public class Cancellation {
+
+    private volatile boolean mCancelled;
+
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * @throws CancellationException if cancelled
+     */
+    public void check() {
+        if (mCancelled) {
+            throw new CancellationException();
+        }
+    }
+
+    /**
+     * Like {@link #check()} for an optional cancellation.
+     */
+    static void check(Cancellation cancellation) {
+        if (cancellation != null && cancellation.mCancelled) {
+            throw new CancellationException();
+        }
+    }
+
+}
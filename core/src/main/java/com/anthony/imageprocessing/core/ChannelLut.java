@@ -0,0 +1,215 @@
+package com.anthony.imageprocessing.core;
+
+/**
+ * A point effect defined by one 256 entry table per color channel. Alpha is kept.
+ * <p/>
+ * Tables are built once per parameter set, after which every pixel costs three
+ * table loads. Tables compose, so a chain of curves still costs three loads:
+ * {@code a.then(b)} maps v to {@code b[a[v]]}. On a {@link PlanarRaster} each
+ * plane streams through a byte table of its own.
+ */
+public class ChannelLut extends PointEffect implements PlanarEffect {
+
+    // entries are stored already shifted into their channel position
+    private final int[] mRed = new int[256];
+    private final int[] mGreen = new int[256];
+    private final int[] mBlue = new int[256];
+    // the same tables as plain bytes, for planar rasters
+    private final byte[] mRedBytes = new byte[256];
+    private final byte[] mGreenBytes = new byte[256];
+    private final byte[] mBlueBytes = new byte[256];
+
+    /**
+     * @param red   256 output values for the red channel, each in 0..255
+     * @param green 256 output values for the green channel
+     * @param blue  256 output values for the blue channel
+     */
+    public ChannelLut(int[] red, int[] green, int[] blue) {
+        for (int v = 0; v < 256; ++v) {
+            mRed[v] = Argb.clamp(red[v]) << 16;
+            mGreen[v] = Argb.clamp(green[v]) << 8;
+            mBlue[v] = Argb.clamp(blue[v]);
+            mRedBytes[v] = (byte) Argb.clamp(red[v]);
+            mGreenBytes[v] = (byte) Argb.clamp(green[v]);
+            mBlueBytes[v] = (byte) Argb.clamp(blue[v]);
+        }
+    }
+
+    /**
+     * The same table for all three channels
+     */
+    public ChannelLut(int[] table) {
+        this(table, table, table);
+    }
+
+    public static ChannelLut identity() {
+        int[] table = new int[256];
+        for (int v = 0; v < 256; ++v) {
+            table[v] = v;
+        }
+        return new ChannelLut(table);
+    }
+
+    /**
+     * Add value to every channel
+     */
+    public static ChannelLut brightness(int value) {
+        int[] table = new int[256];
+        for (int v = 0; v < 256; ++v) {
+            table[v] = v + value;
+        }
+        return new ChannelLut(table);
+    }
+
+    /**
+     * Scale the distance of every channel from mid gray by factor, 1 keeps the image as it is
+     */
+    public static ChannelLut contrast(double factor) {
+        int[] table = new int[256];
+        for (int v = 0; v < 256; ++v) {
+            table[v] = (int) Math.round((v - 127.5) * factor + 127.5);
+        }
+        return new ChannelLut(table);
+    }
+
+    /**
+     * Gamma correction, values above 1 brighten the mid tones
+     */
+    public static ChannelLut gamma(double gamma) {
+        return levels(0, 255, gamma, 0, 255);
+    }
+
+    /**
+     * Map [inLow, inHigh] onto [outLow, outHigh] through a gamma curve, clipping
+     * anything outside the input range.
+     */
+    public static ChannelLut levels(int inLow, int inHigh, double gamma, int outLow, int outHigh) {
+        return new ChannelLut(levelsTable(inLow, inHigh, gamma, outLow, outHigh));
+    }
+
+    /**
+     * Stretch each channel so that its darkest and brightest values, ignoring
+     * clip of the pixels at either end, become 0 and 255. Stretching the
+     * channels separately also removes a color cast.
+     *
+     * @param clip fraction of outliers ignored at each end, e.g. 0.005
+     */
+    public static ChannelLut autoLevels(ImageStatistics statistics, double clip) {
+        return new ChannelLut(autoLevelsTable(statistics, ImageStatistics.CHANNEL_RED, clip),
+                autoLevelsTable(statistics, ImageStatistics.CHANNEL_GREEN, clip),
+                autoLevelsTable(statistics, ImageStatistics.CHANNEL_BLUE, clip));
+    }
+
+    private static int[] autoLevelsTable(ImageStatistics statistics, int channel, double clip) {
+        int low = statistics.percentile(channel, clip);
+        int high = statistics.percentile(channel, 1 - clip);
+        if (high <= low) {
+            // a flat channel has nothing to stretch
+            return levelsTable(0, 255, 1, 0, 255);
+        }
+        return levelsTable(low, high, 1, 0, 255);
+    }
+
+    /**
+     * Histogram equalization of the luma: spread the brightness levels so that
+     * each is about as common as any other. The same curve is applied to R, G
+     * and B, which keeps the hues.
+     */
+    public static ChannelLut equalize(ImageStatistics statistics) {
+        long[] cumulative = statistics.cumulativeHistogram(ImageStatistics.CHANNEL_LUMA);
+        long total = cumulative[255];
+        long first = 0;
+        for (int v = 0; v < 256 && first == 0; ++v) {
+            first = cumulative[v];
+        }
+        if (total == first) {
+            // a single level, or an empty image
+            return identity();
+        }
+        int[] table = new int[256];
+        for (int v = 0; v < 256; ++v) {
+            table[v] = (int) Math.round(Math.max(0, cumulative[v] - first) * 255.0 / (total - first));
+        }
+        return new ChannelLut(table);
+    }
+
+    static int[] levelsTable(int inLow, int inHigh, double gamma, int outLow, int outHigh) {
+        if (inHigh <= inLow) {
+            throw new IllegalArgumentException("Input range [" + inLow + ", " + inHigh + "] is empty");
+        }
+        if (gamma <= 0) {
+            throw new IllegalArgumentException("Gamma must be positive, was " + gamma);
+        }
+        int[] table = new int[256];
+        for (int v = 0; v < 256; ++v) {
+            double t = Math.max(0, Math.min(1, (v - inLow) / (double) (inHigh - inLow)));
+            table[v] = (int) Math.round(outLow + Math.pow(t, 1 / gamma) * (outHigh - outLow));
+        }
+        return table;
+    }
+
+    /**
+     * @return a table applying this one first and then next
+     */
+    public ChannelLut then(ChannelLut next) {
+        int[] red = new int[256];
+        int[] green = new int[256];
+        int[] blue = new int[256];
+        for (int v = 0; v < 256; ++v) {
+            red[v] = next.mRed[mRed[v] >> 16] >> 16;
+            green[v] = next.mGreen[mGreen[v] >> 8] >> 8;
+            blue[v] = next.mBlue[mBlue[v]];
+        }
+        return new ChannelLut(red, green, blue);
+    }
+
+    @Override
+    public void apply(PlanarRaster src, PlanarRaster dst, int top, int bottom) {
+        byte[] red = mRedBytes;
+        byte[] green = mGreenBytes;
+        byte[] blue = mBlueBytes;
+        for (int y = top; y < bottom; ++y) {
+            int s = src.index(0, y);
+            int d = dst.index(0, y);
+            map(red, src.red, s, dst.red, d, src.width);
+            map(green, src.green, s, dst.green, d, src.width);
+            map(blue, src.blue, s, dst.blue, d, src.width);
+            if (src.alpha != dst.alpha || s != d) {
+                System.arraycopy(src.alpha, s, dst.alpha, d, src.width);
+            }
+        }
+    }
+
+    private static void map(byte[] table, byte[] src, int srcPos, byte[] dst, int dstPos, int length) {
+        for (int i = 0; i < length; ++i) {
+            dst[dstPos + i] = table[src[srcPos + i] & 0xFF];
+        }
+    }
+
+    public int red(int value) {
+        return mRed[value] >> 16;
+    }
+
+    public int green(int value) {
+        return mGreen[value] >> 8;
+    }
+
+    public int blue(int value) {
+        return mBlue[value];
+    }
+
+    @Override
+    public void filter(int[] src, int srcPos, int[] dst, int dstPos, int length, int x, int y) {
+        int[] red = mRed;
+        int[] green = mGreen;
+        int[] blue = mBlue;
+        for (int i = 0; i < length; ++i) {
+            int pixel = src[srcPos + i];
+            dst[dstPos + i] = (pixel & 0xFF000000)
+                    | red[(pixel >> 16) & 0xFF]
+                    | green[(pixel >> 8) & 0xFF]
+                    | blue[pixel & 0xFF];
+        }
+    }
+
+}
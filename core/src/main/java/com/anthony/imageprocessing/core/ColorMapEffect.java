@@ -0,0 +1,248 @@
+package com.anthony.imageprocessing.core;
+
+/**
+ * Replace colors close to any of a palette of source colors with their
+ * replacement, where close means within a tolerance in a perceptual color
+ * space: CIELAB, where the tolerance is a Delta E, or YCbCr. A pixel near
+ * several source colors takes the replacement of the nearest one. Alpha is
+ * replaced along with the color, as in {@link ColorReplaceEffect}.
+ * <p/>
+ * The RGB cube is divided into 32x32x32 cells of 8x8x8 colors. When the
+ * palette is set, each cell whose colors are all in range of the same source
+ * color, or of none, is resolved once into a table entry, so the pixels in it
+ * cost one table load no matter how long the palette is. Only pixels in the
+ * cells that a tolerance boundary goes through are converted to the color
+ * space, and compared against the few source colors near that cell.
+ */
+public class ColorMapEffect extends PointEffect {
+
+    public static final int SPACE_CIELAB = 0;
+    public static final int SPACE_YCBCR = 1;
+
+    public static final int MAX_COLORS = 64;
+
+    private static final int CELL_BITS = 5;
+    private static final int CELLS = 1 << CELL_BITS;
+    private static final int CELL_SIZE = 256 / CELLS;
+    /**
+     * Cells are classified by the distance from their center plus or minus
+     * their radius. Lab bends a little within a cell, so its radius gets a
+     * safety margin on top of the distance to the farthest corner.
+     */
+    private static final double LAB_CELL_MARGIN = 1.25;
+
+    // cube entries: the index of the replaced color, KEEP, or -2 - i for the
+    // i-th mixed cell, whose candidate colors are mCandidates[i]
+    private static final int KEEP = -1;
+
+    // sRGB to linear light, for CIELAB
+    private static final double[] LINEAR = new double[256];
+
+    static {
+        for (int v = 0; v < 256; ++v) {
+            double c = v / 255.0;
+            LINEAR[v] = c <= 0.04045 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4);
+        }
+    }
+
+    private final int mSpace;
+    private final int[] mTargetColors;
+    private final double[][] mFrom;
+    private final double[] mToleranceSquared;
+
+    private final int[] mCube = new int[CELLS * CELLS * CELLS];
+    private final long[] mCandidates;
+
+    /**
+     * @param fromColors   colors to replace
+     * @param targetColors the replacement of each of them
+     * @param tolerance    how far a color may be from a source color to be replaced,
+     *                     in the units of space, e.g. 10 Delta E
+     * @param space        {@link #SPACE_CIELAB} or {@link #SPACE_YCBCR}
+     */
+    public ColorMapEffect(int[] fromColors, int[] targetColors, double tolerance, int space) {
+        this(fromColors, targetColors, fill(fromColors.length, tolerance), space);
+    }
+
+    /**
+     * Like {@link #ColorMapEffect(int[], int[], double, int)}, with a tolerance per source color
+     */
+    public ColorMapEffect(int[] fromColors, int[] targetColors, double[] tolerances, int space) {
+        if (fromColors.length != targetColors.length || fromColors.length != tolerances.length) {
+            throw new IllegalArgumentException("Got " + fromColors.length + " colors to replace but "
+                    + targetColors.length + " replacements and " + tolerances.length + " tolerances");
+        }
+        if (fromColors.length > MAX_COLORS) {
+            throw new IllegalArgumentException("At most " + MAX_COLORS + " colors can be replaced at once");
+        }
+        if (space != SPACE_CIELAB && space != SPACE_YCBCR) {
+            throw new IllegalArgumentException("Unknown color space " + space);
+        }
+        mSpace = space;
+        mTargetColors = targetColors.clone();
+        mFrom = new double[fromColors.length][3];
+        mToleranceSquared = new double[fromColors.length];
+        for (int k = 0; k < fromColors.length; ++k) {
+            toSpace(space, Argb.red(fromColors[k]), Argb.green(fromColors[k]), Argb.blue(fromColors[k]), mFrom[k]);
+            mToleranceSquared[k] = tolerances[k] * tolerances[k];
+        }
+        mCandidates = buildCube();
+    }
+
+    private static double[] fill(int length, double value) {
+        double[] values = new double[length];
+        for (int i = 0; i < length; ++i) {
+            values[i] = value;
+        }
+        return values;
+    }
+
+    /**
+     * Resolve every cell that can be, and collect the candidates of the others.
+     *
+     * @return the candidate masks of the mixed cells
+     */
+    private long[] buildCube() {
+        long[] candidates = new long[64];
+        int mixed = 0;
+        double[] center = new double[3];
+        double[] corner = new double[3];
+
+        for (int cell = 0; cell < mCube.length; ++cell) {
+            int r0 = (cell >> (2 * CELL_BITS)) * CELL_SIZE;
+            int g0 = ((cell >> CELL_BITS) & (CELLS - 1)) * CELL_SIZE;
+            int b0 = (cell & (CELLS - 1)) * CELL_SIZE;
+            double half = (CELL_SIZE - 1) / 2.0;
+            toSpace(mSpace, r0 + half, g0 + half, b0 + half, center);
+
+            double radius = 0;
+            for (int c = 0; c < 8; ++c) {
+                toSpace(mSpace, r0 + ((c & 4) != 0 ? CELL_SIZE - 1 : 0), g0 + ((c & 2) != 0 ? CELL_SIZE - 1 : 0),
+                        b0 + ((c & 1) != 0 ? CELL_SIZE - 1 : 0), corner);
+                radius = Math.max(radius, Math.sqrt(distanceSquared(center, corner)));
+            }
+            if (mSpace == SPACE_CIELAB) {
+                radius *= LAB_CELL_MARGIN;
+            }
+
+            // colors some of the cell may be in range of, and those all of it is
+            long near = 0;
+            int inside = 0;
+            for (int k = 0; k < mFrom.length; ++k) {
+                double distance = Math.sqrt(distanceSquared(center, mFrom[k]));
+                double tolerance = Math.sqrt(mToleranceSquared[k]);
+                if (distance - radius <= tolerance) {
+                    near |= 1L << k;
+                    if (distance + radius <= tolerance) {
+                        ++inside;
+                    }
+                }
+            }
+
+            if (near == 0) {
+                mCube[cell] = KEEP;
+            } else if (Long.bitCount(near) == 1 && inside == 1) {
+                mCube[cell] = Long.numberOfTrailingZeros(near);
+            } else {
+                if (mixed == candidates.length) {
+                    long[] grown = new long[2 * mixed];
+                    System.arraycopy(candidates, 0, grown, 0, mixed);
+                    candidates = grown;
+                }
+                candidates[mixed] = near;
+                mCube[cell] = -2 - mixed;
+                ++mixed;
+            }
+        }
+
+        long[] trimmed = new long[mixed];
+        System.arraycopy(candidates, 0, trimmed, 0, mixed);
+        return trimmed;
+    }
+
+    @Override
+    public void filter(int[] src, int srcPos, int[] dst, int dstPos, int length, int x, int y) {
+        int[] cube = mCube;
+        double[] coordinates = null;
+        for (int i = 0; i < length; ++i) {
+            int pixel = src[srcPos + i];
+            int entry = cube[((pixel >> 9) & 0x7C00) | ((pixel >> 6) & 0x03E0) | ((pixel >> 3) & 0x001F)];
+            if (entry >= 0) {
+                pixel = mTargetColors[entry];
+            } else if (entry != KEEP) {
+                if (coordinates == null) {
+                    coordinates = new double[3];
+                }
+                int nearest = nearest(pixel, mCandidates[-2 - entry], coordinates);
+                if (nearest >= 0) {
+                    pixel = mTargetColors[nearest];
+                }
+            }
+            dst[dstPos + i] = pixel;
+        }
+    }
+
+    /**
+     * @return the nearest of the candidates that pixel is in range of, or -1
+     */
+    private int nearest(int pixel, long candidates, double[] coordinates) {
+        toSpace(mSpace, Argb.red(pixel), Argb.green(pixel), Argb.blue(pixel), coordinates);
+        int nearest = -1;
+        double nearestDistance = Double.MAX_VALUE;
+        while (candidates != 0) {
+            int k = Long.numberOfTrailingZeros(candidates);
+            candidates &= candidates - 1;
+            double distance = distanceSquared(coordinates, mFrom[k]);
+            if (distance <= mToleranceSquared[k] && distance < nearestDistance) {
+                nearest = k;
+                nearestDistance = distance;
+            }
+        }
+        return nearest;
+    }
+
+    private static double distanceSquared(double[] a, double[] b) {
+        double d0 = a[0] - b[0];
+        double d1 = a[1] - b[1];
+        double d2 = a[2] - b[2];
+        return d0 * d0 + d1 * d1 + d2 * d2;
+    }
+
+    /**
+     * Convert an RGB color, channels in [0, 255] and not necessarily whole, to space.
+     */
+    static void toSpace(int space, double red, double green, double blue, double[] out) {
+        if (space == SPACE_YCBCR) {
+            // BT.601, full range
+            out[0] = 0.299 * red + 0.587 * green + 0.114 * blue;
+            out[1] = 128 - 0.168736 * red - 0.331264 * green + 0.5 * blue;
+            out[2] = 128 + 0.5 * red - 0.418688 * green - 0.081312 * blue;
+            return;
+        }
+
+        double r = linear(red);
+        double g = linear(green);
+        double b = linear(blue);
+        // D65 white
+        double fx = labF((0.4124564 * r + 0.3575761 * g + 0.1804375 * b) / 0.95047);
+        double fy = labF(0.2126729 * r + 0.7151522 * g + 0.0721750 * b);
+        double fz = labF((0.0193339 * r + 0.1191920 * g + 0.9503041 * b) / 1.08883);
+        out[0] = 116 * fy - 16;
+        out[1] = 500 * (fx - fy);
+        out[2] = 200 * (fy - fz);
+    }
+
+    private static double linear(double value) {
+        int v = (int) value;
+        if (v == value) {
+            return LINEAR[v];
+        }
+        double c = value / 255.0;
+        return c <= 0.04045 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4);
+    }
+
+    private static double labF(double t) {
+        return t > 216.0 / 24389 ? Math.cbrt(t) : (24389.0 / 27 * t + 16) / 116;
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.anthony.imageprocessing.core;
+
+/**
+ * Replace every pixel that is within {@code threshold} of a color on each of
+ * the R, G and B channels with another color.
+ * <p/>
+ * Up to 32 colors can be replaced at once. Each channel gets a 256 entry
+ * membership table whose bit k says whether the value is in range for color
+ * k, so testing a pixel against every color costs three loads and two ANDs.
+ * When a pixel matches several colors, the first one wins. On a
+ * {@link PlanarRaster} the three loads stream through the channel planes.
+ */
+public class ColorReplaceEffect extends PointEffect implements PlanarEffect {
+
+    public static final int MAX_COLORS = 32;
+
+    private final int[] mTargetColors;
+    private final int[] mRed = new int[256];
+    private final int[] mGreen = new int[256];
+    private final int[] mBlue = new int[256];
+
+    public ColorReplaceEffect(int fromColor, int targetColor, int threshold) {
+        this(new int[]{fromColor}, new int[]{targetColor}, threshold);
+    }
+
+    public ColorReplaceEffect(int[] fromColors, int[] targetColors, int threshold) {
+        if (fromColors.length != targetColors.length) {
+            throw new IllegalArgumentException("Got " + fromColors.length + " colors to replace but "
+                    + targetColors.length + " replacements");
+        }
+        if (fromColors.length > MAX_COLORS) {
+            throw new IllegalArgumentException("At most " + MAX_COLORS + " colors can be replaced at once");
+        }
+        mTargetColors = targetColors.clone();
+
+        for (int k = 0; k < fromColors.length; ++k) {
+            mark(mRed, Argb.red(fromColors[k]), threshold, k);
+            mark(mGreen, Argb.green(fromColors[k]), threshold, k);
+            mark(mBlue, Argb.blue(fromColors[k]), threshold, k);
+        }
+    }
+
+    private static void mark(int[] table, int center, int threshold, int bit) {
+        int from = Math.max(0, center - threshold);
+        int to = Math.min(255, center + threshold);
+        for (int v = from; v <= to; ++v) {
+            table[v] |= 1 << bit;
+        }
+    }
+
+    @Override
+    public void apply(PlanarRaster src, PlanarRaster dst, int top, int bottom) {
+        int[] red = mRed;
+        int[] green = mGreen;
+        int[] blue = mBlue;
+        for (int y = top; y < bottom; ++y) {
+            int s = src.index(0, y);
+            int d = dst.index(0, y);
+            for (int x = 0; x < src.width; ++x) {
+                int match = red[src.red[s + x] & 0xFF] & green[src.green[s + x] & 0xFF] & blue[src.blue[s + x] & 0xFF];
+                if (match != 0) {
+                    int color = mTargetColors[Integer.numberOfTrailingZeros(match)];
+                    dst.alpha[d + x] = (byte) (color >>> 24);
+                    dst.red[d + x] = (byte) (color >> 16);
+                    dst.green[d + x] = (byte) (color >> 8);
+                    dst.blue[d + x] = (byte) color;
+                } else {
+                    dst.alpha[d + x] = src.alpha[s + x];
+                    dst.red[d + x] = src.red[s + x];
+                    dst.green[d + x] = src.green[s + x];
+                    dst.blue[d + x] = src.blue[s + x];
+                }
+            }
+        }
+    }
+
+    @Override
+    public void filter(int[] src, int srcPos, int[] dst, int dstPos, int length, int x, int y) {
+        int[] red = mRed;
+        int[] green = mGreen;
+        int[] blue = mBlue;
+        for (int i = 0; i < length; ++i) {
+            int pixel = src[srcPos + i];
+            int match = red[(pixel >> 16) & 0xFF] & green[(pixel >> 8) & 0xFF] & blue[pixel & 0xFF];
+            if (match != 0) {
+                pixel = mTargetColors[Integer.numberOfTrailingZeros(match)];
+            }
+            dst[dstPos + i] = pixel;
+        }
+    }
+
+}
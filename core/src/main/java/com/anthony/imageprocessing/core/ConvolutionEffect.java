@@ -0,0 +1,80 @@
+package com.anthony.imageprocessing.core;
+
+/**
+ * Convolve the R, G and B channels with a square, odd sized matrix:
+ * {@code out = sum(pixel * matrix) / factor + offset}, clamped to 0..255.
+ * <p/>
+ * matrix[i][j] weighs the pixel i columns right and j rows down of the top left
+ * corner of the window. Alpha is taken from the center pixel. Pixels closer
+ * than the matrix radius to the border are not computed and come out as 0.
+ * <p/>
+ * This is the straightforward double precision version, kept as the reference
+ * for {@link ConvolutionEngine}.
+ */
+public class ConvolutionEffect implements Effect {
+
+    private final double[][] mMatrix;
+    private final double mFactor;
+    private final double mOffset;
+
+    public ConvolutionEffect(double[][] matrix, double factor, double offset) {
+        if (matrix.length % 2 == 0) {
+            throw new IllegalArgumentException("Matrix size must be odd, was " + matrix.length);
+        }
+        mMatrix = matrix;
+        mFactor = factor;
+        mOffset = offset;
+    }
+
+    @Override
+    public int radius() {
+        return mMatrix.length / 2;
+    }
+
+    @Override
+    public void apply(Raster src, Raster dst, int top, int bottom) {
+        int size = mMatrix.length;
+        int radius = size / 2;
+        int width = src.width;
+        int height = src.height;
+        int[] in = src.pixels;
+        int[] out = dst.pixels;
+
+        for (int y = top; y < bottom; ++y) {
+            int row = dst.index(0, y);
+
+            if (y < radius || y >= height - radius) {
+                for (int x = 0; x < width; ++x) {
+                    out[row + x] = 0;
+                }
+                continue;
+            }
+
+            for (int x = 0; x < width; ++x) {
+                if (x < radius || x >= width - radius) {
+                    out[row + x] = 0;
+                    continue;
+                }
+
+                // summed in double, not narrowed to int after every tap
+                double sumR = 0, sumG = 0, sumB = 0;
+                for (int i = 0; i < size; ++i) {
+                    for (int j = 0; j < size; ++j) {
+                        int pixel = in[src.index(x - radius + i, y - radius + j)];
+                        sumR += ((pixel >> 16) & 0xFF) * mMatrix[i][j];
+                        sumG += ((pixel >> 8) & 0xFF) * mMatrix[i][j];
+                        sumB += (pixel & 0xFF) * mMatrix[i][j];
+                    }
+                }
+
+                int r = Argb.clamp((int) (sumR / mFactor + mOffset));
+                int g = Argb.clamp((int) (sumG / mFactor + mOffset));
+                int b = Argb.clamp((int) (sumB / mFactor + mOffset));
+                int a = in[src.index(x, y)] >>> 24;
+
+                out[row + x] = Argb.argb(a, r, g, b);
+            }
+        }
+    }
+
+}
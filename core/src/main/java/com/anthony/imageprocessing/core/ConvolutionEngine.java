@@ -0,0 +1,962 @@
+package com.anthony.imageprocessing.core;
+
+/**
+ * Fast replacement for {@link ConvolutionEffect}, computing the same
+ * {@code sum(pixel * matrix) / factor + offset} per channel.
+ * <p/>
+ * The matrix is compiled once into integer weights. Kernels that are an outer
+ * product of two vectors, optionally plus an extra weight on the center pixel
+ * (the smooth and emboss kernels both are), run as a horizontal and a vertical
+ * 1D pass. Other kernels run through a list of their non zero taps. Division
+ * by factor is a fixed-point multiply and shift.
+ * <p/>
+ * Whole number weights are used as they are. Other weights get as many
+ * fraction bits as it takes for rounding them to move no result by more than
+ * half a level, and the shift is widened with the largest possible sum, so
+ * every pixel is within 1 of {@link ConvolutionEffect}. Whole number kernels
+ * with a whole number factor, and an offset that is a whole number of factors
+ * (as for smooth and emboss), give exactly the same pixels. Kernels whose sums
+ * could overflow, including those that would only get within 1 with more
+ * fraction bits than the sums leave room for, are rejected when compiled.
+ * <p/>
+ * Rows are processed in bands sized to stay in cache. Each band is first
+ * unpacked into per-channel planes padded by the kernel radius, so the inner
+ * loops are plain array walks. Pixels outside the image are clamped to the
+ * nearest edge pixel, so the border is computed like the rest of the image.
+ * <p/>
+ * When no sum can reach 2^20, as for the smooth and emboss kernels, R, G and
+ * B share a single plane of longs, 21 bits apart, and every multiply-add
+ * works on all three at once. Sums are exact either way, so both paths give
+ * the same pixels.
+ * <p/>
+ * RGB 565 rasters are unpacked straight into the packed plane, and grayscale
+ * rasters into a single plane, so neither is widened to ARGB first. Planar
+ * rasters run as three grayscale ones.
+ */
+public class ConvolutionEngine implements ScalableEffect, Rgb565Effect, GrayEffect, PlanarEffect {
+
+    /** Scratch memory per band that should still fit in a typical L2 cache. */
+    private static final int BAND_BYTES = 256 * 1024;
+    private static final int MIN_BAND_ROWS = 8;
+
+    /** Least fraction bits of the fixed-point scale factor. */
+    private static final int SHIFT = 20;
+    /** Least and most fraction bits used for weights that are not whole numbers. */
+    private static final int WEIGHT_BITS = 8;
+    private static final int MAX_WEIGHT_BITS = 30;
+    /** Distance between the channels packed into a long. */
+    private static final int LANE_BITS = 21;
+    private static final int LANE_SHIFT = 64 - LANE_BITS;
+
+    // as given, for scaled()
+    private final double[][] mMatrix;
+    private final double mFactor;
+    private final double mOffset;
+
+    private final int mSize;
+    private final int mRadius;
+
+    private final int mWeightScale;
+    private final int mShift;
+    private final long mMultiplier;
+    private final long mBias;
+
+    // separable form: weight(i, j) = mColumnWeights[i] * mRowWeights[j] + (center ? mCenterWeight : 0)
+    private final boolean mSeparable;
+    private final int[] mColumnWeights;
+    private final int[] mRowWeights;
+    private final int mCenterWeight;
+
+    // general form: non zero weights and their (i, j) offsets into the window
+    private final int[] mTapWeights;
+    private final int[] mTapColumns;
+    private final int[] mTapRows;
+
+    // whether every sum, and for separable kernels every horizontal sum, fits a signed lane
+    private final boolean mPacked;
+
+    /**
+     * @throws IllegalArgumentException if the matrix is not odd sized, a weight
+     *                                  or factor is not finite, factor is 0, or
+     *                                  the integer sums could overflow
+     */
+    public ConvolutionEngine(double[][] matrix, double factor, double offset) {
+        mSize = matrix.length;
+        if (mSize % 2 == 0) {
+            throw new IllegalArgumentException("Matrix size must be odd, was " + mSize);
+        }
+        if (factor == 0 || Double.isNaN(factor) || Double.isInfinite(factor)) {
+            throw new IllegalArgumentException("Factor must be finite and non zero, was " + factor);
+        }
+        mRadius = mSize / 2;
+        mMatrix = new double[mSize][];
+        for (int i = 0; i < mSize; ++i) {
+            mMatrix[i] = matrix[i].clone();
+        }
+        mFactor = factor;
+        mOffset = offset;
+        for (double[] column : matrix) {
+            for (double value : column) {
+                if (Double.isNaN(value) || Double.isInfinite(value)) {
+                    throw new IllegalArgumentException("Matrix weights must be finite, got " + value);
+                }
+            }
+        }
+
+        int scale = isIntegral(matrix) ? 1 : 1 << weightBits(matrix, factor);
+        mWeightScale = scale;
+        int[][] weights = new int[mSize][mSize];
+        for (int i = 0; i < mSize; ++i) {
+            for (int j = 0; j < mSize; ++j) {
+                double weight = Math.rint(matrix[i][j] * scale);
+                if (Math.abs(weight) > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Matrix weight " + matrix[i][j] + " is too large");
+                }
+                weights[i][j] = (int) weight;
+            }
+        }
+
+        // the largest |sum| of weights times channel values, and of the horizontal pass if any
+        long maxSum;
+        int[][] separable = factorize(weights);
+        if (separable != null) {
+            mSeparable = true;
+            mColumnWeights = separable[0];
+            mRowWeights = separable[1];
+            mCenterWeight = separable[2][0];
+            mTapWeights = mTapColumns = mTapRows = null;
+
+            long horizontal = 255L * absSum(mColumnWeights);
+            maxSum = Math.max(horizontal,
+                    horizontal * absSum(mRowWeights) + 255L * Math.abs((long) mCenterWeight));
+        } else {
+            mSeparable = false;
+            mColumnWeights = mRowWeights = null;
+            mCenterWeight = 0;
+
+            int taps = 0;
+            for (int i = 0; i < mSize; ++i) {
+                for (int j = 0; j < mSize; ++j) {
+                    if (weights[i][j] != 0) {
+                        ++taps;
+                    }
+                }
+            }
+            mTapWeights = new int[taps];
+            mTapColumns = new int[taps];
+            mTapRows = new int[taps];
+            int tap = 0;
+            for (int i = 0; i < mSize; ++i) {
+                for (int j = 0; j < mSize; ++j) {
+                    if (weights[i][j] != 0) {
+                        mTapWeights[tap] = weights[i][j];
+                        mTapColumns[tap] = i;
+                        mTapRows[tap] = j;
+                        ++tap;
+                    }
+                }
+            }
+            maxSum = 255L * absSum(mTapWeights);
+        }
+        if (maxSum > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Matrix weights are too large, sums could reach " + maxSum);
+        }
+        mPacked = maxSum < 1 << (LANE_BITS - 1);
+
+        long[] exact = scale == 1 ? exactDivision(maxSum, factor, offset) : null;
+        if (exact != null) {
+            mShift = (int) exact[0];
+            mMultiplier = exact[1];
+            mBias = exact[2];
+            return;
+        }
+
+        // keep the error of the rounded up multiplier, at most maxSum / 2^shift, under a quarter level
+        mShift = Math.max(SHIFT, 64 - Long.numberOfLeadingZeros(4 * maxSum));
+        double multiplier = Math.ceil((1L << mShift) / (factor * scale));
+        double bias = Math.rint(offset * (1L << mShift));
+        if (Math.abs(multiplier) * maxSum + Math.abs(bias) >= Long.MAX_VALUE / 2) {
+            throw new IllegalArgumentException("Factor " + factor + " and offset " + offset + " are out of range");
+        }
+        mMultiplier = (long) multiplier;
+        mBias = (long) bias;
+    }
+
+    /**
+     * For whole number weights, a whole number factor and an offset that is a
+     * whole number of factors, the shift, multiplier and bias that give exactly
+     * what {@link ConvolutionEffect} does: the result is (sum + offset * factor)
+     * / factor, and with the multiplier rounded up in magnitude and enough
+     * shift, multiplying by it rounds towards zero like the division whenever
+     * the result is not negative. Negative results are clamped to 0 either way.
+     *
+     * @return {shift, multiplier, bias}, or null if the factor and offset are
+     * not of that kind or the products could overflow
+     */
+    private static long[] exactDivision(long maxSum, double factor, double offset) {
+        double scaledOffset = offset * factor;
+        if (factor != Math.rint(factor) || Math.abs(factor) > 1 << SHIFT
+                || scaledOffset != Math.rint(scaledOffset) || Math.abs(scaledOffset) > Integer.MAX_VALUE) {
+            return null;
+        }
+        long divisor = (long) Math.abs(factor);
+        long bias = (long) scaledOffset;
+        // an error below 1 / divisor cannot reach the next whole result
+        long maxNumerator = Math.max(1, maxSum + Math.abs(bias));
+        int shift = Math.max(SHIFT, 64 - Long.numberOfLeadingZeros(4 * maxNumerator * divisor));
+        if (shift > 62) {
+            return null;
+        }
+        long multiplier = ((1L << shift) + divisor - 1) / divisor;
+        if (multiplier > (Long.MAX_VALUE / 2) / maxNumerator) {
+            return null;
+        }
+        if (factor < 0) {
+            multiplier = -multiplier;
+        }
+        return new long[]{shift, multiplier, bias * multiplier};
+    }
+
+    /**
+     * @return the fraction bits for a matrix that is not whole numbers: the
+     * fewest from {@link #WEIGHT_BITS} on that move no result by more than half
+     * a level
+     * @throws IllegalArgumentException if the sums overflow before that
+     */
+    private static int weightBits(double[][] matrix, double factor) {
+        for (int bits = WEIGHT_BITS; bits <= MAX_WEIGHT_BITS; ++bits) {
+            double scale = 1 << bits;
+            double error = 0;
+            double total = 0;
+            for (double[] column : matrix) {
+                for (double value : column) {
+                    error += Math.abs(Math.rint(value * scale) - value * scale);
+                    total += Math.abs(Math.rint(value * scale));
+                }
+            }
+            if (255 * total > Integer.MAX_VALUE) {
+                break;
+            }
+            if (255 * error / (Math.abs(factor) * scale) <= 0.5) {
+                return bits;
+            }
+        }
+        throw new IllegalArgumentException("Matrix weights cannot be rounded to within half a level of "
+                + "factor " + factor + " without overflowing");
+    }
+
+    /**
+     * The integer weights are the matrix times this, a power of two.
+     */
+    int weightScale() {
+        return mWeightScale;
+    }
+
+    /**
+     * A sum of integer weights times channel values comes out as
+     * {@code (sum * multiplier() + bias()) >> shift()}, clamped.
+     */
+    long multiplier() {
+        return mMultiplier;
+    }
+
+    long bias() {
+        return mBias;
+    }
+
+    int shift() {
+        return mShift;
+    }
+
+    /**
+     * @return true if the kernel runs as two 1D passes
+     */
+    public boolean isSeparable() {
+        return mSeparable;
+    }
+
+    @Override
+    public int radius() {
+        return mRadius;
+    }
+
+    /**
+     * Shrink the kernel to cover the same part of the image, down to 3x3. Each
+     * weight is added to the cell its position maps to, so the total weight,
+     * and with it factor and offset, stay as they are.
+     */
+    @Override
+    public Effect scaled(double factor) {
+        int radius = Math.max(1, (int) Math.round(mRadius / factor));
+        if (radius >= mRadius) {
+            return this;
+        }
+        int size = 2 * radius + 1;
+        double[][] matrix = new double[size][size];
+        for (int i = 0; i < mSize; ++i) {
+            for (int j = 0; j < mSize; ++j) {
+                int si = radius + (int) Math.round((i - mRadius) * (double) radius / mRadius);
+                int sj = radius + (int) Math.round((j - mRadius) * (double) radius / mRadius);
+                matrix[si][sj] += mMatrix[i][j];
+            }
+        }
+        return new ConvolutionEngine(matrix, mFactor, mOffset);
+    }
+
+    @Override
+    public void apply(Raster src, Raster dst, int top, int bottom) {
+        if (mPacked) {
+            applyPacked(src, dst, top, bottom);
+            return;
+        }
+        int width = src.width;
+        int paddedWidth = width + 2 * mRadius;
+
+        int bandRows = Math.max(MIN_BAND_ROWS, BAND_BYTES / (3 * 4 * paddedWidth) - 2 * mRadius);
+        bandRows = Math.min(bandRows, bottom - top);
+        if (bandRows <= 0) {
+            return;
+        }
+        int planeSize = (bandRows + 2 * mRadius) * paddedWidth;
+
+        BufferPool pool = BufferPool.getDefault();
+        int[] red = pool.acquire(planeSize);
+        int[] green = pool.acquire(planeSize);
+        int[] blue = pool.acquire(planeSize);
+        int[] sumR = pool.acquire(width);
+        int[] sumG = pool.acquire(width);
+        int[] sumB = pool.acquire(width);
+
+        int[] hRed = null, hGreen = null, hBlue = null;
+        if (mSeparable) {
+            int hSize = (bandRows + 2 * mRadius) * width;
+            hRed = pool.acquire(hSize);
+            hGreen = pool.acquire(hSize);
+            hBlue = pool.acquire(hSize);
+        }
+
+        try {
+            for (int y0 = top; y0 < bottom; y0 += bandRows) {
+                int rows = Math.min(bandRows, bottom - y0);
+                unpack(src, y0 - mRadius, rows + 2 * mRadius, paddedWidth, red, green, blue);
+
+                if (mSeparable) {
+                    horizontalPass(rows + 2 * mRadius, width, paddedWidth, red, hRed);
+                    horizontalPass(rows + 2 * mRadius, width, paddedWidth, green, hGreen);
+                    horizontalPass(rows + 2 * mRadius, width, paddedWidth, blue, hBlue);
+                }
+
+                for (int row = 0; row < rows; ++row) {
+                    if (mSeparable) {
+                        verticalPass(row, width, paddedWidth, hRed, red, sumR);
+                        verticalPass(row, width, paddedWidth, hGreen, green, sumG);
+                        verticalPass(row, width, paddedWidth, hBlue, blue, sumB);
+                    } else {
+                        taps(row, width, paddedWidth, red, sumR);
+                        taps(row, width, paddedWidth, green, sumG);
+                        taps(row, width, paddedWidth, blue, sumB);
+                    }
+                    pack(src, dst, y0 + row, sumR, sumG, sumB);
+                }
+            }
+        } finally {
+            pool.release(red);
+            pool.release(green);
+            pool.release(blue);
+            pool.release(sumR);
+            pool.release(sumG);
+            pool.release(sumB);
+            pool.release(hRed);
+            pool.release(hGreen);
+            pool.release(hBlue);
+        }
+    }
+
+    /**
+     * Unpack source rows [firstRow, firstRow + rows) into planes padded by the
+     * radius on both sides, clamping rows and columns outside the image.
+     */
+    private void unpack(Raster src, int firstRow, int rows, int paddedWidth, int[] red, int[] green, int[] blue) {
+        int width = src.width;
+        int lastRow = src.height - 1;
+        int[] pixels = src.pixels;
+
+        for (int row = 0; row < rows; ++row) {
+            int y = Math.max(0, Math.min(firstRow + row, lastRow));
+            int in = src.index(0, y);
+            int out = row * paddedWidth + mRadius;
+
+            for (int x = 0; x < width; ++x) {
+                int pixel = pixels[in + x];
+                red[out + x] = (pixel >> 16) & 0xFF;
+                green[out + x] = (pixel >> 8) & 0xFF;
+                blue[out + x] = pixel & 0xFF;
+            }
+
+            int left = out;
+            int right = out + width - 1;
+            for (int p = 1; p <= mRadius; ++p) {
+                red[left - p] = red[left];
+                green[left - p] = green[left];
+                blue[left - p] = blue[left];
+                red[right + p] = red[right];
+                green[right + p] = green[right];
+                blue[right + p] = blue[right];
+            }
+        }
+    }
+
+    private void horizontalPass(int rows, int width, int paddedWidth, int[] plane, int[] out) {
+        int[] weights = mColumnWeights;
+        for (int row = 0; row < rows; ++row) {
+            int in = row * paddedWidth;
+            int o = row * width;
+            for (int x = 0; x < width; ++x) {
+                out[o + x] = 0;
+            }
+            for (int i = 0; i < mSize; ++i) {
+                int w = weights[i];
+                if (w == 0) {
+                    continue;
+                }
+                int base = in + i;
+                for (int x = 0; x < width; ++x) {
+                    out[o + x] += w * plane[base + x];
+                }
+            }
+        }
+    }
+
+    private void verticalPass(int row, int width, int paddedWidth, int[] horizontal, int[] plane, int[] sum) {
+        int center = mCenterWeight;
+        int c = (row + mRadius) * paddedWidth + mRadius;
+        if (center != 0) {
+            for (int x = 0; x < width; ++x) {
+                sum[x] = center * plane[c + x];
+            }
+        } else {
+            for (int x = 0; x < width; ++x) {
+                sum[x] = 0;
+            }
+        }
+
+        int[] weights = mRowWeights;
+        for (int j = 0; j < mSize; ++j) {
+            int w = weights[j];
+            if (w == 0) {
+                continue;
+            }
+            int base = (row + j) * width;
+            for (int x = 0; x < width; ++x) {
+                sum[x] += w * horizontal[base + x];
+            }
+        }
+    }
+
+    private void taps(int row, int width, int paddedWidth, int[] plane, int[] sum) {
+        for (int x = 0; x < width; ++x) {
+            sum[x] = 0;
+        }
+        for (int tap = 0; tap < mTapWeights.length; ++tap) {
+            int w = mTapWeights[tap];
+            int base = (row + mTapRows[tap]) * paddedWidth + mTapColumns[tap];
+            for (int x = 0; x < width; ++x) {
+                sum[x] += w * plane[base + x];
+            }
+        }
+    }
+
+    private void pack(Raster src, Raster dst, int y, int[] sumR, int[] sumG, int[] sumB) {
+        int[] in = src.pixels;
+        int[] out = dst.pixels;
+        int s = src.index(0, y);
+        int d = dst.index(0, y);
+        long multiplier = mMultiplier;
+        long bias = mBias;
+
+        for (int x = 0; x < src.width; ++x) {
+            int r = Argb.clamp((int) ((sumR[x] * multiplier + bias) >> mShift));
+            int g = Argb.clamp((int) ((sumG[x] * multiplier + bias) >> mShift));
+            int b = Argb.clamp((int) ((sumB[x] * multiplier + bias) >> mShift));
+            out[d + x] = (in[s + x] & 0xFF000000) | (r << 16) | (g << 8) | b;
+        }
+    }
+
+    private void applyPacked(Raster src, Raster dst, int top, int bottom) {
+        int width = src.width;
+        int paddedWidth = width + 2 * mRadius;
+
+        int bandRows = Math.max(MIN_BAND_ROWS, BAND_BYTES / (8 * paddedWidth) - 2 * mRadius);
+        bandRows = Math.min(bandRows, bottom - top);
+        if (bandRows <= 0) {
+            return;
+        }
+
+        BufferPool pool = BufferPool.getDefault();
+        long[] plane = pool.acquireLongs((bandRows + 2 * mRadius) * paddedWidth);
+        long[] sum = pool.acquireLongs(width);
+        long[] horizontal = mSeparable ? pool.acquireLongs((bandRows + 2 * mRadius) * width) : null;
+
+        try {
+            for (int y0 = top; y0 < bottom; y0 += bandRows) {
+                int rows = Math.min(bandRows, bottom - y0);
+                unpack(src, y0 - mRadius, rows + 2 * mRadius, paddedWidth, plane);
+                if (mSeparable) {
+                    horizontalPass(rows + 2 * mRadius, width, paddedWidth, plane, horizontal);
+                }
+                for (int row = 0; row < rows; ++row) {
+                    if (mSeparable) {
+                        verticalPass(row, width, paddedWidth, horizontal, plane, sum);
+                    } else {
+                        taps(row, width, paddedWidth, plane, sum);
+                    }
+                    pack(src, dst, y0 + row, sum);
+                }
+            }
+        } finally {
+            pool.release(plane);
+            pool.release(sum);
+            pool.release(horizontal);
+        }
+    }
+
+    /**
+     * Like {@link #unpack(Raster, int, int, int, int[], int[], int[])}, into one
+     * plane holding R, G and B in lanes of {@link #LANE_BITS} bits.
+     */
+    private void unpack(Raster src, int firstRow, int rows, int paddedWidth, long[] plane) {
+        int width = src.width;
+        int lastRow = src.height - 1;
+        int[] pixels = src.pixels;
+
+        for (int row = 0; row < rows; ++row) {
+            int y = Math.max(0, Math.min(firstRow + row, lastRow));
+            int in = src.index(0, y);
+            int out = row * paddedWidth + mRadius;
+
+            for (int x = 0; x < width; ++x) {
+                int pixel = pixels[in + x];
+                plane[out + x] = ((long) ((pixel >> 16) & 0xFF) << (2 * LANE_BITS))
+                        | ((long) ((pixel >> 8) & 0xFF) << LANE_BITS) | (pixel & 0xFF);
+            }
+
+            int left = out;
+            int right = out + width - 1;
+            for (int p = 1; p <= mRadius; ++p) {
+                plane[left - p] = plane[left];
+                plane[right + p] = plane[right];
+            }
+        }
+    }
+
+    private void horizontalPass(int rows, int width, int paddedWidth, long[] plane, long[] out) {
+        int[] weights = mColumnWeights;
+        for (int row = 0; row < rows; ++row) {
+            int in = row * paddedWidth;
+            int o = row * width;
+            for (int x = 0; x < width; ++x) {
+                out[o + x] = 0;
+            }
+            for (int i = 0; i < mSize; ++i) {
+                long w = weights[i];
+                if (w == 0) {
+                    continue;
+                }
+                int base = in + i;
+                for (int x = 0; x < width; ++x) {
+                    out[o + x] += w * plane[base + x];
+                }
+            }
+        }
+    }
+
+    private void verticalPass(int row, int width, int paddedWidth, long[] horizontal, long[] plane, long[] sum) {
+        long center = mCenterWeight;
+        int c = (row + mRadius) * paddedWidth + mRadius;
+        for (int x = 0; x < width; ++x) {
+            sum[x] = center * plane[c + x];
+        }
+
+        int[] weights = mRowWeights;
+        for (int j = 0; j < mSize; ++j) {
+            long w = weights[j];
+            if (w == 0) {
+                continue;
+            }
+            int base = (row + j) * width;
+            for (int x = 0; x < width; ++x) {
+                sum[x] += w * horizontal[base + x];
+            }
+        }
+    }
+
+    private void taps(int row, int width, int paddedWidth, long[] plane, long[] sum) {
+        for (int x = 0; x < width; ++x) {
+            sum[x] = 0;
+        }
+        for (int tap = 0; tap < mTapWeights.length; ++tap) {
+            long w = mTapWeights[tap];
+            int base = (row + mTapRows[tap]) * paddedWidth + mTapColumns[tap];
+            for (int x = 0; x < width; ++x) {
+                sum[x] += w * plane[base + x];
+            }
+        }
+    }
+
+    private void pack(Raster src, Raster dst, int y, long[] sum) {
+        int[] in = src.pixels;
+        int[] out = dst.pixels;
+        int s = src.index(0, y);
+        int d = dst.index(0, y);
+        long multiplier = mMultiplier;
+        long bias = mBias;
+
+        for (int x = 0; x < src.width; ++x) {
+            // peel the signed lanes off from the bottom, each borrow goes back into the lane above
+            long packed = sum[x];
+            long b = (packed << LANE_SHIFT) >> LANE_SHIFT;
+            packed = (packed - b) >> LANE_BITS;
+            long g = (packed << LANE_SHIFT) >> LANE_SHIFT;
+            long r = (packed - g) >> LANE_BITS;
+
+            int red = Argb.clamp((int) ((r * multiplier + bias) >> mShift));
+            int green = Argb.clamp((int) ((g * multiplier + bias) >> mShift));
+            int blue = Argb.clamp((int) ((b * multiplier + bias) >> mShift));
+            out[d + x] = (in[s + x] & 0xFF000000) | (red << 16) | (green << 8) | blue;
+        }
+    }
+
+    /**
+     * Gives the same pixels as widening src to ARGB, applying the kernel and
+     * narrowing the result back to 565.
+     */
+    @Override
+    public void apply(Rgb565Raster src, Rgb565Raster dst, int top, int bottom) {
+        if (!mPacked) {
+            applyWidened(src, dst, top, bottom);
+            return;
+        }
+        int width = src.width;
+        int paddedWidth = width + 2 * mRadius;
+
+        int bandRows = Math.max(MIN_BAND_ROWS, BAND_BYTES / (8 * paddedWidth) - 2 * mRadius);
+        bandRows = Math.min(bandRows, bottom - top);
+        if (bandRows <= 0) {
+            return;
+        }
+
+        BufferPool pool = BufferPool.getDefault();
+        long[] plane = pool.acquireLongs((bandRows + 2 * mRadius) * paddedWidth);
+        long[] sum = pool.acquireLongs(width);
+        long[] horizontal = mSeparable ? pool.acquireLongs((bandRows + 2 * mRadius) * width) : null;
+
+        try {
+            for (int y0 = top; y0 < bottom; y0 += bandRows) {
+                int rows = Math.min(bandRows, bottom - y0);
+                unpack(src, y0 - mRadius, rows + 2 * mRadius, paddedWidth, plane);
+                if (mSeparable) {
+                    horizontalPass(rows + 2 * mRadius, width, paddedWidth, plane, horizontal);
+                }
+                for (int row = 0; row < rows; ++row) {
+                    if (mSeparable) {
+                        verticalPass(row, width, paddedWidth, horizontal, plane, sum);
+                    } else {
+                        taps(row, width, paddedWidth, plane, sum);
+                    }
+                    pack(dst, y0 + row, sum);
+                }
+            }
+        } finally {
+            pool.release(plane);
+            pool.release(sum);
+            pool.release(horizontal);
+        }
+    }
+
+    private void unpack(Rgb565Raster src, int firstRow, int rows, int paddedWidth, long[] plane) {
+        int width = src.width;
+        int lastRow = src.height - 1;
+        short[] pixels = src.pixels;
+
+        for (int row = 0; row < rows; ++row) {
+            int y = Math.max(0, Math.min(firstRow + row, lastRow));
+            int in = src.index(0, y);
+            int out = row * paddedWidth + mRadius;
+
+            for (int x = 0; x < width; ++x) {
+                int pixel = pixels[in + x];
+                plane[out + x] = ((long) PixelFormats.red565(pixel) << (2 * LANE_BITS))
+                        | ((long) PixelFormats.green565(pixel) << LANE_BITS) | PixelFormats.blue565(pixel);
+            }
+
+            int left = out;
+            int right = out + width - 1;
+            for (int p = 1; p <= mRadius; ++p) {
+                plane[left - p] = plane[left];
+                plane[right + p] = plane[right];
+            }
+        }
+    }
+
+    private void pack(Rgb565Raster dst, int y, long[] sum) {
+        short[] out = dst.pixels;
+        int d = dst.index(0, y);
+        long multiplier = mMultiplier;
+        long bias = mBias;
+
+        for (int x = 0; x < dst.width; ++x) {
+            long packed = sum[x];
+            long b = (packed << LANE_SHIFT) >> LANE_SHIFT;
+            packed = (packed - b) >> LANE_BITS;
+            long g = (packed << LANE_SHIFT) >> LANE_SHIFT;
+            long r = (packed - g) >> LANE_BITS;
+
+            int red = Argb.clamp((int) ((r * multiplier + bias) >> mShift));
+            int green = Argb.clamp((int) ((g * multiplier + bias) >> mShift));
+            int blue = Argb.clamp((int) ((b * multiplier + bias) >> mShift));
+            out[d + x] = (short) (((red >> 3) << 11) | ((green >> 2) << 5) | (blue >> 3));
+        }
+    }
+
+    /**
+     * Kernels too large for the packed plane widen the rows they need to ARGB,
+     * a band at a time. A band holding every row within the radius of its
+     * output rows clamps at the image edges just like the whole image would.
+     */
+    private void applyWidened(Rgb565Raster src, Rgb565Raster dst, int top, int bottom) {
+        int width = src.width;
+        int bandRows = Math.max(MIN_BAND_ROWS, BAND_BYTES / (4 * width) - 2 * mRadius);
+        BufferPool pool = BufferPool.getDefault();
+        for (int y0 = top; y0 < bottom; y0 += bandRows) {
+            int y1 = Math.min(bottom, y0 + bandRows);
+            int first = Math.max(0, y0 - mRadius);
+            int last = Math.min(src.height, y1 + mRadius);
+            Raster in = pool.acquire(width, last - first);
+            Raster out = pool.acquire(width, last - first);
+            try {
+                PixelFormats.convert(src.region(0, first, width, last - first), in);
+                apply(in, out, y0 - first, y1 - first);
+                for (int y = y0; y < y1; ++y) {
+                    PixelFormats.toRgb565(out.pixels, out.index(0, y - first), dst.pixels, dst.index(0, y), width);
+                }
+            } finally {
+                pool.release(in);
+                pool.release(out);
+            }
+        }
+    }
+
+    /**
+     * Convolve the red, green and blue planes separately and copy alpha, which
+     * gives the same pixels as the ARGB path.
+     */
+    @Override
+    public void apply(PlanarRaster src, PlanarRaster dst, int top, int bottom) {
+        apply(src.redPlane(), dst.redPlane(), top, bottom);
+        apply(src.greenPlane(), dst.greenPlane(), top, bottom);
+        apply(src.bluePlane(), dst.bluePlane(), top, bottom);
+        for (int y = top; y < bottom; ++y) {
+            System.arraycopy(src.alpha, src.index(0, y), dst.alpha, dst.index(0, y), src.width);
+        }
+    }
+
+    /**
+     * Gives the same pixels as the ARGB path does for each channel of a gray
+     * image, on a third of the work.
+     */
+    @Override
+    public void apply(GrayRaster src, GrayRaster dst, int top, int bottom) {
+        int width = src.width;
+        int paddedWidth = width + 2 * mRadius;
+
+        int bandRows = Math.max(MIN_BAND_ROWS, BAND_BYTES / (4 * paddedWidth) - 2 * mRadius);
+        bandRows = Math.min(bandRows, bottom - top);
+        if (bandRows <= 0) {
+            return;
+        }
+
+        BufferPool pool = BufferPool.getDefault();
+        int[] plane = pool.acquire((bandRows + 2 * mRadius) * paddedWidth);
+        int[] sum = pool.acquire(width);
+        int[] horizontal = mSeparable ? pool.acquire((bandRows + 2 * mRadius) * width) : null;
+
+        try {
+            for (int y0 = top; y0 < bottom; y0 += bandRows) {
+                int rows = Math.min(bandRows, bottom - y0);
+                unpack(src, y0 - mRadius, rows + 2 * mRadius, paddedWidth, plane);
+                if (mSeparable) {
+                    horizontalPass(rows + 2 * mRadius, width, paddedWidth, plane, horizontal);
+                }
+                for (int row = 0; row < rows; ++row) {
+                    if (mSeparable) {
+                        verticalPass(row, width, paddedWidth, horizontal, plane, sum);
+                    } else {
+                        taps(row, width, paddedWidth, plane, sum);
+                    }
+                    pack(dst, y0 + row, sum);
+                }
+            }
+        } finally {
+            pool.release(plane);
+            pool.release(sum);
+            pool.release(horizontal);
+        }
+    }
+
+    private void unpack(GrayRaster src, int firstRow, int rows, int paddedWidth, int[] plane) {
+        int width = src.width;
+        int lastRow = src.height - 1;
+        byte[] pixels = src.pixels;
+
+        for (int row = 0; row < rows; ++row) {
+            int y = Math.max(0, Math.min(firstRow + row, lastRow));
+            int in = src.index(0, y);
+            int out = row * paddedWidth + mRadius;
+
+            for (int x = 0; x < width; ++x) {
+                plane[out + x] = pixels[in + x] & 0xFF;
+            }
+
+            int left = out;
+            int right = out + width - 1;
+            for (int p = 1; p <= mRadius; ++p) {
+                plane[left - p] = plane[left];
+                plane[right + p] = plane[right];
+            }
+        }
+    }
+
+    private void pack(GrayRaster dst, int y, int[] sum) {
+        byte[] out = dst.pixels;
+        int d = dst.index(0, y);
+        long multiplier = mMultiplier;
+        long bias = mBias;
+
+        for (int x = 0; x < dst.width; ++x) {
+            out[d + x] = (byte) Argb.clamp((int) ((sum[x] * multiplier + bias) >> mShift));
+        }
+    }
+
+    private static long absSum(int[] values) {
+        long sum = 0;
+        for (int value : values) {
+            sum += Math.abs((long) value);
+        }
+        return sum;
+    }
+
+    private static boolean isIntegral(double[][] matrix) {
+        for (double[] column : matrix) {
+            for (double value : column) {
+                if (value != Math.rint(value)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Try to write weights as column[i] * row[j], plus an extra weight on the
+     * center tap.
+     *
+     * @return {column, row, {center}}, or null if the kernel does not factor
+     */
+    private static int[][] factorize(int[][] weights) {
+        int size = weights.length;
+        if (size == 1) {
+            return null;
+        }
+        int m = size / 2;
+
+        int[][] factors = factorizeRankOne(weights);
+        if (factors != null) {
+            return new int[][]{factors[0], factors[1], {0}};
+        }
+
+        // find the center of the rank one part from any non zero tap off the center row and column
+        for (int p = 0; p < size; ++p) {
+            for (int q = 0; q < size; ++q) {
+                if (p == m || q == m || weights[p][q] == 0) {
+                    continue;
+                }
+                long product = (long) weights[m][q] * weights[p][m];
+                if (product % weights[p][q] != 0) {
+                    return null;
+                }
+                int center = (int) (product / weights[p][q]);
+
+                int[][] rankOne = new int[size][];
+                for (int i = 0; i < size; ++i) {
+                    rankOne[i] = weights[i].clone();
+                }
+                rankOne[m][m] = center;
+
+                factors = factorizeRankOne(rankOne);
+                if (factors == null) {
+                    return null;
+                }
+                return new int[][]{factors[0], factors[1], {weights[m][m] - center}};
+            }
+        }
+        return null;
+    }
+
+    private static int[][] factorizeRankOne(int[][] weights) {
+        int size = weights.length;
+
+        // pick the first column with a non zero tap as the row vector, reduced by its gcd
+        int p = -1;
+        for (int i = 0; i < size && p < 0; ++i) {
+            for (int j = 0; j < size; ++j) {
+                if (weights[i][j] != 0) {
+                    p = i;
+                    break;
+                }
+            }
+        }
+        if (p < 0) {
+            return null;
+        }
+
+        int gcd = 0;
+        for (int j = 0; j < size; ++j) {
+            gcd = gcd(gcd, Math.abs(weights[p][j]));
+        }
+        int[] row = new int[size];
+        int q = -1;
+        for (int j = 0; j < size; ++j) {
+            row[j] = weights[p][j] / gcd;
+            if (q < 0 && row[j] != 0) {
+                q = j;
+            }
+        }
+
+        int[] column = new int[size];
+        for (int i = 0; i < size; ++i) {
+            if (weights[i][q] % row[q] != 0) {
+                return null;
+            }
+            column[i] = weights[i][q] / row[q];
+        }
+
+        for (int i = 0; i < size; ++i) {
+            for (int j = 0; j < size; ++j) {
+                if ((long) column[i] * row[j] != weights[i][j]) {
+                    return null;
+                }
+            }
+        }
+        return new int[][]{column, row};
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+}
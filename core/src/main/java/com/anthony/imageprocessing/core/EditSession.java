@@ -0,0 +1,269 @@
+package com.anthony.imageprocessing.core;
+
+import java.util.Arrays;
+
+/**
+ * Keeps one source image and whatever its effects compute before looking at
+ * their parameter, so that trying out parameter after parameter on the same
+ * image only redoes the last, cheap step:
+ * <ul>
+ * <li>hue: the hue and saturation of every pixel, so a new level is a multiply
+ * and an HSV to RGB conversion per pixel</li>
+ * <li>smooth: the box sums of every pixel's neighbourhood, so a new center
+ * weight is a multiply-add per channel instead of a convolution</li>
+ * </ul>
+ * Results are identical to {@link HueEffect} and to {@link ConvolutionEngine}
+ * with the same kernel. Intermediates are built on first use, on the threads
+ * of the executor, and take 4 (hue) or 8 (smooth) bytes per pixel until
+ * {@link #release()}. The source raster must not change while the session is in use.
+ */
+public class EditSession {
+
+    /** Largest smooth kernel whose box sums fit the 21 bit lanes of a long. */
+    public static final int MAX_SMOOTH_SIZE = 89;
+
+    private static final int LANE_BITS = 21;
+    private static final long LANE_MASK = (1L << LANE_BITS) - 1;
+    private static final int SAT_BITS = 17;
+
+    private final Raster mSource;
+    private final ParallelExecutor mExecutor;
+    private final BufferPool mPool;
+
+    // (hue << SAT_BITS) | saturation of every pixel, null until hue is used
+    private int[] mHueSaturation;
+    // packed R, G and B box sums of every pixel, for mBoxSize
+    private long[] mBoxSums;
+    private int mBoxSize;
+
+    public EditSession(Raster source, ParallelExecutor executor, BufferPool pool) {
+        mSource = source;
+        mExecutor = executor;
+        mPool = pool;
+    }
+
+    public Raster getSource() {
+        return mSource;
+    }
+
+    /**
+     * {@link ChannelLut#brightness(int)} of the source into dst; nothing to keep,
+     * the session only saves re-reading the image.
+     */
+    public void brightness(int value, Raster dst, Cancellation cancellation) {
+        checkSize(dst);
+        mExecutor.run(ChannelLut.brightness(value), mSource, dst, 0, mSource.height, cancellation);
+    }
+
+    /**
+     * {@link HueEffect} of the source with the given level into dst.
+     */
+    public void hue(int level, final Raster dst, Cancellation cancellation) {
+        checkSize(dst);
+        final int[] planes = hueSaturation(cancellation);
+        final long factor = Math.max(0, level);
+        mExecutor.run(new ParallelExecutor.Strip() {
+            @Override
+            public void apply(int top, int bottom) {
+                Raster src = mSource;
+                int saturationMask = (1 << SAT_BITS) - 1;
+                for (int y = top; y < bottom; ++y) {
+                    int s = src.index(0, y);
+                    int d = dst.index(0, y);
+                    int p = y * src.width;
+                    for (int x = 0; x < src.width; ++x) {
+                        int pixel = src.pixels[s + x];
+                        int hs = planes[p + x];
+                        int hue = (int) Math.min((hs >>> SAT_BITS) * factor, FastHsv.HUE_MAX);
+                        dst.pixels[d + x] = pixel
+                                | FastHsv.toArgb(0xFF, hue, hs & saturationMask, FastHsv.value(pixel));
+                    }
+                }
+            }
+        }, 0, mSource.height, cancellation);
+    }
+
+    private synchronized int[] hueSaturation(Cancellation cancellation) {
+        if (mHueSaturation == null) {
+            final Raster src = mSource;
+            final int[] planes = mPool.acquire(src.width * src.height);
+            try {
+                mExecutor.run(new ParallelExecutor.Strip() {
+                    @Override
+                    public void apply(int top, int bottom) {
+                        for (int y = top; y < bottom; ++y) {
+                            int s = src.index(0, y);
+                            int p = y * src.width;
+                            for (int x = 0; x < src.width; ++x) {
+                                int pixel = src.pixels[s + x];
+                                planes[p + x] = (FastHsv.hue(pixel) << SAT_BITS) | FastHsv.saturation(pixel);
+                            }
+                        }
+                    }
+                }, 0, src.height, cancellation);
+                mHueSaturation = planes;
+            } finally {
+                // cancelled or failed half way
+                if (mHueSaturation != planes) {
+                    mPool.release(planes);
+                }
+            }
+        }
+        return mHueSaturation;
+    }
+
+    /**
+     * Convolve the source with a size x size kernel of ones whose center weight
+     * is centerWeight, divided by factor and plus offset, into dst.
+     */
+    public void smooth(double centerWeight, int size, double factor, double offset, final Raster dst,
+                       Cancellation cancellation) {
+        checkSize(dst);
+        if (size % 2 == 0 || size < 1 || size > MAX_SMOOTH_SIZE) {
+            throw new IllegalArgumentException("Size must be odd and at most " + MAX_SMOOTH_SIZE + ", was " + size);
+        }
+        final long[] box = boxSums(size, cancellation);
+
+        // the weights and fixed-point scale ConvolutionEngine compiles the same matrix to
+        double[][] matrix = new double[size][size];
+        for (double[] column : matrix) {
+            Arrays.fill(column, 1);
+        }
+        matrix[size / 2][size / 2] = centerWeight;
+        ConvolutionEngine kernel = new ConvolutionEngine(matrix, factor, offset);
+        int scale = kernel.weightScale();
+        final long weight = scale;
+        final long extraCenter = Math.round(centerWeight * scale) - scale;
+        final long multiplier = kernel.multiplier();
+        final long bias = kernel.bias();
+        final int shift = kernel.shift();
+
+        mExecutor.run(new ParallelExecutor.Strip() {
+            @Override
+            public void apply(int top, int bottom) {
+                Raster src = mSource;
+                for (int y = top; y < bottom; ++y) {
+                    int s = src.index(0, y);
+                    int d = dst.index(0, y);
+                    int p = y * src.width;
+                    for (int x = 0; x < src.width; ++x) {
+                        int pixel = src.pixels[s + x];
+                        long sums = box[p + x];
+                        long r = weight * (sums >>> (2 * LANE_BITS)) + extraCenter * ((pixel >> 16) & 0xFF);
+                        long g = weight * ((sums >>> LANE_BITS) & LANE_MASK) + extraCenter * ((pixel >> 8) & 0xFF);
+                        long b = weight * (sums & LANE_MASK) + extraCenter * (pixel & 0xFF);
+                        int red = Argb.clamp((int) ((r * multiplier + bias) >> shift));
+                        int green = Argb.clamp((int) ((g * multiplier + bias) >> shift));
+                        int blue = Argb.clamp((int) ((b * multiplier + bias) >> shift));
+                        dst.pixels[d + x] = (pixel & 0xFF000000) | (red << 16) | (green << 8) | blue;
+                    }
+                }
+            }
+        }, 0, mSource.height, cancellation);
+    }
+
+    private synchronized long[] boxSums(int size, Cancellation cancellation) {
+        if (mBoxSums == null || mBoxSize != size) {
+            final Raster src = mSource;
+            final long[] box = mBoxSums != null ? mBoxSums : mPool.acquireLongs(src.width * src.height);
+            mBoxSums = null;
+            final int radius = size / 2;
+            try {
+                mExecutor.run(new ParallelExecutor.Strip() {
+                    @Override
+                    public void apply(int top, int bottom) {
+                        boxSums(radius, top, bottom, box);
+                    }
+                }, 0, src.height, cancellation, radius);
+                mBoxSums = box;
+                mBoxSize = size;
+            } finally {
+                // cancelled or failed half way
+                if (mBoxSums != box) {
+                    mPool.release(box);
+                }
+            }
+        }
+        return mBoxSums;
+    }
+
+    /**
+     * Sum the (2 * radius + 1)^2 neighbourhood of every pixel in rows [top,
+     * bottom), clamped to the image, into box, with R, G and B packed into
+     * lanes of a long. Lanes never go negative, so packed sums add up exactly.
+     */
+    private void boxSums(int radius, int top, int bottom, long[] box) {
+        Raster src = mSource;
+        int width = src.width;
+        int lastRow = src.height - 1;
+        int lastColumn = width - 1;
+        int first = Math.max(0, top - radius);
+        int last = Math.min(lastRow, bottom - 1 + radius);
+
+        // horizontal sums of the rows the strip needs
+        long[] rows = mPool.acquireLongs((last - first + 1) * width);
+        long[] sum = mPool.acquireLongs(width);
+        try {
+            for (int y = first; y <= last; ++y) {
+                int s = src.index(0, y);
+                int o = (y - first) * width;
+                long running = 0;
+                for (int k = -radius; k <= radius; ++k) {
+                    running += packed(src.pixels[s + Math.max(0, Math.min(k, lastColumn))]);
+                }
+                for (int x = 0; x < width; ++x) {
+                    rows[o + x] = running;
+                    running += packed(src.pixels[s + Math.min(x + radius + 1, lastColumn)])
+                            - packed(src.pixels[s + Math.max(x - radius, 0)]);
+                }
+            }
+
+            for (int x = 0; x < width; ++x) {
+                sum[x] = 0;
+            }
+            for (int k = -radius; k <= radius; ++k) {
+                int o = (Math.max(0, Math.min(top + k, lastRow)) - first) * width;
+                for (int x = 0; x < width; ++x) {
+                    sum[x] += rows[o + x];
+                }
+            }
+            for (int y = top; y < bottom; ++y) {
+                System.arraycopy(sum, 0, box, y * width, width);
+                if (y + 1 < bottom) {
+                    int enter = (Math.min(y + radius + 1, lastRow) - first) * width;
+                    int leave = (Math.max(y - radius, 0) - first) * width;
+                    for (int x = 0; x < width; ++x) {
+                        sum[x] += rows[enter + x] - rows[leave + x];
+                    }
+                }
+            }
+        } finally {
+            mPool.release(rows);
+            mPool.release(sum);
+        }
+    }
+
+    private static long packed(int pixel) {
+        return ((long) ((pixel >> 16) & 0xFF) << (2 * LANE_BITS)) | ((long) ((pixel >> 8) & 0xFF) << LANE_BITS)
+                | (pixel & 0xFF);
+    }
+
+    /**
+     * Hand the intermediates back to the pool. The session can still be used,
+     * it builds them again when needed.
+     */
+    public synchronized void release() {
+        mPool.release(mHueSaturation);
+        mPool.release(mBoxSums);
+        mHueSaturation = null;
+        mBoxSums = null;
+    }
+
+    private void checkSize(Raster dst) {
+        if (dst.width != mSource.width || dst.height != mSource.height) {
+            throw new IllegalArgumentException("Destination is " + dst.width + "x" + dst.height
+                    + ", expected " + mSource.width + "x" + mSource.height);
+        }
+    }
+
+}
@@ -0,0 +1,23 @@
+package com.anthony.imageprocessing.core;
+
+/**
+ * An image effect working on {@link Raster}s.
+ * <p/>
+ * Effects only ever write the output rows they are asked for, so the same
+ * instance can be driven over the whole image or over a band of rows.
+ */
+public interface Effect {
+
+    /**
+     * @return how many pixels around an output pixel the effect reads from the
+     * source, 0 for effects that only look at the pixel itself
+     */
+    int radius();
+
+    /**
+     * Compute output rows [top, bottom). src and dst have the same size, and may
+     * only be the same raster when {@link #radius()} is 0.
+     */
+    void apply(Raster src, Raster dst, int top, int bottom);
+
+}
@@ -0,0 +1,162 @@
+package com.anthony.imageprocessing.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A chain of effects applied in order, with as few passes and buffers as possible.
+ * <p/>
+ * Consecutive {@link PointEffect}s are fused into a single pass over the
+ * pixels. Effects that read neighbouring pixels need their input intact, so
+ * they write into the other one of two ping-pong buffers, the destination and
+ * one scratch buffer. The source raster is never written.
+ * <p/>
+ * Consecutive {@link ChannelLut}s are composed into a single table first.
+ */
+public class EffectPipeline {
+
+    private final List<Effect> mEffects = new ArrayList<Effect>();
+
+    public EffectPipeline add(Effect effect) {
+        mEffects.add(effect);
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return mEffects.isEmpty();
+    }
+
+    /**
+     * @return how far from an output pixel the whole chain reads, the sum of the effect radii
+     */
+    public int radius() {
+        int radius = 0;
+        for (Effect effect : mEffects) {
+            radius += effect.radius();
+        }
+        return radius;
+    }
+
+    /**
+     * @return this chain for the image shrunk by factor, with every {@link ScalableEffect} scaled
+     */
+    public EffectPipeline scaled(double factor) {
+        EffectPipeline scaled = new EffectPipeline();
+        for (Effect effect : mEffects) {
+            scaled.add(effect instanceof ScalableEffect ? ((ScalableEffect) effect).scaled(factor) : effect);
+        }
+        return scaled;
+    }
+
+    /**
+     * @return the effects to run, one pass each
+     */
+    List<Effect> passes() {
+        List<Effect> passes = new ArrayList<Effect>();
+        List<PointEffect> points = new ArrayList<PointEffect>();
+
+        for (Effect effect : mEffects) {
+            if (effect instanceof ChannelLut && !points.isEmpty()
+                    && points.get(points.size() - 1) instanceof ChannelLut) {
+                ChannelLut previous = (ChannelLut) points.remove(points.size() - 1);
+                points.add(previous.then((ChannelLut) effect));
+                continue;
+            }
+            if (effect instanceof PointEffect) {
+                points.add((PointEffect) effect);
+                continue;
+            }
+            flush(points, passes);
+            passes.add(effect);
+        }
+        flush(points, passes);
+
+        return passes;
+    }
+
+    private static void flush(List<PointEffect> points, List<Effect> passes) {
+        if (points.size() == 1) {
+            passes.add(points.get(0));
+        } else if (points.size() > 1) {
+            passes.add(new FusedPointEffect(points));
+        }
+        points.clear();
+    }
+
+    /**
+     * Run the chain over src.
+     *
+     * @return a new raster holding the result
+     */
+    public Raster run(Raster src, ParallelExecutor executor) {
+        Raster dst = src.sameSize();
+        run(src, dst, executor, BufferPool.getDefault());
+        return dst;
+    }
+
+    /**
+     * Run the chain over src, writing the result into dst. At most one
+     * intermediate buffer is taken from the pool, and it goes back there when done.
+     * <p/>
+     * dst may be src only if every effect in the chain is a point effect.
+     */
+    public void run(Raster src, Raster dst, ParallelExecutor executor, BufferPool pool) {
+        run(src, dst, executor, pool, null);
+    }
+
+    /**
+     * Like {@link #run(Raster, Raster, ParallelExecutor, BufferPool)}, giving up
+     * with a CancellationException once cancellation, if not null, is cancelled.
+     */
+    public void run(Raster src, Raster dst, ParallelExecutor executor, BufferPool pool, Cancellation cancellation) {
+        if (src.width != dst.width || src.height != dst.height) {
+            throw new IllegalArgumentException("Destination is " + dst.width + "x" + dst.height
+                    + ", source is " + src.width + "x" + src.height);
+        }
+        List<Effect> passes = passes();
+        if (passes.isEmpty()) {
+            if (dst != src) {
+                for (int y = 0; y < src.height; ++y) {
+                    System.arraycopy(src.pixels, src.index(0, y), dst.pixels, dst.index(0, y), src.width);
+                }
+            }
+            return;
+        }
+
+        // Walk backwards from dst: a point effect can run in place, so its input
+        // is its own target, everything else reads from the other buffer.
+        boolean[] intoDst = new boolean[passes.size()];
+        boolean target = true;
+        for (int pass = passes.size() - 1; pass >= 0; --pass) {
+            intoDst[pass] = target;
+            if (passes.get(pass).radius() > 0) {
+                target = !target;
+            }
+        }
+        if (dst == src && passes.get(0).radius() > 0 && intoDst[0]) {
+            throw new IllegalArgumentException("Cannot run " + passes.get(0).getClass().getSimpleName() + " in place");
+        }
+
+        Raster spare = null;
+        try {
+            Raster current = src;
+            for (int pass = 0; pass < passes.size(); ++pass) {
+                Raster next;
+                if (intoDst[pass]) {
+                    next = dst;
+                } else {
+                    if (spare == null) {
+                        spare = new Raster(pool.acquire(src.width * src.height), src.width, src.height,
+                                0, src.width, src.originX, src.originY);
+                    }
+                    next = spare;
+                }
+                executor.run(passes.get(pass), current, next, 0, src.height, cancellation);
+                current = next;
+            }
+        } finally {
+            pool.release(spare);
+        }
+    }
+
+}
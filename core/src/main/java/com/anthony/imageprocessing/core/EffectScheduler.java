@@ -0,0 +1,193 @@
+package com.anthony.imageprocessing.core;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Runs effect jobs one at a time on a worker thread of its own, most urgent first.
+ * <p/>
+ * Jobs run one after the other because each one already spreads over every
+ * core through its {@link ParallelExecutor}. Waiting jobs are ordered by
+ * priority, {@link #PRIORITY_INTERACTIVE} before {@link #PRIORITY_BACKGROUND},
+ * and by submission within the same priority. A running job is not
+ * interrupted by a more urgent one.
+ * <p/>
+ * Jobs may belong to a group, e.g. "the effect shown on screen". Submitting
+ * a job cancels every earlier job of its group that is still waiting or
+ * running, so only the latest request gets computed. Cancellation is
+ * cooperative: a job sees it through the {@link Cancellation} it is handed.
+ * A job that fails is told so through {@link Job#onFailure(Throwable)}
+ * rather than bringing down the worker, or the app with it.
+ */
+public class EffectScheduler {
+
+    public static final int PRIORITY_INTERACTIVE = 0;
+    public static final int PRIORITY_BACKGROUND = 10;
+
+    public interface Job {
+
+        /**
+         * Do the work, checking cancellation between rows or tiles. A
+         * CancellationException thrown from here counts as giving up normally.
+         */
+        void run(Cancellation cancellation);
+
+        /**
+         * Called on the worker thread when {@link #run(Cancellation)} threw
+         * anything but a CancellationException, errors such as running out of
+         * memory included. The scheduler goes on with the next job either way.
+         */
+        void onFailure(Throwable e);
+
+    }
+
+    private static class Entry implements Comparable<Entry> {
+
+        final String mGroup;
+        final int mPriority;
+        final long mSequence;
+        final Job mJob;
+        final Cancellation mCancellation = new Cancellation();
+
+        Entry(String group, int priority, long sequence, Job job) {
+            mGroup = group;
+            mPriority = priority;
+            mSequence = sequence;
+            mJob = job;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (mPriority != other.mPriority) {
+                return mPriority < other.mPriority ? -1 : 1;
+            }
+            return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+        }
+
+    }
+
+    private final PriorityQueue<Entry> mQueue = new PriorityQueue<Entry>();
+    private final Thread mWorker;
+    private Entry mRunning;
+    private long mSequence;
+    private boolean mShutdown;
+
+    public EffectScheduler() {
+        mWorker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                work();
+            }
+        }, "effect-scheduler");
+        mWorker.setDaemon(true);
+        mWorker.start();
+    }
+
+    /**
+     * Queue job, cancelling the earlier jobs of group unless group is null.
+     *
+     * @return the job's cancellation, to cancel it individually
+     */
+    public synchronized Cancellation submit(String group, int priority, Job job) {
+        if (mShutdown) {
+            throw new IllegalStateException("Scheduler is shut down");
+        }
+        if (group != null) {
+            cancel(group);
+        }
+        Entry entry = new Entry(group, priority, mSequence++, job);
+        mQueue.add(entry);
+        notifyAll();
+        return entry.mCancellation;
+    }
+
+    /**
+     * Cancel every waiting and running job of group.
+     */
+    public synchronized void cancel(String group) {
+        for (Iterator<Entry> it = mQueue.iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            if (group.equals(entry.mGroup)) {
+                entry.mCancellation.cancel();
+                it.remove();
+            }
+        }
+        if (mRunning != null && group.equals(mRunning.mGroup)) {
+            mRunning.mCancellation.cancel();
+        }
+    }
+
+    /**
+     * @return how many jobs are waiting to run
+     */
+    public synchronized int getQueueLength() {
+        return mQueue.size();
+    }
+
+    /**
+     * Cancel everything and stop the worker once the running job gives up.
+     */
+    public synchronized void shutdown() {
+        mShutdown = true;
+        List<Entry> cancelled = new ArrayList<Entry>(mQueue);
+        mQueue.clear();
+        for (Entry entry : cancelled) {
+            entry.mCancellation.cancel();
+        }
+        if (mRunning != null) {
+            mRunning.mCancellation.cancel();
+        }
+        notifyAll();
+    }
+
+    private void work() {
+        while (true) {
+            Entry entry;
+            synchronized (this) {
+                while (mQueue.isEmpty() && !mShutdown) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // only shutdown ends the worker
+                    }
+                }
+                if (mShutdown) {
+                    return;
+                }
+                entry = mQueue.poll();
+                mRunning = entry;
+            }
+
+            try {
+                if (!entry.mCancellation.isCancelled()) {
+                    entry.mJob.run(entry.mCancellation);
+                }
+            } catch (CancellationException e) {
+                // the job gave up as asked
+            } catch (Throwable e) {
+                // errors too: a dead worker would leave every later job waiting forever
+                fail(entry, e);
+            } finally {
+                synchronized (this) {
+                    mRunning = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Hand the failure to the job; only if that fails too is it treated like
+     * an exception on any other thread, still serving the queue afterwards.
+     */
+    private void fail(Entry entry, Throwable e) {
+        try {
+            entry.mJob.onFailure(e);
+        } catch (Throwable again) {
+            mWorker.getUncaughtExceptionHandler().uncaughtException(mWorker, again);
+        }
+    }
+
+}
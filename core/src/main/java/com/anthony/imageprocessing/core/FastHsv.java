@@ -0,0 +1,148 @@
+package com.anthony.imageprocessing.core;
+
+/**
+ * Allocation free RGB <-> HSV conversion in fixed-point integer arithmetic.
+ * <p/>
+ * Components are ints:
+ * <ul>
+ * <li>hue in [0, {@link #HUE_MAX}), {@link #HUE_SECTOR} units per 60 degrees</li>
+ * <li>saturation in [0, {@link #SAT_ONE}]</li>
+ * <li>value in [0, 255], the largest of R, G and B</li>
+ * </ul>
+ * Divisions go through a table of reciprocals, so a conversion is a handful
+ * of multiplies and shifts.
+ * <p/>
+ * Accuracy against the float conversion of {@link Hsv} (which matches
+ * android.graphics.Color), checked by FastHsvTest:
+ * <ul>
+ * <li>RGB -> HSV -> RGB gives back the exact color, for all 2^24 opaque colors</li>
+ * <li>converting the float HSV of a color, rounded to fixed-point, gives the
+ * same color, for all 2^24 opaque colors</li>
+ * <li>{@link HueEffect} gives the same pixels for levels 0 to 10, for all 2^24 opaque colors</li>
+ * <li>{@link HsvAdjustEffect} is within 1 per channel of rotating and scaling
+ * in float, on a grid of colors every 3 levels of each channel, alpha included</li>
+ * </ul>
+ */
+public final class FastHsv {
+
+    public static final int HUE_BITS = 12;
+    public static final int HUE_SECTOR = 1 << HUE_BITS;
+    public static final int HUE_MAX = 6 * HUE_SECTOR;
+    public static final int SAT_ONE = 1 << 16;
+
+    private static final int RECIPROCAL_BITS = 20;
+    private static final int[] RECIPROCAL = new int[256];
+
+    static {
+        for (int d = 1; d < 256; ++d) {
+            RECIPROCAL[d] = ((1 << RECIPROCAL_BITS) + d / 2) / d;
+        }
+    }
+
+    private FastHsv() {
+    }
+
+    public static int hue(int color) {
+        int r = (color >> 16) & 0xFF;
+        int g = (color >> 8) & 0xFF;
+        int b = color & 0xFF;
+        int max = Math.max(r, Math.max(g, b));
+        int delta = max - Math.min(r, Math.min(g, b));
+        if (delta == 0) {
+            return 0;
+        }
+
+        int sector, distance;
+        if (r == max) {
+            sector = 0;
+            distance = g - b;
+        } else if (g == max) {
+            sector = 2;
+            distance = b - r;
+        } else {
+            sector = 4;
+            distance = r - g;
+        }
+        int shift = RECIPROCAL_BITS - HUE_BITS;
+        int h = (sector << HUE_BITS) + ((distance * RECIPROCAL[delta] + (1 << (shift - 1))) >> shift);
+        return h < 0 ? h + HUE_MAX : h;
+    }
+
+    public static int saturation(int color) {
+        int r = (color >> 16) & 0xFF;
+        int g = (color >> 8) & 0xFF;
+        int b = color & 0xFF;
+        int max = Math.max(r, Math.max(g, b));
+        int delta = max - Math.min(r, Math.min(g, b));
+        int shift = RECIPROCAL_BITS - 16;
+        return (delta * RECIPROCAL[max] + (1 << (shift - 1))) >> shift;
+    }
+
+    public static int value(int color) {
+        return Math.max((color >> 16) & 0xFF, Math.max((color >> 8) & 0xFF, color & 0xFF));
+    }
+
+    /**
+     * @param hue        in [0, HUE_MAX), anything else counts as 0 like in android.graphics.Color
+     * @param saturation in [0, SAT_ONE]
+     * @param value      in [0, 255]
+     */
+    public static int toArgb(int alpha, int hue, int saturation, int value) {
+        if (saturation == 0) {
+            return (alpha << 24) | (value << 16) | (value << 8) | value;
+        }
+        if (hue < 0 || hue >= HUE_MAX) {
+            hue = 0;
+        }
+
+        int f = hue & (HUE_SECTOR - 1);
+        int p = (value * (SAT_ONE - saturation) + (SAT_ONE >> 1)) >> 16;
+        int q = (value * (SAT_ONE - ((saturation * f) >> HUE_BITS)) + (SAT_ONE >> 1)) >> 16;
+        int t = (value * (SAT_ONE - ((saturation * (HUE_SECTOR - f)) >> HUE_BITS)) + (SAT_ONE >> 1)) >> 16;
+
+        int r, g, b;
+        switch (hue >> HUE_BITS) {
+            case 0:
+                r = value; g = t; b = p;
+                break;
+            case 1:
+                r = q; g = value; b = p;
+                break;
+            case 2:
+                r = p; g = value; b = t;
+                break;
+            case 3:
+                r = p; g = q; b = value;
+                break;
+            case 4:
+                r = t; g = p; b = value;
+                break;
+            default:
+                r = value; g = p; b = q;
+                break;
+        }
+        return (alpha << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Convert a run of pixels into separate hue, saturation and value arrays.
+     */
+    public static void toHsv(int[] src, int srcPos, int[] hue, int[] saturation, int[] value, int dstPos, int length) {
+        for (int i = 0; i < length; ++i) {
+            int color = src[srcPos + i];
+            hue[dstPos + i] = hue(color);
+            saturation[dstPos + i] = saturation(color);
+            value[dstPos + i] = value(color);
+        }
+    }
+
+    /**
+     * Convert a run of hue, saturation and value back into opaque pixels.
+     */
+    public static void toArgb(int[] hue, int[] saturation, int[] value, int srcPos, int[] dst, int dstPos, int length) {
+        for (int i = 0; i < length; ++i) {
+            dst[dstPos + i] = toArgb(0xFF, hue[srcPos + i], saturation[srcPos + i], value[srcPos + i]);
+        }
+    }
+
+}
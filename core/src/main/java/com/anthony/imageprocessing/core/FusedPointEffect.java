@@ -0,0 +1,31 @@
+package com.anthony.imageprocessing.core;
+
+import java.util.List;
+
+/**
+ * Several point effects run back to back on short runs of pixels, so each run
+ * is loaded once and stays in L1 cache while every stage works on it.
+ */
+class FusedPointEffect extends PointEffect {
+
+    /** Pixels per run, 4 KB of ints. */
+    private static final int RUN_LENGTH = 1024;
+
+    private final PointEffect[] mStages;
+
+    FusedPointEffect(List<PointEffect> stages) {
+        mStages = stages.toArray(new PointEffect[stages.size()]);
+    }
+
+    @Override
+    public void filter(int[] src, int srcPos, int[] dst, int dstPos, int length, int x, int y) {
+        for (int start = 0; start < length; start += RUN_LENGTH) {
+            int run = Math.min(RUN_LENGTH, length - start);
+            mStages[0].filter(src, srcPos + start, dst, dstPos + start, run, x + start, y);
+            for (int stage = 1; stage < mStages.length; ++stage) {
+                mStages[stage].filter(dst, dstPos + start, dst, dstPos + start, run, x + start, y);
+            }
+        }
+    }
+
+}
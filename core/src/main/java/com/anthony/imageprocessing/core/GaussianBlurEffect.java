@@ -0,0 +1,99 @@
+package com.anthony.imageprocessing.core;
+
+/**
+ * Gaussian blur approximated by three successive box blurs, so the cost per
+ * pixel does not depend on sigma.
+ * <p/>
+ * The box sizes follow Kovesi, "Fast Almost-Gaussian Filtering" (2010). All
+ * horizontal passes run first, then the vertical ones.
+ */
+public class GaussianBlurEffect implements ScalableEffect {
+
+    private static final int PASSES = 3;
+
+    private final double mSigma;
+    private final int[] mRadii = new int[PASSES];
+    private final int mRadius;
+
+    public GaussianBlurEffect(double sigma) {
+        if (sigma < 0) {
+            throw new IllegalArgumentException("Sigma must not be negative, was " + sigma);
+        }
+        mSigma = sigma;
+
+        double ideal = Math.sqrt(12 * sigma * sigma / PASSES + 1);
+        int lower = (int) Math.floor(ideal);
+        if (lower % 2 == 0) {
+            --lower;
+        }
+        int upper = lower + 2;
+        long lowerPasses = Math.round((12 * sigma * sigma - PASSES * lower * lower - 4 * PASSES * lower - 3 * PASSES)
+                / (-4.0 * lower - 4));
+
+        int radius = 0;
+        for (int pass = 0; pass < PASSES; ++pass) {
+            int size = pass < lowerPasses ? lower : upper;
+            mRadii[pass] = (size - 1) / 2;
+            radius += mRadii[pass];
+        }
+        mRadius = radius;
+    }
+
+    @Override
+    public int radius() {
+        return mRadius;
+    }
+
+    @Override
+    public Effect scaled(double factor) {
+        return new GaussianBlurEffect(mSigma / factor);
+    }
+
+    @Override
+    public void apply(Raster src, Raster dst, int top, int bottom) {
+        if (top >= bottom) {
+            return;
+        }
+        int width = src.width;
+        int height = src.height;
+        int first = Math.max(0, top - mRadius);
+        int last = Math.min(height, bottom + mRadius);
+
+        BufferPool pool = BufferPool.getDefault();
+        int[] band = pool.acquire((last - first) * width);
+        int[] spare = pool.acquire((last - first) * width);
+        int[] row = pool.acquire(width);
+        int[] sums = pool.acquire(4 * width);
+
+        try {
+            for (int y = first; y < last; ++y) {
+                int o = (y - first) * width;
+                BoxFilter.horizontal(src.pixels, src.index(0, y), band, o, width, mRadii[0]);
+                BoxFilter.horizontal(band, o, row, 0, width, mRadii[1]);
+                BoxFilter.horizontal(row, 0, band, o, width, mRadii[2]);
+            }
+
+            // every vertical pass shrinks the rows it needs by its own radius
+            int base = -first * width;
+            int halo = mRadius;
+            for (int pass = 0; pass < PASSES - 1; ++pass) {
+                halo -= mRadii[pass];
+                int from = Math.max(0, top - halo);
+                int to = Math.min(height, bottom + halo);
+                BoxFilter.vertical(band, base, width, spare, base, width, width, height, from, to, mRadii[pass], sums);
+
+                int[] swap = band;
+                band = spare;
+                spare = swap;
+            }
+            BoxFilter.vertical(band, base, width, dst.pixels, dst.offset, dst.stride,
+                    width, height, top, bottom, mRadii[PASSES - 1], sums);
+        } finally {
+            pool.release(band);
+            pool.release(spare);
+            pool.release(row);
+            pool.release(sums);
+        }
+    }
+
+}
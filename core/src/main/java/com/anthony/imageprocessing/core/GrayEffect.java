@@ -0,0 +1,20 @@
+package com.anthony.imageprocessing.core;
+
+/**
+ * An image effect working directly on {@link GrayRaster}s, a single luminance
+ * channel instead of three. Same contract as {@link Effect}.
+ */
+public interface GrayEffect {
+
+    /**
+     * @return how many pixels around an output pixel the effect reads from the source
+     */
+    int radius();
+
+    /**
+     * Compute output rows [top, bottom). src and dst have the same size, and may
+     * only be the same raster when {@link #radius()} is 0.
+     */
+    void apply(GrayRaster src, GrayRaster dst, int top, int bottom);
+
+}
@@ -0,0 +1,48 @@
+package com.anthony.imageprocessing.core;
+
+/**
+ * Any position independent {@link PointEffect} as a 256 entry table over
+ * grayscale pixels. Each gray level maps to the luma of what the effect makes
+ * of that gray, so effects that shift hues only change the brightness here.
+ */
+public class GrayLut implements GrayEffect {
+
+    private final byte[] mTable;
+
+    private GrayLut(byte[] table) {
+        mTable = table;
+    }
+
+    /**
+     * @param effect an effect whose output does not depend on the pixel position,
+     *               i.e. not {@link SnowEffect}
+     */
+    public static GrayLut of(PointEffect effect) {
+        int[] colors = new int[256];
+        for (int v = 0; v < colors.length; ++v) {
+            colors[v] = PixelFormats.grayToArgb(v);
+        }
+        effect.filter(colors, 0, colors, 0, colors.length, 0, 0);
+        byte[] table = new byte[colors.length];
+        PixelFormats.toGray(colors, 0, table, 0, colors.length);
+        return new GrayLut(table);
+    }
+
+    @Override
+    public int radius() {
+        return 0;
+    }
+
+    @Override
+    public void apply(GrayRaster src, GrayRaster dst, int top, int bottom) {
+        byte[] table = mTable;
+        for (int y = top; y < bottom; ++y) {
+            int s = src.index(0, y);
+            int d = dst.index(0, y);
+            for (int x = 0; x < src.width; ++x) {
+                dst.pixels[d + x] = table[src.pixels[s + x] & 0xFF];
+            }
+        }
+    }
+
+}
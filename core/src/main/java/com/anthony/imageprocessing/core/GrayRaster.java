@@ -0,0 +1,80 @@
+package com.anthony.imageprocessing.core;
+
+/**
+ * An image of 8 bit luminance pixels in a byte array, for
+ * grayscale work at a quarter of the memory of a {@link Raster}. Values are
+ * unsigned, read them with {@code pixels[i] & 0xFF}.
+ * <p/>
+ * Pixel (x, y) lives at {@code pixels[offset + y * stride + x]}; origin as in {@link Raster}.
+ */
+public final class GrayRaster {
+
+    public final byte[] pixels;
+    public final int width;
+    public final int height;
+    public final int offset;
+    public final int stride;
+    public final int originX;
+    public final int originY;
+
+    public GrayRaster(byte[] pixels, int width, int height, int offset, int stride, int originX, int originY) {
+        if (width < 0 || height < 0) {
+            throw new IllegalArgumentException("Negative size " + width + "x" + height);
+        }
+        if (stride < width) {
+            throw new IllegalArgumentException("Stride " + stride + " is smaller than width " + width);
+        }
+        if (height > 0 && (offset < 0 || offset + (long) (height - 1) * stride + width > pixels.length)) {
+            throw new IllegalArgumentException("Pixel array is too small for " + width + "x" + height);
+        }
+        this.pixels = pixels;
+        this.width = width;
+        this.height = height;
+        this.offset = offset;
+        this.stride = stride;
+        this.originX = originX;
+        this.originY = originY;
+    }
+
+    public GrayRaster(byte[] pixels, int width, int height) {
+        this(pixels, width, height, 0, width, 0, 0);
+    }
+
+    public static GrayRaster create(int width, int height) {
+        return new GrayRaster(new byte[width * height], width, height);
+    }
+
+    public int index(int x, int y) {
+        return offset + y * stride + x;
+    }
+
+    /**
+     * @return a view of the given rectangle of this raster, sharing its pixels
+     */
+    public GrayRaster region(int x, int y, int width, int height) {
+        if (x < 0 || y < 0 || x + width > this.width || y + height > this.height) {
+            throw new IllegalArgumentException("Region " + width + "x" + height + " at (" + x + ", " + y
+                    + ") is outside of " + this.width + "x" + this.height);
+        }
+        return new GrayRaster(pixels, width, height, index(x, y), stride, originX + x, originY + y);
+    }
+
+    /**
+     * @return a new, tightly packed raster with the same size and origin as this one
+     */
+    public GrayRaster sameSize() {
+        return new GrayRaster(new byte[width * height], width, height, 0, width, originX, originY);
+    }
+
+    /**
+     * @return a tightly packed copy of this raster
+     */
+    public GrayRaster copy() {
+        GrayRaster copy = sameSize();
+        for (int y = 0; y < height; ++y) {
+            System.arraycopy(pixels, index(0, y), copy.pixels, y * width, width);
+        }
+        return copy;
+    }
+
+}
@@ -0,0 +1,151 @@
+package com.anthony.imageprocessing.core;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * {@link Metrics} that keep, per stage, the number of runs, totals and a
+ * histogram of the wall times, and print them as JSON or as log lines.
+ * <p/>
+ * The histogram has a bucket per power of two of nanoseconds, so
+ * percentiles are upper bounds at most twice the real value, but recording
+ * never allocates.
+ */
+public class HistogramMetrics implements Metrics {
+
+    private static final int BUCKETS = 64;
+
+    private final Map<String, Stage> mStages = new TreeMap<String, Stage>();
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void record(String stage, long nanos, long pixels, long allocatedBytes, int threads) {
+        synchronized (mStages) {
+            Stage s = mStages.get(stage);
+            if (s == null) {
+                s = new Stage();
+                mStages.put(stage, s);
+            }
+            s.add(nanos, pixels, allocatedBytes, threads);
+        }
+    }
+
+    public void clear() {
+        synchronized (mStages) {
+            mStages.clear();
+        }
+    }
+
+    /**
+     * @return the numbers for every stage, times in milliseconds
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{");
+        synchronized (mStages) {
+            boolean first = true;
+            for (Map.Entry<String, Stage> entry : mStages.entrySet()) {
+                Stage s = entry.getValue();
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                json.append('"').append(escape(entry.getKey())).append("\":{")
+                        .append("\"count\":").append(s.mCount)
+                        .append(",\"totalMs\":").append(millis(s.mTotalNanos))
+                        .append(",\"minMs\":").append(millis(s.mMinNanos))
+                        .append(",\"maxMs\":").append(millis(s.mMaxNanos))
+                        .append(",\"p50Ms\":").append(millis(s.percentile(0.5)))
+                        .append(",\"p90Ms\":").append(millis(s.percentile(0.9)))
+                        .append(",\"p99Ms\":").append(millis(s.percentile(0.99)))
+                        .append(",\"megapixels\":").append(format(s.mPixels / 1e6))
+                        .append(",\"megapixelsPerSecond\":").append(format(s.megapixelsPerSecond()))
+                        .append(",\"allocatedBytes\":").append(s.mAllocatedBytes)
+                        .append(",\"maxThreads\":").append(s.mMaxThreads)
+                        .append('}');
+            }
+        }
+        return json.append('}').toString();
+    }
+
+    /**
+     * @return one line per stage, for a log
+     */
+    @Override
+    public String toString() {
+        StringBuilder lines = new StringBuilder();
+        synchronized (mStages) {
+            for (Map.Entry<String, Stage> entry : mStages.entrySet()) {
+                Stage s = entry.getValue();
+                lines.append(String.format(Locale.US,
+                        "%s: %d runs, total %.2f ms, p50 %.2f ms, p90 %.2f ms, max %.2f ms, %.2f MP/s, %d bytes allocated, %d threads%n",
+                        entry.getKey(), s.mCount, s.mTotalNanos / 1e6, s.percentile(0.5) / 1e6,
+                        s.percentile(0.9) / 1e6, s.mMaxNanos / 1e6, s.megapixelsPerSecond(), s.mAllocatedBytes,
+                        s.mMaxThreads));
+            }
+        }
+        return lines.toString();
+    }
+
+    private static String millis(long nanos) {
+        return format(nanos / 1e6);
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.US, "%.3f", value);
+    }
+
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static class Stage {
+
+        final long[] mHistogram = new long[BUCKETS];
+        long mCount;
+        long mTotalNanos;
+        long mMinNanos = Long.MAX_VALUE;
+        long mMaxNanos;
+        long mPixels;
+        long mAllocatedBytes;
+        int mMaxThreads;
+
+        void add(long nanos, long pixels, long allocatedBytes, int threads) {
+            nanos = Math.max(0, nanos);
+            // bucket b holds [2^b, 2^(b + 1)), 0 and 1 both go to bucket 0
+            ++mHistogram[63 - Long.numberOfLeadingZeros(nanos | 1)];
+            ++mCount;
+            mTotalNanos += nanos;
+            mMinNanos = Math.min(mMinNanos, nanos);
+            mMaxNanos = Math.max(mMaxNanos, nanos);
+            mPixels += pixels;
+            mAllocatedBytes += allocatedBytes;
+            mMaxThreads = Math.max(mMaxThreads, threads);
+        }
+
+        /**
+         * @return the upper end of the bucket holding the given fraction of the runs
+         */
+        long percentile(double fraction) {
+            long rank = (long) Math.ceil(fraction * mCount);
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKETS; ++bucket) {
+                seen += mHistogram[bucket];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(mMaxNanos, bucket >= 62 ? Long.MAX_VALUE : (2L << bucket) - 1);
+                }
+            }
+            return mMaxNanos;
+        }
+
+        double megapixelsPerSecond() {
+            return mTotalNanos > 0 ? mPixels * 1e3 / mTotalNanos : 0;
+        }
+
+    }
+
+}
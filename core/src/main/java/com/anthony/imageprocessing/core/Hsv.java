@@ -0,0 +1,88 @@
+package com.anthony.imageprocessing.core;
+
+/**
+ * RGB <-> HSV conversion matching android.graphics.Color#colorToHSV and
+ * Color#HSVToColor, which are implemented by Skia's SkRGBToHSV/SkHSVToColor.
+ * <p/>
+ * hsv[0] is the hue in [0, 360), hsv[1] the saturation and hsv[2] the value, both in [0, 1].
+ */
+public final class Hsv {
+
+    private Hsv() {
+    }
+
+    public static void fromArgb(int color, float[] hsv) {
+        int r = (color >> 16) & 0xFF;
+        int g = (color >> 8) & 0xFF;
+        int b = color & 0xFF;
+
+        int min = Math.min(r, Math.min(g, b));
+        int max = Math.max(r, Math.max(g, b));
+        int delta = max - min;
+
+        float v = max / 255f;
+        if (delta == 0) {
+            // a shade of gray
+            hsv[0] = 0;
+            hsv[1] = 0;
+            hsv[2] = v;
+            return;
+        }
+
+        float s = (float) delta / max;
+        float h;
+        if (r == max) {
+            h = (float) (g - b) / delta;
+        } else if (g == max) {
+            h = 2 + (float) (b - r) / delta;
+        } else {
+            h = 4 + (float) (r - g) / delta;
+        }
+        h *= 60;
+        if (h < 0) {
+            h += 360;
+        }
+
+        hsv[0] = h;
+        hsv[1] = s;
+        hsv[2] = v;
+    }
+
+    public static int toArgb(int alpha, float[] hsv) {
+        float s = Math.max(0f, Math.min(hsv[1], 1f));
+        float v = Math.max(0f, Math.min(hsv[2], 1f));
+        int vByte = round(v * 255);
+
+        if (Math.abs(s) <= 1f / 4096) {
+            return Argb.argb(alpha, vByte, vByte, vByte);
+        }
+
+        float hx = (hsv[0] < 0 || hsv[0] >= 360f) ? 0 : hsv[0] / 60;
+        float w = (float) Math.floor(hx);
+        float f = hx - w;
+
+        int p = round((1 - s) * v * 255);
+        int q = round((1 - (s * f)) * v * 255);
+        int t = round((1 - (s * (1 - f))) * v * 255);
+
+        switch ((int) w) {
+            case 0:
+                return Argb.argb(alpha, vByte, t, p);
+            case 1:
+                return Argb.argb(alpha, q, vByte, p);
+            case 2:
+                return Argb.argb(alpha, p, vByte, t);
+            case 3:
+                return Argb.argb(alpha, p, q, vByte);
+            case 4:
+                return Argb.argb(alpha, t, p, vByte);
+            default:
+                return Argb.argb(alpha, vByte, p, q);
+        }
+    }
+
+    private static int round(float value) {
+        return (int) Math.floor(value + 0.5f);
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.anthony.imageprocessing.core;
+
+/**
+ * Rotate the hue and scale the saturation and value of every pixel, keeping alpha.
+ * <p/>
+ * Runs on {@link FastHsv}, so it is exact integer arithmetic with no per pixel allocation.
+ */
+public class HsvAdjustEffect extends PointEffect {
+
+    private static final int SCALE_BITS = 12;
+
+    private final int mHueShift;
+    private final int mSaturationScale;
+    private final int mValueScale;
+
+    /**
+     * @param hueDegrees hue rotation in degrees, may be negative
+     * @param saturation saturation multiplier, 1 keeps it
+     * @param value      value multiplier, 1 keeps it
+     */
+    public HsvAdjustEffect(float hueDegrees, float saturation, float value) {
+        if (saturation < 0 || value < 0) {
+            throw new IllegalArgumentException("Saturation and value scales must not be negative");
+        }
+        int shift = Math.round(hueDegrees / 60 * FastHsv.HUE_SECTOR) % FastHsv.HUE_MAX;
+        mHueShift = shift < 0 ? shift + FastHsv.HUE_MAX : shift;
+        mSaturationScale = Math.round(saturation * (1 << SCALE_BITS));
+        mValueScale = Math.round(value * (1 << SCALE_BITS));
+    }
+
+    @Override
+    public void filter(int[] src, int srcPos, int[] dst, int dstPos, int length, int x, int y) {
+        long half = 1 << (SCALE_BITS - 1);
+        for (int i = 0; i < length; ++i) {
+            int pixel = src[srcPos + i];
+
+            int hue = FastHsv.hue(pixel) + mHueShift;
+            if (hue >= FastHsv.HUE_MAX) {
+                hue -= FastHsv.HUE_MAX;
+            }
+            int saturation = (int) Math.min(FastHsv.SAT_ONE,
+                    (FastHsv.saturation(pixel) * (long) mSaturationScale + half) >> SCALE_BITS);
+            int value = (int) Math.min(255, (FastHsv.value(pixel) * (long) mValueScale + half) >> SCALE_BITS);
+
+            dst[dstPos + i] = FastHsv.toArgb(pixel >>> 24, hue, saturation, value);
+        }
+    }
+
+}
@@ -0,0 +1,28 @@
+package com.anthony.imageprocessing.core;
+
+/**
+ * Multiply the hue of every pixel by {@code level}, clamp it to [0, 360] and OR
+ * the resulting opaque color into the source pixel.
+ * <p/>
+ * Runs on {@link FastHsv}; see there for how close it stays to the float conversion.
+ */
+public class HueEffect extends PointEffect {
+
+    private final int mLevel;
+
+    public HueEffect(int level) {
+        mLevel = level;
+    }
+
+    @Override
+    public void filter(int[] src, int srcPos, int[] dst, int dstPos, int length, int x, int y) {
+        long level = Math.max(0, mLevel);
+        for (int i = 0; i < length; ++i) {
+            int pixel = src[srcPos + i];
+            // 360 degrees wraps around to 0 in FastHsv.toArgb, just like in Color.HSVToColor
+            int hue = (int) Math.min(FastHsv.hue(pixel) * level, FastHsv.HUE_MAX);
+            dst[dstPos + i] = pixel | FastHsv.toArgb(0xFF, hue, FastHsv.saturation(pixel), FastHsv.value(pixel));
+        }
+    }
+
+}
@@ -0,0 +1,19 @@
+package com.anthony.imageprocessing.core;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Reads and writes image files for {@link BatchProcessor}.
+ * Implementations must allow several threads to use them at once.
+ */
+public interface ImageCodec {
+
+    /**
+     * @param pool where the returned raster's pixels may come from
+     */
+    Raster decode(File file, BufferPool pool) throws IOException;
+
+    void encode(Raster raster, File file) throws IOException;
+
+}
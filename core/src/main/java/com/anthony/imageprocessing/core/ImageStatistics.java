@@ -0,0 +1,178 @@
+package com.anthony.imageprocessing.core;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Red, green, blue and luma histograms of an image, and what follows from
+ * them: minimum, maximum, mean and percentiles per channel.
+ * <p/>
+ * The histograms are gathered in one pass over the pixels. Every strip counts
+ * into its own partial histograms, which are handed over through a lock free
+ * queue and added up once all strips are done, so threads never write to
+ * shared counters.
+ */
+public final class ImageStatistics {
+
+    public static final int CHANNEL_RED = 0;
+    public static final int CHANNEL_GREEN = 1;
+    public static final int CHANNEL_BLUE = 2;
+    /** Rec. 601 luma, as in {@link PixelFormats#luma(int)}. */
+    public static final int CHANNEL_LUMA = 3;
+
+    private static final int CHANNELS = 4;
+
+    // CHANNELS histograms of 256 counts, one after the other
+    private final long[] mCounts;
+    private final long mPixels;
+
+    private ImageStatistics(long[] counts, long pixels) {
+        mCounts = counts;
+        mPixels = pixels;
+    }
+
+    public static ImageStatistics of(Raster src) {
+        int[] counts = new int[CHANNELS * 256];
+        count(src, 0, src.height, counts);
+        long[] total = new long[CHANNELS * 256];
+        add(counts, total);
+        return new ImageStatistics(total, (long) src.width * src.height);
+    }
+
+    /**
+     * Gather the statistics of src on the threads of executor.
+     *
+     * @param cancellation checked while counting, may be null
+     */
+    public static ImageStatistics of(final Raster src, ParallelExecutor executor, Cancellation cancellation) {
+        final Queue<int[]> partials = new ConcurrentLinkedQueue<int[]>();
+        executor.run(new ParallelExecutor.Strip() {
+            @Override
+            public void apply(int top, int bottom) {
+                int[] counts = new int[CHANNELS * 256];
+                count(src, top, bottom, counts);
+                partials.add(counts);
+            }
+        }, 0, src.height, cancellation);
+
+        long[] total = new long[CHANNELS * 256];
+        for (int[] counts : partials) {
+            add(counts, total);
+        }
+        return new ImageStatistics(total, (long) src.width * src.height);
+    }
+
+    private static void count(Raster src, int top, int bottom, int[] counts) {
+        int[] pixels = src.pixels;
+        for (int y = top; y < bottom; ++y) {
+            int start = src.index(0, y);
+            int end = start + src.width;
+            for (int i = start; i < end; ++i) {
+                int pixel = pixels[i];
+                int red = (pixel >> 16) & 0xFF;
+                int green = (pixel >> 8) & 0xFF;
+                int blue = pixel & 0xFF;
+                ++counts[red];
+                ++counts[256 + green];
+                ++counts[512 + blue];
+                ++counts[768 + PixelFormats.luma(red, green, blue)];
+            }
+        }
+    }
+
+    private static void add(int[] counts, long[] total) {
+        for (int i = 0; i < counts.length; ++i) {
+            total[i] += counts[i];
+        }
+    }
+
+    public long getPixelCount() {
+        return mPixels;
+    }
+
+    /**
+     * @return how many pixels have each of the 256 values of channel
+     */
+    public long[] getHistogram(int channel) {
+        long[] histogram = new long[256];
+        System.arraycopy(mCounts, offset(channel), histogram, 0, 256);
+        return histogram;
+    }
+
+    /**
+     * @return the smallest value of channel in the image, 0 for an empty image
+     */
+    public int min(int channel) {
+        int offset = offset(channel);
+        for (int v = 0; v < 256; ++v) {
+            if (mCounts[offset + v] != 0) {
+                return v;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the largest value of channel in the image, 0 for an empty image
+     */
+    public int max(int channel) {
+        int offset = offset(channel);
+        for (int v = 255; v >= 0; --v) {
+            if (mCounts[offset + v] != 0) {
+                return v;
+            }
+        }
+        return 0;
+    }
+
+    public double mean(int channel) {
+        if (mPixels == 0) {
+            return 0;
+        }
+        int offset = offset(channel);
+        long sum = 0;
+        for (int v = 0; v < 256; ++v) {
+            sum += v * mCounts[offset + v];
+        }
+        return sum / (double) mPixels;
+    }
+
+    /**
+     * @param fraction in [0, 1], e.g. 0.5 for the median
+     * @return the smallest value of channel that at least fraction of the pixels are at or below
+     */
+    public int percentile(int channel, double fraction) {
+        if (fraction < 0 || fraction > 1) {
+            throw new IllegalArgumentException("Fraction must be in [0, 1], was " + fraction);
+        }
+        int offset = offset(channel);
+        double wanted = fraction * mPixels;
+        long cumulative = 0;
+        for (int v = 0; v < 255; ++v) {
+            cumulative += mCounts[offset + v];
+            if (cumulative >= wanted && cumulative > 0) {
+                return v;
+            }
+        }
+        return 255;
+    }
+
+    /**
+     * @return for each value of channel, how many pixels are at or below it
+     */
+    public long[] cumulativeHistogram(int channel) {
+        long[] cumulative = getHistogram(channel);
+        for (int v = 1; v < 256; ++v) {
+            cumulative[v] += cumulative[v - 1];
+        }
+        return cumulative;
+    }
+
+    private static int offset(int channel) {
+        if (channel < 0 || channel >= CHANNELS) {
+            throw new IllegalArgumentException("Unknown channel " + channel);
+        }
+        return channel * 256;
+    }
+
+}
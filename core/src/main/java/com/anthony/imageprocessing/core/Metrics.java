@@ -0,0 +1,37 @@
+package com.anthony.imageprocessing.core;
+
+/**
+ * Receives timings of the stages an effect run goes through, e.g. copying the
+ * pixels out of a bitmap, the effect itself, and copying them back.
+ * <p/>
+ * Callers look at {@link #isEnabled()} before reading the clock, so
+ * {@link #NONE}, the default, costs a field load and a branch per stage.
+ */
+public interface Metrics {
+
+    Metrics NONE = new Metrics() {
+
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public void record(String stage, long nanos, long pixels, long allocatedBytes, int threads) {
+        }
+
+    };
+
+    boolean isEnabled();
+
+    /**
+     * One run of stage. May be called from any thread.
+     *
+     * @param nanos          wall time taken
+     * @param pixels         pixels processed
+     * @param allocatedBytes memory newly allocated for the run, not counting reused buffers
+     * @param threads        threads the stage ran on
+     */
+    void record(String stage, long nanos, long pixels, long allocatedBytes, int threads);
+
+}
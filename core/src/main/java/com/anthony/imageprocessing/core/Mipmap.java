@@ -0,0 +1,56 @@
+package com.anthony.imageprocessing.core;
+
+/**
+ * Power of two downscaling for previews.
+ */
+public final class Mipmap {
+
+    private Mipmap() {
+    }
+
+    /**
+     * @return src at half the width and height, rounded up, each pixel the
+     * average of a 2x2 block; a last odd row or column is averaged with itself
+     */
+    public static Raster halve(Raster src) {
+        int width = (src.width + 1) / 2;
+        int height = (src.height + 1) / 2;
+        Raster dst = Raster.create(width, height);
+        int[] in = src.pixels;
+        int[] out = dst.pixels;
+
+        for (int y = 0; y < height; ++y) {
+            int row0 = src.index(0, 2 * y);
+            int row1 = 2 * y + 1 < src.height ? row0 + src.stride : row0;
+            int o = y * width;
+            for (int x = 0; x < width; ++x) {
+                int x0 = 2 * x;
+                int x1 = x0 + 1 < src.width ? x0 + 1 : x0;
+                int a = in[row0 + x0];
+                int b = in[row0 + x1];
+                int c = in[row1 + x0];
+                int d = in[row1 + x1];
+                // two channels per int, 16 bits apart, so four of them add up without overflow
+                int rb = (a & 0x00FF00FF) + (b & 0x00FF00FF) + (c & 0x00FF00FF) + (d & 0x00FF00FF) + 0x00020002;
+                int ag = ((a >>> 8) & 0x00FF00FF) + ((b >>> 8) & 0x00FF00FF) + ((c >>> 8) & 0x00FF00FF)
+                        + ((d >>> 8) & 0x00FF00FF) + 0x00020002;
+                out[o + x] = ((rb >>> 2) & 0x00FF00FF) | (((ag >>> 2) & 0x00FF00FF) << 8);
+            }
+        }
+        return dst;
+    }
+
+    /**
+     * Fill dst by repeating every pixel of small factor x factor times.
+     */
+    public static void upscale(Raster small, int factor, Raster dst) {
+        for (int y = 0; y < dst.height; ++y) {
+            int from = small.index(0, Math.min(y / factor, small.height - 1));
+            int to = dst.index(0, y);
+            for (int x = 0; x < dst.width; ++x) {
+                dst.pixels[to + x] = small.pixels[from + Math.min(x / factor, small.width - 1)];
+            }
+        }
+    }
+
+}
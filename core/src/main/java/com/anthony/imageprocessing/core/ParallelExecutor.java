@@ -0,0 +1,254 @@
+package com.anthony.imageprocessing.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs an {@link Effect} over horizontal strips of the image on several threads.
+ * {@link Rgb565Effect}s, {@link GrayEffect}s and {@link PlanarEffect}s are
+ * split up the same way.
+ * <p/>
+ * Every strip reads its source rows plus {@link Effect#radius()} halo rows
+ * above and below it straight from the shared source raster, and writes only
+ * its own rows of the destination. Since effects compute each output row the
+ * same way no matter which band it belongs to, the result is identical to a
+ * sequential run.
+ * <p/>
+ * A plain fixed thread pool is used rather than a ForkJoinPool, which Android
+ * only has from API 21 on; strips are flat, so nothing would be gained from
+ * work stealing anyway. The calling thread runs one of the strips itself.
+ */
+public class ParallelExecutor {
+
+    /** More strips than threads evens out cores running at different speeds. */
+    private static final int STRIPS_PER_THREAD = 2;
+    private static final int MIN_STRIP_ROWS = 16;
+    /** Rows a strip runs between looking at its cancellation. */
+    public static final int CANCEL_CHECK_ROWS = 64;
+    /**
+     * With a cancellation, a strip is handed over in pieces at least this many
+     * times the halo tall, so that recomputing the halo rows of each piece adds
+     * no more than an eighth to the work, whatever the radius.
+     */
+    private static final int PIECE_HALOS = 16;
+
+    private static final AtomicInteger sPoolNumber = new AtomicInteger();
+
+    private final int mParallelism;
+    private final ExecutorService mPool;
+
+    /**
+     * @param parallelism number of threads working on an effect, 1 runs everything on the calling thread
+     */
+    public ParallelExecutor(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1, was " + parallelism);
+        }
+        mParallelism = parallelism;
+        mPool = parallelism == 1 ? null : Executors.newFixedThreadPool(parallelism - 1, new WorkerFactory());
+    }
+
+    public static int defaultParallelism() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    public int getParallelism() {
+        return mParallelism;
+    }
+
+    /**
+     * Apply the effect to every row of src, writing into dst.
+     */
+    public void run(Effect effect, Raster src, Raster dst) {
+        run(effect, src, dst, 0, src.height);
+    }
+
+    /**
+     * Apply the effect to rows [top, bottom), writing into dst.
+     */
+    public void run(Effect effect, Raster src, Raster dst, int top, int bottom) {
+        run(effect, src, dst, top, bottom, null);
+    }
+
+    /**
+     * Like {@link #run(Effect, Raster, Raster, int, int)}, checking cancellation,
+     * if not null, every {@link #CANCEL_CHECK_ROWS} rows of each strip, or less
+     * often for effects with a large radius.
+     */
+    public void run(final Effect effect, final Raster src, final Raster dst, int top, int bottom,
+                    Cancellation cancellation) {
+        run(new Strip() {
+            @Override
+            public void apply(int top, int bottom) {
+                effect.apply(src, dst, top, bottom);
+            }
+        }, top, bottom, cancellation, effect.radius());
+    }
+
+    /**
+     * Apply an RGB 565 effect to rows [top, bottom), writing into dst.
+     */
+    public void run(final Rgb565Effect effect, final Rgb565Raster src, final Rgb565Raster dst, int top, int bottom,
+                    Cancellation cancellation) {
+        run(new Strip() {
+            @Override
+            public void apply(int top, int bottom) {
+                effect.apply(src, dst, top, bottom);
+            }
+        }, top, bottom, cancellation, effect.radius());
+    }
+
+    /**
+     * Apply a grayscale effect to rows [top, bottom), writing into dst.
+     */
+    public void run(final GrayEffect effect, final GrayRaster src, final GrayRaster dst, int top, int bottom,
+                    Cancellation cancellation) {
+        run(new Strip() {
+            @Override
+            public void apply(int top, int bottom) {
+                effect.apply(src, dst, top, bottom);
+            }
+        }, top, bottom, cancellation, effect.radius());
+    }
+
+    /**
+     * Apply a planar effect to rows [top, bottom), writing into dst.
+     */
+    public void run(final PlanarEffect effect, final PlanarRaster src, final PlanarRaster dst, int top, int bottom,
+                    Cancellation cancellation) {
+        run(new Strip() {
+            @Override
+            public void apply(int top, int bottom) {
+                effect.apply(src, dst, top, bottom);
+            }
+        }, top, bottom, cancellation, effect.radius());
+    }
+
+    /**
+     * Work on rows [top, bottom) of an image, e.g. an effect over some pixel
+     * format, or gathering statistics.
+     */
+    public interface Strip {
+        void apply(int top, int bottom);
+    }
+
+    /**
+     * Split rows [top, bottom) into strips as for effects and run work on each,
+     * checking cancellation, if not null, every {@link #CANCEL_CHECK_ROWS} rows.
+     * A strip may be handed to work in several consecutive pieces.
+     */
+    public void run(Strip work, int top, int bottom, Cancellation cancellation) {
+        run(work, top, bottom, cancellation, 0);
+    }
+
+    /**
+     * Like {@link #run(Strip, int, int, Cancellation)}, for work that reads halo
+     * rows above and below the rows it is given, as an effect reads its radius.
+     * Pieces are made tall enough for those to stay a small part of the work.
+     */
+    public void run(final Strip work, int top, int bottom, final Cancellation cancellation, int halo) {
+        final int pieceRows = Math.max(CANCEL_CHECK_ROWS, PIECE_HALOS * halo);
+        int rows = bottom - top;
+        int strips = Math.min(mParallelism * STRIPS_PER_THREAD, rows / MIN_STRIP_ROWS);
+        if (mPool == null || strips <= 1) {
+            apply(work, top, bottom, cancellation, pieceRows);
+            return;
+        }
+
+        List<Future<?>> futures = new ArrayList<Future<?>>(strips - 1);
+        for (int strip = 1; strip < strips; ++strip) {
+            final int stripTop = top + (int) ((long) rows * strip / strips);
+            final int stripBottom = top + (int) ((long) rows * (strip + 1) / strips);
+            futures.add(mPool.submit(new Runnable() {
+                @Override
+                public void run() {
+                    apply(work, stripTop, stripBottom, cancellation, pieceRows);
+                }
+            }));
+        }
+
+        try {
+            apply(work, top, top + rows / strips, cancellation, pieceRows);
+        } finally {
+            await(futures);
+        }
+    }
+
+    private static void apply(Strip work, int top, int bottom, Cancellation cancellation, int pieceRows) {
+        if (cancellation == null) {
+            work.apply(top, bottom);
+            return;
+        }
+        for (int y = top; y < bottom; y += pieceRows) {
+            cancellation.check();
+            work.apply(y, Math.min(bottom, y + pieceRows));
+        }
+    }
+
+    /**
+     * Stop the worker threads. The executor must not be used afterwards.
+     */
+    public void shutdown() {
+        if (mPool != null) {
+            mPool.shutdown();
+        }
+    }
+
+    /**
+     * Wait for every strip, even after one failed: the others may still be
+     * writing into dst and into scratch arrays the caller is about to release.
+     * Then rethrow the first failure.
+     */
+    private static void await(List<Future<?>> futures) {
+        boolean interrupted = false;
+        Throwable failure = null;
+        for (Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    private static class WorkerFactory implements ThreadFactory {
+
+        private final int mPoolNumber = sPoolNumber.incrementAndGet();
+        private final AtomicInteger mThreadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "effect-" + mPoolNumber + "-" + mThreadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    }
+
+}
@@ -0,0 +1,165 @@
+package com.anthony.imageprocessing.core;
+
+/**
+ * Conversions between ARGB, RGB 565, 8 bit grayscale and planar pixels.
+ * <p/>
+ * ARGB to 565 drops the low bits of every channel, the way android does when
+ * drawing into an RGB_565 Bitmap; 565 to ARGB repeats the top bits into the low
+ * ones, so that 0x1F becomes 0xFF and not 0xF8. Grayscale is the Rec. 601 luma
+ * in 8 bit fixed point.
+ */
+public final class PixelFormats {
+
+    private PixelFormats() {
+    }
+
+    public static short toRgb565(int argb) {
+        return (short) (((argb >> 8) & 0xF800) | ((argb >> 5) & 0x07E0) | ((argb >> 3) & 0x001F));
+    }
+
+    public static int rgb565ToArgb(int rgb565) {
+        return Argb.rgb(red565(rgb565), green565(rgb565), blue565(rgb565));
+    }
+
+    /**
+     * @return the 8 bit red of a 565 pixel
+     */
+    public static int red565(int rgb565) {
+        int red = (rgb565 >> 11) & 0x1F;
+        return (red << 3) | (red >> 2);
+    }
+
+    public static int green565(int rgb565) {
+        int green = (rgb565 >> 5) & 0x3F;
+        return (green << 2) | (green >> 4);
+    }
+
+    public static int blue565(int rgb565) {
+        int blue = rgb565 & 0x1F;
+        return (blue << 3) | (blue >> 2);
+    }
+
+    public static int luma(int red, int green, int blue) {
+        return (77 * red + 150 * green + 29 * blue + 128) >> 8;
+    }
+
+    public static int luma(int argb) {
+        return luma(Argb.red(argb), Argb.green(argb), Argb.blue(argb));
+    }
+
+    public static int grayToArgb(int gray) {
+        return 0xFF000000 | (gray * 0x010101);
+    }
+
+    public static void toRgb565(int[] src, int srcPos, short[] dst, int dstPos, int length) {
+        for (int i = 0; i < length; ++i) {
+            dst[dstPos + i] = toRgb565(src[srcPos + i]);
+        }
+    }
+
+    public static void rgb565ToArgb(short[] src, int srcPos, int[] dst, int dstPos, int length) {
+        for (int i = 0; i < length; ++i) {
+            dst[dstPos + i] = rgb565ToArgb(src[srcPos + i]);
+        }
+    }
+
+    public static void toGray(int[] src, int srcPos, byte[] dst, int dstPos, int length) {
+        for (int i = 0; i < length; ++i) {
+            dst[dstPos + i] = (byte) luma(src[srcPos + i]);
+        }
+    }
+
+    public static void grayToArgb(byte[] src, int srcPos, int[] dst, int dstPos, int length) {
+        for (int i = 0; i < length; ++i) {
+            dst[dstPos + i] = grayToArgb(src[srcPos + i] & 0xFF);
+        }
+    }
+
+    /**
+     * Convert src into dst, which must have the same size.
+     */
+    public static void convert(Raster src, Rgb565Raster dst) {
+        checkSize(src.width, src.height, dst.width, dst.height);
+        for (int y = 0; y < src.height; ++y) {
+            toRgb565(src.pixels, src.index(0, y), dst.pixels, dst.index(0, y), src.width);
+        }
+    }
+
+    public static void convert(Rgb565Raster src, Raster dst) {
+        checkSize(src.width, src.height, dst.width, dst.height);
+        for (int y = 0; y < src.height; ++y) {
+            rgb565ToArgb(src.pixels, src.index(0, y), dst.pixels, dst.index(0, y), src.width);
+        }
+    }
+
+    public static void convert(Raster src, GrayRaster dst) {
+        checkSize(src.width, src.height, dst.width, dst.height);
+        for (int y = 0; y < src.height; ++y) {
+            toGray(src.pixels, src.index(0, y), dst.pixels, dst.index(0, y), src.width);
+        }
+    }
+
+    public static void convert(GrayRaster src, Raster dst) {
+        checkSize(src.width, src.height, dst.width, dst.height);
+        for (int y = 0; y < src.height; ++y) {
+            grayToArgb(src.pixels, src.index(0, y), dst.pixels, dst.index(0, y), src.width);
+        }
+    }
+
+    /**
+     * Split rows [top, bottom) of src into the planes of dst, which must have the same size.
+     */
+    public static void convert(Raster src, PlanarRaster dst, int top, int bottom) {
+        checkSize(src.width, src.height, dst.width, dst.height);
+        byte[] alpha = dst.alpha;
+        byte[] red = dst.red;
+        byte[] green = dst.green;
+        byte[] blue = dst.blue;
+        for (int y = top; y < bottom; ++y) {
+            int s = src.index(0, y);
+            int d = dst.index(0, y);
+            for (int x = 0; x < src.width; ++x) {
+                int pixel = src.pixels[s + x];
+                alpha[d + x] = (byte) (pixel >>> 24);
+                red[d + x] = (byte) (pixel >> 16);
+                green[d + x] = (byte) (pixel >> 8);
+                blue[d + x] = (byte) pixel;
+            }
+        }
+    }
+
+    /**
+     * Pack rows [top, bottom) of the planes of src into dst, which must have the same size.
+     */
+    public static void convert(PlanarRaster src, Raster dst, int top, int bottom) {
+        checkSize(src.width, src.height, dst.width, dst.height);
+        byte[] alpha = src.alpha;
+        byte[] red = src.red;
+        byte[] green = src.green;
+        byte[] blue = src.blue;
+        for (int y = top; y < bottom; ++y) {
+            int s = src.index(0, y);
+            int d = dst.index(0, y);
+            for (int x = 0; x < src.width; ++x) {
+                dst.pixels[d + x] = (alpha[s + x] << 24) | ((red[s + x] & 0xFF) << 16)
+                        | ((green[s + x] & 0xFF) << 8) | (blue[s + x] & 0xFF);
+            }
+        }
+    }
+
+    public static void convert(Raster src, PlanarRaster dst) {
+        convert(src, dst, 0, src.height);
+    }
+
+    public static void convert(PlanarRaster src, Raster dst) {
+        convert(src, dst, 0, src.height);
+    }
+
+    private static void checkSize(int width, int height, int dstWidth, int dstHeight) {
+        if (width != dstWidth || height != dstHeight) {
+            throw new IllegalArgumentException("Cannot convert " + width + "x" + height
+                    + " into " + dstWidth + "x" + dstHeight);
+        }
+    }
+
+}
@@ -0,0 +1,20 @@
+package com.anthony.imageprocessing.core;
+
+/**
+ * An image effect working on the channel planes of {@link PlanarRaster}s.
+ * Same contract as {@link Effect}.
+ */
+public interface PlanarEffect {
+
+    /**
+     * @return how many pixels around an output pixel the effect reads from the source
+     */
+    int radius();
+
+    /**
+     * Compute output rows [top, bottom). src and dst have the same size, and may
+     * only be the same raster when {@link #radius()} is 0.
+     */
+    void apply(PlanarRaster src, PlanarRaster dst, int top, int bottom);
+
+}
@@ -0,0 +1,100 @@
+package com.anthony.imageprocessing.core;
+
+/**
+ * An image stored as one byte plane per channel (structure of arrays), so
+ * effects can walk each channel as a contiguous run of bytes instead of
+ * shifting and masking it out of every packed ARGB int. Values are unsigned.
+ * <p/>
+ * All four planes share the layout: the value of pixel (x, y) lives at
+ * {@code offset + y * stride + x}; origin as in {@link Raster}. Each plane can
+ * be worked on as a {@link GrayRaster}.
+ */
+public final class PlanarRaster {
+
+    public final byte[] alpha;
+    public final byte[] red;
+    public final byte[] green;
+    public final byte[] blue;
+    public final int width;
+    public final int height;
+    public final int offset;
+    public final int stride;
+    public final int originX;
+    public final int originY;
+
+    public PlanarRaster(byte[] alpha, byte[] red, byte[] green, byte[] blue, int width, int height,
+                        int offset, int stride, int originX, int originY) {
+        if (width < 0 || height < 0) {
+            throw new IllegalArgumentException("Negative size " + width + "x" + height);
+        }
+        if (stride < width) {
+            throw new IllegalArgumentException("Stride " + stride + " is smaller than width " + width);
+        }
+        int length = Math.min(Math.min(alpha.length, red.length), Math.min(green.length, blue.length));
+        if (height > 0 && (offset < 0 || offset + (long) (height - 1) * stride + width > length)) {
+            throw new IllegalArgumentException("Planes are too small for " + width + "x" + height);
+        }
+        this.alpha = alpha;
+        this.red = red;
+        this.green = green;
+        this.blue = blue;
+        this.width = width;
+        this.height = height;
+        this.offset = offset;
+        this.stride = stride;
+        this.originX = originX;
+        this.originY = originY;
+    }
+
+    public static PlanarRaster create(int width, int height) {
+        int size = width * height;
+        return new PlanarRaster(new byte[size], new byte[size], new byte[size], new byte[size],
+                width, height, 0, width, 0, 0);
+    }
+
+    public int index(int x, int y) {
+        return offset + y * stride + x;
+    }
+
+    /**
+     * @return a view of the given rectangle of this raster, sharing its planes
+     */
+    public PlanarRaster region(int x, int y, int width, int height) {
+        if (x < 0 || y < 0 || x + width > this.width || y + height > this.height) {
+            throw new IllegalArgumentException("Region " + width + "x" + height + " at (" + x + ", " + y
+                    + ") is outside of " + this.width + "x" + this.height);
+        }
+        return new PlanarRaster(alpha, red, green, blue, width, height, index(x, y), stride,
+                originX + x, originY + y);
+    }
+
+    /**
+     * @return a new, tightly packed raster with the same size and origin as this one
+     */
+    public PlanarRaster sameSize() {
+        int size = width * height;
+        return new PlanarRaster(new byte[size], new byte[size], new byte[size], new byte[size],
+                width, height, 0, width, originX, originY);
+    }
+
+    public GrayRaster alphaPlane() {
+        return plane(alpha);
+    }
+
+    public GrayRaster redPlane() {
+        return plane(red);
+    }
+
+    public GrayRaster greenPlane() {
+        return plane(green);
+    }
+
+    public GrayRaster bluePlane() {
+        return plane(blue);
+    }
+
+    private GrayRaster plane(byte[] values) {
+        return new GrayRaster(values, width, height, offset, stride, originX, originY);
+    }
+
+}
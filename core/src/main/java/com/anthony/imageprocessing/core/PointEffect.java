@@ -0,0 +1,28 @@
+package com.anthony.imageprocessing.core;
+
+/**
+ * Base class for effects where each output pixel only depends on the source
+ * pixel at the same position.
+ */
+public abstract class PointEffect implements Effect {
+
+    @Override
+    public final int radius() {
+        return 0;
+    }
+
+    @Override
+    public void apply(Raster src, Raster dst, int top, int bottom) {
+        for (int y = top; y < bottom; ++y) {
+            filter(src.pixels, src.index(0, y), dst.pixels, dst.index(0, y), src.width, src.originX, src.originY + y);
+        }
+    }
+
+    /**
+     * Filter a run of {@code length} pixels starting at image position (x, y),
+     * which includes the raster origin.
+     * src and dst may be the same array at the same position.
+     */
+    public abstract void filter(int[] src, int srcPos, int[] dst, int dstPos, int length, int x, int y);
+
+}
@@ -0,0 +1,119 @@
+package com.anthony.imageprocessing.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs an {@link EffectPipeline} so that something can be shown right away:
+ * first on downscaled copies of the image, then at full resolution tile by tile.
+ * <p/>
+ * The image is halved until it has at most {@link #PREVIEW_PIXELS} pixels,
+ * and the pipeline, scaled with {@link EffectPipeline#scaled(double)}, runs on
+ * that smallest copy first. Finer copies follow while the time each is
+ * expected to take, four times the previous one, fits in the preview budget.
+ * The finest preview is then enlarged into dst and the full resolution tiles
+ * replace it as they finish.
+ */
+public class ProgressiveProcessor {
+
+    public static final int PREVIEW_PIXELS = 256 * 256;
+    public static final long DEFAULT_PREVIEW_BUDGET_MILLIS = 100;
+
+    public interface Listener {
+
+        /**
+         * A preview of the whole result, factor times smaller than the image.
+         * Called with finer previews until the budget is used up.
+         */
+        void onPreview(Raster preview, int factor);
+
+        /**
+         * The rectangle of dst at (x, y) of tile's size now holds the final result.
+         */
+        void onTile(int x, int y, Raster tile);
+
+    }
+
+    private final ParallelExecutor mExecutor;
+    private final BufferPool mPool;
+    private final long mPreviewBudgetNanos;
+    private final int mTileSize;
+
+    public ProgressiveProcessor(ParallelExecutor executor) {
+        this(executor, BufferPool.getDefault(), DEFAULT_PREVIEW_BUDGET_MILLIS, TiledProcessor.DEFAULT_TILE_SIZE);
+    }
+
+    public ProgressiveProcessor(ParallelExecutor executor, BufferPool pool, long previewBudgetMillis, int tileSize) {
+        mExecutor = executor;
+        mPool = pool;
+        mPreviewBudgetNanos = previewBudgetMillis * 1000000L;
+        mTileSize = tileSize;
+    }
+
+    /**
+     * Run pipeline over src into dst, a raster of the same size, reporting to listener as results come in.
+     */
+    public void process(Raster src, EffectPipeline pipeline, Raster dst, Listener listener) {
+        process(src, pipeline, dst, listener, null);
+    }
+
+    /**
+     * Like {@link #process(Raster, EffectPipeline, Raster, Listener)}, giving up
+     * with a CancellationException once cancellation, if not null, is cancelled.
+     */
+    public void process(Raster src, EffectPipeline pipeline, final Raster dst, final Listener listener,
+                        Cancellation cancellation) {
+        if (src.width != dst.width || src.height != dst.height) {
+            throw new IllegalArgumentException("Destination is " + dst.width + "x" + dst.height
+                    + ", source is " + src.width + "x" + src.height);
+        }
+        long start = System.nanoTime();
+
+        // levels.get(k) is the image shrunk by 2^(k + 1)
+        List<Raster> levels = new ArrayList<Raster>();
+        Raster level = src;
+        while ((long) level.width * level.height > PREVIEW_PIXELS) {
+            Cancellation.check(cancellation);
+            level = Mipmap.halve(level);
+            levels.add(level);
+        }
+
+        Raster preview = null;
+        int previewFactor = 1;
+        long previous = 0;
+        for (int k = levels.size() - 1; k >= 0; --k) {
+            long now = System.nanoTime();
+            if (preview != null && now - start + 4 * previous > mPreviewBudgetNanos) {
+                break;
+            }
+            int factor = 2 << k;
+            Raster input = levels.get(k);
+            Raster output = input.sameSize();
+            pipeline.scaled(factor).run(input, output, mExecutor, mPool, cancellation);
+            preview = output;
+            previewFactor = factor;
+            previous = System.nanoTime() - now;
+            listener.onPreview(preview, factor);
+        }
+        if (preview != null) {
+            Mipmap.upscale(preview, previewFactor, dst);
+        }
+
+        try {
+            new TiledProcessor(mTileSize, mTileSize, mExecutor, mPool).process(new RasterTiles(src), pipeline,
+                    new TileSink() {
+                        @Override
+                        public void write(int x, int y, Raster tile) {
+                            Raster target = dst.region(x, y, tile.width, tile.height);
+                            RasterTiles.copy(tile, target);
+                            listener.onTile(x, y, target);
+                        }
+                    }, cancellation);
+        } catch (IOException e) {
+            // in-memory tiles do not do I/O
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,95 @@
+package com.anthony.imageprocessing.core;
+
+/**
+ * A platform independent image: packed ARGB pixels in an int array.
+ * <p/>
+ * Pixel (x, y) lives at {@code pixels[offset + y * stride + x]}, which is the
+ * same layout android.graphics.Bitmap#getPixels uses.
+ * <p/>
+ * A raster can be a piece of a larger image, e.g. a tile; originX and originY
+ * then give the position of its top left pixel in that image, so that effects
+ * depending on the pixel position see the same coordinates as for the whole image.
+ */
+public final class Raster {
+
+    public final int[] pixels;
+    public final int width;
+    public final int height;
+    public final int offset;
+    public final int stride;
+    public final int originX;
+    public final int originY;
+
+    public Raster(int[] pixels, int width, int height, int offset, int stride, int originX, int originY) {
+        if (width < 0 || height < 0) {
+            throw new IllegalArgumentException("Negative size " + width + "x" + height);
+        }
+        if (stride < width) {
+            throw new IllegalArgumentException("Stride " + stride + " is smaller than width " + width);
+        }
+        if (height > 0 && (offset < 0 || offset + (long) (height - 1) * stride + width > pixels.length)) {
+            throw new IllegalArgumentException("Pixel array is too small for " + width + "x" + height);
+        }
+        this.pixels = pixels;
+        this.width = width;
+        this.height = height;
+        this.offset = offset;
+        this.stride = stride;
+        this.originX = originX;
+        this.originY = originY;
+    }
+
+    public Raster(int[] pixels, int width, int height, int offset, int stride) {
+        this(pixels, width, height, offset, stride, 0, 0);
+    }
+
+    public Raster(int[] pixels, int width, int height) {
+        this(pixels, width, height, 0, width);
+    }
+
+    public static Raster create(int width, int height) {
+        return new Raster(new int[width * height], width, height);
+    }
+
+    public int index(int x, int y) {
+        return offset + y * stride + x;
+    }
+
+    public int getPixel(int x, int y) {
+        return pixels[offset + y * stride + x];
+    }
+
+    public void setPixel(int x, int y, int color) {
+        pixels[offset + y * stride + x] = color;
+    }
+
+    /**
+     * @return a view of the given rectangle of this raster, sharing its pixels
+     */
+    public Raster region(int x, int y, int width, int height) {
+        if (x < 0 || y < 0 || x + width > this.width || y + height > this.height) {
+            throw new IllegalArgumentException("Region " + width + "x" + height + " at (" + x + ", " + y
+                    + ") is outside of " + this.width + "x" + this.height);
+        }
+        return new Raster(pixels, width, height, index(x, y), stride, originX + x, originY + y);
+    }
+
+    /**
+     * @return a new, tightly packed raster with the same size and origin as this one
+     */
+    public Raster sameSize() {
+        return new Raster(new int[width * height], width, height, 0, width, originX, originY);
+    }
+
+    /**
+     * @return a tightly packed copy of this raster
+     */
+    public Raster copy() {
+        Raster copy = sameSize();
+        for (int y = 0; y < height; ++y) {
+            System.arraycopy(pixels, index(0, y), copy.pixels, y * width, width);
+        }
+        return copy;
+    }
+
+}
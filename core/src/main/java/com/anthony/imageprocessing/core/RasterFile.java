@@ -0,0 +1,223 @@
+package com.anthony.imageprocessing.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An uncompressed image file, memory mapped so that opening it costs no
+ * decoding and no reading up front.
+ * <p/>
+ * The file is a {@value #HEADER_SIZE} byte header followed by the pixel rows:
+ * <pre>
+ * int magic    'IPRF'
+ * int version  1
+ * int width
+ * int height
+ * int layout   LAYOUT_ARGB_8888, one int per pixel
+ * int stride   pixels from the start of one row to the next, at least width
+ * int reserved 0
+ * int reserved 0
+ * </pre>
+ * All values, pixels included, are in the platform's native byte order, which
+ * the magic number gives away; a file written with the other byte order is
+ * rejected.
+ * <p/>
+ * A raster file is both a {@link TileSource} and a {@link TileSink}, so
+ * {@link TiledProcessor} can run effects from one mapped file into another,
+ * with each row moved by a single bulk transfer between the mapping and the
+ * tile buffer.
+ */
+public class RasterFile implements TileSource, TileSink {
+
+    public static final int LAYOUT_ARGB_8888 = 1;
+    public static final int HEADER_SIZE = 32;
+
+    private static final int MAGIC = ('I' << 24) | ('P' << 16) | ('R' << 8) | 'F';
+    private static final int VERSION = 1;
+
+    private final RandomAccessFile mFile;
+    private final MappedByteBuffer mBuffer;
+    private final IntBuffer mPixels;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mStride;
+
+    private RasterFile(RandomAccessFile file, MappedByteBuffer buffer, int width, int height, int stride) {
+        mFile = file;
+        mBuffer = buffer;
+        mWidth = width;
+        mHeight = height;
+        mStride = stride;
+        buffer.position(HEADER_SIZE);
+        mPixels = buffer.slice().order(ByteOrder.nativeOrder()).asIntBuffer();
+        buffer.position(0);
+    }
+
+    /**
+     * Create, or overwrite, file as a width x height raster file, mapped for reading and writing.
+     */
+    public static RasterFile create(File file, int width, int height) throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid size " + width + "x" + height);
+        }
+        long length = HEADER_SIZE + 4L * width * height;
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(width + "x" + height + " is too large to map");
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(length);
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+            buffer.order(ByteOrder.nativeOrder());
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height)
+                    .putInt(LAYOUT_ARGB_8888).putInt(width).putInt(0).putInt(0);
+            return new RasterFile(raf, buffer, width, height, width);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        } catch (RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Map an existing raster file.
+     *
+     * @param writable whether pixels may be written back
+     */
+    public static RasterFile open(File file, boolean writable) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, writable ? "rw" : "r");
+        try {
+            long length = raf.length();
+            if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+                throw new IOException(file + " is not a raster file");
+            }
+            MappedByteBuffer buffer = raf.getChannel().map(
+                    writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, 0, length);
+            buffer.order(ByteOrder.nativeOrder());
+
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException(file + " is not a raster file, or was written with another byte order");
+            }
+            int version = buffer.getInt(4);
+            int width = buffer.getInt(8);
+            int height = buffer.getInt(12);
+            int layout = buffer.getInt(16);
+            int stride = buffer.getInt(20);
+            if (version != VERSION || layout != LAYOUT_ARGB_8888) {
+                throw new IOException(file + " has unsupported version " + version + " or layout " + layout);
+            }
+            if (width <= 0 || height <= 0 || stride < width
+                    || HEADER_SIZE + 4L * ((long) (height - 1) * stride + width) > length) {
+                throw new IOException(file + " is truncated or has an invalid size " + width + "x" + height);
+            }
+            return new RasterFile(raf, buffer, width, height, stride);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        } catch (RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Write raster to file in one go.
+     */
+    public static void save(Raster raster, File file) throws IOException {
+        RasterFile out = create(file, raster.width, raster.height);
+        try {
+            out.write(0, 0, raster);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Read a whole raster file into dst, which must have the file's size.
+     */
+    public static void load(File file, Raster dst) throws IOException {
+        RasterFile in = open(file, false);
+        try {
+            if (in.mWidth != dst.width || in.mHeight != dst.height) {
+                throw new IOException(file + " is " + in.mWidth + "x" + in.mHeight
+                        + ", expected " + dst.width + "x" + dst.height);
+            }
+            in.read(0, 0, dst);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getStride() {
+        return mStride;
+    }
+
+    /**
+     * @return the mapped pixels, pixel (x, y) at {@code y * getStride() + x}; a
+     * view for callers that want to work on the file without any copy
+     */
+    public IntBuffer pixels() {
+        return mPixels.duplicate();
+    }
+
+    @Override
+    public void read(int x, int y, Raster dst) {
+        checkBounds(x, y, dst);
+        IntBuffer pixels = mPixels.duplicate();
+        for (int row = 0; row < dst.height; ++row) {
+            pixels.position((y + row) * mStride + x);
+            pixels.get(dst.pixels, dst.index(0, row), dst.width);
+        }
+    }
+
+    @Override
+    public void write(int x, int y, Raster tile) {
+        checkBounds(x, y, tile);
+        IntBuffer pixels = mPixels.duplicate();
+        for (int row = 0; row < tile.height; ++row) {
+            pixels.position((y + row) * mStride + x);
+            pixels.put(tile.pixels, tile.index(0, row), tile.width);
+        }
+    }
+
+    /**
+     * Push written pixels to the storage device.
+     */
+    public void flush() {
+        mBuffer.force();
+    }
+
+    /**
+     * Close the file. The mapping itself goes away once it is garbage collected,
+     * so no buffer obtained from {@link #pixels()} may be used afterwards.
+     */
+    public void close() throws IOException {
+        mFile.close();
+    }
+
+    private void checkBounds(int x, int y, Raster raster) {
+        if (x < 0 || y < 0 || x + raster.width > mWidth || y + raster.height > mHeight) {
+            throw new IllegalArgumentException("Region " + raster.width + "x" + raster.height + " at (" + x
+                    + ", " + y + ") is outside of " + mWidth + "x" + mHeight);
+        }
+    }
+
+}
@@ -0,0 +1,28 @@
+package com.anthony.imageprocessing.core;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * {@link ImageCodec} for {@link RasterFile}s.
+ */
+public class RasterFileCodec implements ImageCodec {
+
+    @Override
+    public Raster decode(File file, BufferPool pool) throws IOException {
+        RasterFile in = RasterFile.open(file, false);
+        try {
+            Raster raster = pool.acquire(in.getWidth(), in.getHeight());
+            in.read(0, 0, raster);
+            return raster;
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    public void encode(Raster raster, File file) throws IOException {
+        RasterFile.save(raster, file);
+    }
+
+}
@@ -0,0 +1,44 @@
+package com.anthony.imageprocessing.core;
+
+/**
+ * {@link TileSource} and {@link TileSink} over an in-memory raster.
+ */
+public class RasterTiles implements TileSource, TileSink {
+
+    private final Raster mRaster;
+
+    public RasterTiles(Raster raster) {
+        mRaster = raster;
+    }
+
+    public Raster getRaster() {
+        return mRaster;
+    }
+
+    @Override
+    public int getWidth() {
+        return mRaster.width;
+    }
+
+    @Override
+    public int getHeight() {
+        return mRaster.height;
+    }
+
+    @Override
+    public void read(int x, int y, Raster dst) {
+        copy(mRaster.region(x, y, dst.width, dst.height), dst);
+    }
+
+    @Override
+    public void write(int x, int y, Raster tile) {
+        copy(tile, mRaster.region(x, y, tile.width, tile.height));
+    }
+
+    static void copy(Raster src, Raster dst) {
+        for (int y = 0; y < src.height; ++y) {
+            System.arraycopy(src.pixels, src.index(0, y), dst.pixels, dst.index(0, y), src.width);
+        }
+    }
+
+}
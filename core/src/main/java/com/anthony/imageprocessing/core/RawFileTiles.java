@@ -0,0 +1,97 @@
+package com.anthony.imageprocessing.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * {@link TileSource} and {@link TileSink} over a file of raw pixels: width *
+ * height big endian ARGB ints, row after row, starting at a given byte offset.
+ * <p/>
+ * Rows of a tile are read and written with positional channel I/O through one
+ * row sized buffer, so memory use does not depend on the image size.
+ */
+public class RawFileTiles implements TileSource, TileSink {
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final int mWidth;
+    private final int mHeight;
+    private final long mDataOffset;
+    private ByteBuffer mRow;
+
+    /**
+     * Open an existing file for reading, or a new one for writing when writable is set.
+     */
+    public RawFileTiles(File file, int width, int height, long dataOffset, boolean writable) throws IOException {
+        mFile = new RandomAccessFile(file, writable ? "rw" : "r");
+        mChannel = mFile.getChannel();
+        mWidth = width;
+        mHeight = height;
+        mDataOffset = dataOffset;
+    }
+
+    @Override
+    public int getWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public synchronized void read(int x, int y, Raster dst) throws IOException {
+        ByteBuffer row = row(dst.width);
+        IntBuffer ints = row.asIntBuffer();
+        for (int r = 0; r < dst.height; ++r) {
+            row.rewind();
+            long position = position(x, y + r);
+            while (row.hasRemaining()) {
+                if (mChannel.read(row, position + row.position()) < 0) {
+                    throw new IOException("Unexpected end of file at row " + (y + r));
+                }
+            }
+            ints.clear();
+            ints.get(dst.pixels, dst.index(0, r), dst.width);
+        }
+    }
+
+    @Override
+    public synchronized void write(int x, int y, Raster tile) throws IOException {
+        ByteBuffer row = row(tile.width);
+        IntBuffer ints = row.asIntBuffer();
+        for (int r = 0; r < tile.height; ++r) {
+            ints.clear();
+            ints.put(tile.pixels, tile.index(0, r), tile.width);
+            row.rewind();
+            long position = position(x, y + r);
+            while (row.hasRemaining()) {
+                mChannel.write(row, position + row.position());
+            }
+        }
+    }
+
+    public void close() throws IOException {
+        mFile.close();
+    }
+
+    private long position(int x, int y) {
+        return mDataOffset + 4L * ((long) y * mWidth + x);
+    }
+
+    private ByteBuffer row(int pixels) {
+        if (mRow == null || mRow.capacity() < 4 * pixels) {
+            mRow = ByteBuffer.allocateDirect(4 * Math.max(pixels, mWidth)).order(ByteOrder.BIG_ENDIAN);
+        }
+        mRow.clear();
+        mRow.limit(4 * pixels);
+        return mRow;
+    }
+
+}
@@ -0,0 +1,304 @@
+package com.anthony.imageprocessing.core;
+
+/**
+ * Resize images to any size, e.g. a photo down to the size of the screen.
+ * <p/>
+ * Two filters are offered:
+ * <ul>
+ * <li>{@link #FILTER_AREA}: every destination pixel is the average of the
+ * source area it covers. Fast, and free of aliasing when shrinking; when both
+ * sides shrink by a whole factor the blocks are summed two channels per int,
+ * as in {@link Mipmap#halve(Raster)}</li>
+ * <li>{@link #FILTER_LANCZOS}: a 3 lobe Lanczos window, stretched by the
+ * shrink factor. Sharper, at a few times the cost</li>
+ * </ul>
+ * Both run as two separable passes with fixed-point weights: every strip of
+ * destination rows filters the source rows it needs horizontally into a small
+ * ring of rows, then combines those vertically, so the intermediate image is
+ * never held in full. Strips can run on the threads of a {@link ParallelExecutor}.
+ * <p/>
+ * Like {@link Mipmap}, all four channels are filtered alike, alpha is not premultiplied.
+ */
+public final class Resampler {
+
+    public static final int FILTER_AREA = 0;
+    public static final int FILTER_LANCZOS = 1;
+
+    private static final int LANCZOS_LOBES = 3;
+    private static final int WEIGHT_BITS = 12;
+    // bits of the horizontal pass results kept below the channel value, so
+    // that the vertical pass stays within an int even with negative lobes
+    private static final int EXTRA_BITS = 8;
+    /** Largest block whose channel sums fit the 16 bit lanes of an int. */
+    private static final int MAX_PACKED_BLOCK = 257;
+
+    private Resampler() {
+    }
+
+    /**
+     * @return src resized to width x height with filter, on the calling thread
+     */
+    public static Raster resize(Raster src, int width, int height, int filter) {
+        Raster dst = Raster.create(width, height);
+        resize(src, dst, filter);
+        return dst;
+    }
+
+    /**
+     * Resize src to the size of dst with filter, on the calling thread.
+     */
+    public static void resize(Raster src, Raster dst, int filter) {
+        strips(src, dst, filter).apply(0, dst.height);
+    }
+
+    /**
+     * Resize src to the size of dst with filter, on the threads of executor.
+     *
+     * @param cancellation checked between strips, may be null
+     */
+    public static void resize(Raster src, Raster dst, int filter, ParallelExecutor executor,
+                              Cancellation cancellation) {
+        // every piece of a strip filters the source rows of about LANCZOS_LOBES
+        // destination rows above and below its first row again
+        executor.run(strips(src, dst, filter), 0, dst.height, cancellation, LANCZOS_LOBES);
+    }
+
+    /**
+     * @return the largest width x height with the aspect ratio of srcWidth x
+     * srcHeight that fits in maxWidth x maxHeight, at most the source size
+     */
+    public static int[] fit(int srcWidth, int srcHeight, int maxWidth, int maxHeight) {
+        double scale = Math.min(1, Math.min(maxWidth / (double) srcWidth, maxHeight / (double) srcHeight));
+        return new int[]{
+                Math.max(1, (int) Math.round(srcWidth * scale)),
+                Math.max(1, (int) Math.round(srcHeight * scale))};
+    }
+
+    private static ParallelExecutor.Strip strips(final Raster src, final Raster dst, int filter) {
+        if (filter != FILTER_AREA && filter != FILTER_LANCZOS) {
+            throw new IllegalArgumentException("Unknown filter " + filter);
+        }
+        if (src.width == 0 || src.height == 0) {
+            throw new IllegalArgumentException("Cannot resize an empty image");
+        }
+
+        if (filter == FILTER_AREA && src.width % dst.width == 0 && src.height % dst.height == 0
+                && (src.width / dst.width) * (src.height / dst.height) <= MAX_PACKED_BLOCK) {
+            final int factorX = src.width / dst.width;
+            final int factorY = src.height / dst.height;
+            return new ParallelExecutor.Strip() {
+                @Override
+                public void apply(int top, int bottom) {
+                    averageBlocks(src, dst, factorX, factorY, top, bottom);
+                }
+            };
+        }
+
+        final Kernel horizontal = new Kernel(src.width, dst.width, filter);
+        final Kernel vertical = new Kernel(src.height, dst.height, filter);
+        return new ParallelExecutor.Strip() {
+            @Override
+            public void apply(int top, int bottom) {
+                separable(src, dst, horizontal, vertical, top, bottom);
+            }
+        };
+    }
+
+    /**
+     * Average factorX x factorY blocks of src into rows [top, bottom) of dst.
+     */
+    private static void averageBlocks(Raster src, Raster dst, int factorX, int factorY, int top, int bottom) {
+        BufferPool pool = BufferPool.getDefault();
+        int width = dst.width;
+        // red and blue, alpha and green of every destination column, 16 bits apart
+        int[] sums = pool.acquire(2 * width);
+        int count = factorX * factorY;
+        int half = count / 2;
+        try {
+            for (int y = top; y < bottom; ++y) {
+                for (int x = 0; x < 2 * width; ++x) {
+                    sums[x] = 0;
+                }
+                for (int row = y * factorY; row < (y + 1) * factorY; ++row) {
+                    int s = src.index(0, row);
+                    for (int x = 0; x < width; ++x) {
+                        int rb = 0;
+                        int ag = 0;
+                        for (int k = 0; k < factorX; ++k) {
+                            int pixel = src.pixels[s++];
+                            rb += pixel & 0x00FF00FF;
+                            ag += (pixel >>> 8) & 0x00FF00FF;
+                        }
+                        sums[2 * x] += rb;
+                        sums[2 * x + 1] += ag;
+                    }
+                }
+
+                int d = dst.index(0, y);
+                for (int x = 0; x < width; ++x) {
+                    int rb = sums[2 * x];
+                    int ag = sums[2 * x + 1];
+                    int a = ((ag >>> 16) + half) / count;
+                    int r = ((rb >>> 16) + half) / count;
+                    int g = ((ag & 0xFFFF) + half) / count;
+                    int b = ((rb & 0xFFFF) + half) / count;
+                    dst.pixels[d + x] = (a << 24) | (r << 16) | (g << 8) | b;
+                }
+            }
+        } finally {
+            pool.release(sums);
+        }
+    }
+
+    /**
+     * Filter rows [top, bottom) of dst from src, horizontally then vertically.
+     */
+    private static void separable(Raster src, Raster dst, Kernel horizontal, Kernel vertical, int top, int bottom) {
+        BufferPool pool = BufferPool.getDefault();
+        int width = dst.width;
+        int taps = vertical.taps;
+        // the horizontally filtered source rows the current destination row
+        // needs, source row r in slot r % taps, as A, R, G, B ints per pixel
+        int[] ring = pool.acquire(taps * 4 * width);
+        int filtered = vertical.start[top];
+        try {
+            for (int y = top; y < bottom; ++y) {
+                int first = vertical.start[y];
+                // rows above first are no longer needed and get overwritten
+                for (int row = Math.max(filtered, first); row < first + taps; ++row) {
+                    filterRow(src, row, horizontal, ring, (row % taps) * 4 * width);
+                }
+                filtered = first + taps;
+
+                int w = y * taps;
+                int d = dst.index(0, y);
+                for (int x = 0; x < width; ++x) {
+                    long a = 0, r = 0, g = 0, b = 0;
+                    for (int k = 0; k < taps; ++k) {
+                        int weight = vertical.weights[w + k];
+                        int i = ((first + k) % taps) * 4 * width + 4 * x;
+                        a += weight * ring[i];
+                        r += weight * ring[i + 1];
+                        g += weight * ring[i + 2];
+                        b += weight * ring[i + 3];
+                    }
+                    dst.pixels[d + x] = (channel(a) << 24) | (channel(r) << 16) | (channel(g) << 8) | channel(b);
+                }
+            }
+        } finally {
+            pool.release(ring);
+        }
+    }
+
+    /**
+     * Filter source row y horizontally into out, keeping {@link #EXTRA_BITS}
+     * bits below every channel value.
+     */
+    private static void filterRow(Raster src, int y, Kernel kernel, int[] out, int outPos) {
+        int s = src.index(0, y);
+        int taps = kernel.taps;
+        int round = 1 << (WEIGHT_BITS - EXTRA_BITS - 1);
+        for (int x = 0; x < kernel.start.length; ++x) {
+            int from = s + kernel.start[x];
+            int w = x * taps;
+            int a = 0, r = 0, g = 0, b = 0;
+            for (int k = 0; k < taps; ++k) {
+                int pixel = src.pixels[from + k];
+                int weight = kernel.weights[w + k];
+                a += weight * (pixel >>> 24);
+                r += weight * ((pixel >> 16) & 0xFF);
+                g += weight * ((pixel >> 8) & 0xFF);
+                b += weight * (pixel & 0xFF);
+            }
+            int o = outPos + 4 * x;
+            out[o] = (a + round) >> (WEIGHT_BITS - EXTRA_BITS);
+            out[o + 1] = (r + round) >> (WEIGHT_BITS - EXTRA_BITS);
+            out[o + 2] = (g + round) >> (WEIGHT_BITS - EXTRA_BITS);
+            out[o + 3] = (b + round) >> (WEIGHT_BITS - EXTRA_BITS);
+        }
+    }
+
+    private static int channel(long sum) {
+        int shift = WEIGHT_BITS + EXTRA_BITS;
+        return Argb.clamp((int) ((sum + (1L << (shift - 1))) >> shift));
+    }
+
+    /**
+     * The source pixels and fixed-point weights of every destination pixel
+     * along one axis: destination pixel i is the sum of weights[i * taps + k]
+     * times source pixel start[i] + k. Pixels past the edges are clamped to
+     * the edge, so start[i] + taps never leaves the source.
+     */
+    private static final class Kernel {
+
+        final int[] start;
+        final int taps;
+        final int[] weights;
+
+        Kernel(int srcSize, int dstSize, int filter) {
+            double scale = srcSize / (double) dstSize;
+            // how far from the center of a destination pixel source pixels count
+            double support = filter == FILTER_AREA ? Math.max(scale, 1) / 2
+                    : LANCZOS_LOBES * Math.max(scale, 1);
+            taps = Math.min(srcSize, (int) Math.ceil(2 * support) + 1);
+            start = new int[dstSize];
+            weights = new int[dstSize * taps];
+
+            double[] exact = new double[taps];
+            for (int i = 0; i < dstSize; ++i) {
+                double center = (i + 0.5) * scale;
+                int first = (int) Math.floor(center - support);
+                int begin = Math.max(0, Math.min(first, srcSize - taps));
+                start[i] = begin;
+
+                for (int k = 0; k < taps; ++k) {
+                    exact[k] = 0;
+                }
+                double total = 0;
+                for (int j = first; j <= (int) Math.ceil(center + support); ++j) {
+                    double weight = filter == FILTER_AREA ? coverage(i, j, scale) : lanczos(j + 0.5 - center, scale);
+                    if (weight != 0) {
+                        exact[Math.max(0, Math.min(j, srcSize - 1)) - begin] += weight;
+                        total += weight;
+                    }
+                }
+
+                // round to fixed point and give the rounding error to the largest
+                // weight, so that flat areas keep their exact value
+                int sum = 0;
+                int largest = 0;
+                for (int k = 0; k < taps; ++k) {
+                    int weight = (int) Math.round(exact[k] / total * (1 << WEIGHT_BITS));
+                    weights[i * taps + k] = weight;
+                    sum += weight;
+                    if (weight > weights[i * taps + largest]) {
+                        largest = k;
+                    }
+                }
+                weights[i * taps + largest] += (1 << WEIGHT_BITS) - sum;
+            }
+        }
+
+        /**
+         * @return how much of source pixel j destination pixel i covers; when
+         * growing, that is part of one or two source pixels
+         */
+        private static double coverage(int i, int j, double scale) {
+            return Math.max(0, Math.min(j + 1, (i + 1) * scale) - Math.max(j, i * scale));
+        }
+
+        private static double lanczos(double distance, double scale) {
+            double t = distance / Math.max(scale, 1);
+            if (t == 0) {
+                return 1;
+            }
+            if (Math.abs(t) >= LANCZOS_LOBES) {
+                return 0;
+            }
+            double pt = Math.PI * t;
+            return LANCZOS_LOBES * Math.sin(pt) * Math.sin(pt / LANCZOS_LOBES) / (pt * pt);
+        }
+
+    }
+
+}
@@ -0,0 +1,419 @@
+package com.anthony.imageprocessing.core;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers effect results, so applying the same effect with the same
+ * parameters to the same image again costs a lookup.
+ * <p/>
+ * Keys come from {@link #key(long, String, Object...)}: a fingerprint of the
+ * source pixels, the effect's name and its parameters. Results are kept in
+ * memory up to a size limit, least recently used first out. With a directory,
+ * results pushed out of memory are written there as {@link RasterFile}s, up
+ * to a second limit, and mapped back in on a later hit. Files are named after
+ * a hash of the key, with the key itself in a file next to each, so any key
+ * can be found again after a restart. Files are written after the cache's
+ * lock is released, so lookups never wait for the disk.
+ * <p/>
+ * Cached rasters are shared: callers must not modify what {@link #get(String)} returns.
+ */
+public class ResultCache {
+
+    private static final String PREFIX = "result-";
+    private static final String SUFFIX = ".raster";
+    private static final String KEY_SUFFIX = ".key";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final long mMaxMemoryBytes;
+    private final File mDirectory;
+    private final long mMaxDiskBytes;
+
+    private final LinkedHashMap<String, Raster> mMemory = new LinkedHashMap<String, Raster>(16, 0.75f, true);
+    private final LinkedHashMap<String, File> mDisk = new LinkedHashMap<String, File>(16, 0.75f, true);
+    // pushed out of memory and being written to disk, still served from here
+    private final Map<String, Raster> mWriting = new HashMap<String, Raster>();
+    private long mMemoryBytes;
+    private long mDiskBytes;
+
+    private long mHits;
+    private long mDiskHits;
+    private long mMisses;
+    private long mEvictions;
+
+    /**
+     * A cache kept in memory only.
+     */
+    public ResultCache(long maxMemoryBytes) {
+        this(maxMemoryBytes, null, 0);
+    }
+
+    /**
+     * A cache that spills to directory, picking up the results a previous
+     * instance left there.
+     */
+    public ResultCache(long maxMemoryBytes, File directory, long maxDiskBytes) {
+        mMaxMemoryBytes = maxMemoryBytes;
+        mDirectory = directory;
+        mMaxDiskBytes = maxDiskBytes;
+        if (directory != null) {
+            directory.mkdirs();
+            index(directory);
+        }
+    }
+
+    /**
+     * @return a 64 bit hash of raster's size and pixels
+     */
+    public static long fingerprint(Raster raster) {
+        // four independent lanes, so the multiplies do not wait for each other
+        long h0 = raster.width, h1 = raster.height, h2 = 0x9E3779B97F4A7C15L, h3 = 0xC2B2AE3D27D4EB4FL;
+        int[] pixels = raster.pixels;
+        for (int y = 0; y < raster.height; ++y) {
+            int i = raster.index(0, y);
+            int end = i + raster.width;
+            for (; i + 4 <= end; i += 4) {
+                h0 = (h0 + pixels[i]) * 0x9E3779B97F4A7C15L;
+                h1 = (h1 + pixels[i + 1]) * 0xBF58476D1CE4E5B9L;
+                h2 = (h2 + pixels[i + 2]) * 0x94D049BB133111EBL;
+                h3 = (h3 + pixels[i + 3]) * 0xD6E8FEB86659FD93L;
+            }
+            for (; i < end; ++i) {
+                h0 = (h0 + pixels[i]) * 0x9E3779B97F4A7C15L;
+            }
+        }
+        long h = h0 ^ Long.rotateLeft(h1, 16) ^ Long.rotateLeft(h2, 32) ^ Long.rotateLeft(h3, 48);
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+
+    /**
+     * @return the key for effect applied with params to the image with the given fingerprint
+     */
+    public static String key(long fingerprint, String effect, Object... params) {
+        StringBuilder key = new StringBuilder(Long.toHexString(fingerprint)).append('_').append(effect);
+        for (Object param : params) {
+            key.append('_').append(param);
+        }
+        return key.toString();
+    }
+
+    /**
+     * @return the result stored under key, or null
+     */
+    public Raster get(String key) {
+        File file;
+        synchronized (this) {
+            Raster raster = mMemory.get(key);
+            if (raster == null) {
+                raster = mWriting.get(key);
+            }
+            if (raster != null) {
+                ++mHits;
+                return raster;
+            }
+            file = mDisk.get(key);
+            if (file == null) {
+                ++mMisses;
+                return null;
+            }
+        }
+
+        Raster raster = null;
+        try {
+            RasterFile in = RasterFile.open(file, false);
+            try {
+                raster = Raster.create(in.getWidth(), in.getHeight());
+                in.read(0, 0, raster);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // gone or damaged, same as not cached
+        }
+
+        List<String> spills = new ArrayList<String>();
+        synchronized (this) {
+            if (raster == null) {
+                // unless the entry was cleared and written again while reading
+                if (mDisk.get(key) == file) {
+                    removeFile(key);
+                }
+                ++mMisses;
+                return null;
+            }
+            ++mDiskHits;
+            putInMemory(key, raster, spills);
+        }
+        spill(spills);
+        return raster;
+    }
+
+    /**
+     * Store a copy of result under key.
+     */
+    public void put(String key, Raster result) {
+        Raster copy = result.copy();
+        List<String> spills = new ArrayList<String>();
+        synchronized (this) {
+            putInMemory(key, copy, spills);
+        }
+        spill(spills);
+    }
+
+    /**
+     * Drop every result, from memory and from disk.
+     */
+    public synchronized void clear() {
+        mMemory.clear();
+        mMemoryBytes = 0;
+        // results still being written are deleted once they are
+        mWriting.clear();
+        for (File file : mDisk.values()) {
+            delete(file);
+        }
+        mDisk.clear();
+        mDiskBytes = 0;
+    }
+
+    /**
+     * @return lookups served from memory
+     */
+    public synchronized long getHits() {
+        return mHits;
+    }
+
+    /**
+     * @return lookups served from disk
+     */
+    public synchronized long getDiskHits() {
+        return mDiskHits;
+    }
+
+    public synchronized long getMisses() {
+        return mMisses;
+    }
+
+    /**
+     * @return results pushed out of memory, whether or not they went to disk
+     */
+    public synchronized long getEvictions() {
+        return mEvictions;
+    }
+
+    public synchronized long getMemoryBytes() {
+        return mMemoryBytes;
+    }
+
+    public synchronized long getDiskBytes() {
+        return mDiskBytes;
+    }
+
+    /**
+     * Keep raster in memory, pushing out the least recently used results.
+     * Those that should go to disk move to {@link #mWriting} and their keys
+     * are added to spills, for {@link #spill(List)} to write once the lock
+     * is released.
+     */
+    private void putInMemory(String key, Raster raster, List<String> spills) {
+        long size = bytes(raster);
+        if (size > mMaxMemoryBytes) {
+            startSpill(key, raster, spills);
+            return;
+        }
+        Raster previous = mMemory.put(key, raster);
+        if (previous != null) {
+            mMemoryBytes -= bytes(previous);
+        }
+        mMemoryBytes += size;
+
+        Iterator<Map.Entry<String, Raster>> eldest = mMemory.entrySet().iterator();
+        while (mMemoryBytes > mMaxMemoryBytes && eldest.hasNext()) {
+            Map.Entry<String, Raster> entry = eldest.next();
+            eldest.remove();
+            mMemoryBytes -= bytes(entry.getValue());
+            ++mEvictions;
+            startSpill(entry.getKey(), entry.getValue(), spills);
+        }
+    }
+
+    private void startSpill(String key, Raster raster, List<String> spills) {
+        if (mDirectory == null || mDisk.containsKey(key) || mWriting.containsKey(key)
+                || bytes(raster) > mMaxDiskBytes) {
+            return;
+        }
+        mWriting.put(key, raster);
+        spills.add(key);
+    }
+
+    /**
+     * Write the results of keys to disk, without holding the lock while doing so.
+     */
+    private void spill(List<String> keys) {
+        for (String key : keys) {
+            Raster raster;
+            synchronized (this) {
+                raster = mWriting.get(key);
+            }
+            if (raster == null) {
+                continue;
+            }
+
+            File file = new File(mDirectory, PREFIX + Long.toHexString(hash(key)) + SUFFIX);
+            boolean written = false;
+            // a file already there belongs to another key with the same hash, leave it be
+            if (!file.exists()) {
+                try {
+                    RasterFile.save(raster, file);
+                    writeKey(keyFile(file), key);
+                    written = true;
+                } catch (IOException e) {
+                    delete(file);
+                }
+            }
+
+            synchronized (this) {
+                if (mWriting.remove(key) == null) {
+                    // cleared meanwhile
+                    if (written) {
+                        delete(file);
+                    }
+                } else if (written) {
+                    mDisk.put(key, file);
+                    mDiskBytes += length(file);
+                    trimDisk();
+                }
+            }
+        }
+    }
+
+    private void trimDisk() {
+        Iterator<Map.Entry<String, File>> eldest = mDisk.entrySet().iterator();
+        while (mDiskBytes > mMaxDiskBytes && eldest.hasNext()) {
+            File old = eldest.next().getValue();
+            eldest.remove();
+            mDiskBytes -= length(old);
+            delete(old);
+        }
+    }
+
+    private void removeFile(String key) {
+        File file = mDisk.remove(key);
+        if (file != null) {
+            mDiskBytes -= length(file);
+            delete(file);
+        }
+    }
+
+    private void index(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        // oldest first, so the most recently written results are the last to go
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long ta = a.lastModified();
+                long tb = b.lastModified();
+                return ta < tb ? -1 : (ta == tb ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(PREFIX) && name.endsWith(SUFFIX)) {
+                String key = readKey(keyFile(file));
+                if (key == null) {
+                    // left behind by an older version, or the key was never written
+                    delete(file);
+                    continue;
+                }
+                mDisk.put(key, file);
+                mDiskBytes += length(file);
+            }
+        }
+        trimDisk();
+    }
+
+    /**
+     * @return the file next to a result file that holds its key
+     */
+    private static File keyFile(File file) {
+        String name = file.getName();
+        return new File(file.getParentFile(), name.substring(0, name.length() - SUFFIX.length()) + KEY_SUFFIX);
+    }
+
+    private static void writeKey(File file, String key) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(key.getBytes(UTF_8));
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return the key in file, or null if it cannot be read
+     */
+    private static String readKey(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            byte[] bytes = new byte[(int) file.length()];
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                in.readFully(bytes);
+            } finally {
+                in.close();
+            }
+            return new String(bytes, UTF_8);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the size of a result file and its key file together
+     */
+    private static long length(File file) {
+        return file.length() + keyFile(file).length();
+    }
+
+    private static void delete(File file) {
+        file.delete();
+        keyFile(file).delete();
+    }
+
+    /**
+     * @return a 64 bit hash of key, to name its file after
+     */
+    private static long hash(String key) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < key.length(); ++i) {
+            h = (h ^ key.charAt(i)) * 0x100000001B3L;
+        }
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+
+    private static long bytes(Raster raster) {
+        return 4L * raster.width * raster.height;
+    }
+
+}
@@ -0,0 +1,20 @@
+package com.anthony.imageprocessing.core;
+
+/**
+ * An image effect working directly on {@link Rgb565Raster}s, without widening
+ * them to ARGB first. Same contract as {@link Effect}.
+ */
+public interface Rgb565Effect {
+
+    /**
+     * @return how many pixels around an output pixel the effect reads from the source
+     */
+    int radius();
+
+    /**
+     * Compute output rows [top, bottom). src and dst have the same size, and may
+     * only be the same raster when {@link #radius()} is 0.
+     */
+    void apply(Rgb565Raster src, Rgb565Raster dst, int top, int bottom);
+
+}
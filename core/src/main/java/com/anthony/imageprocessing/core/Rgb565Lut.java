@@ -0,0 +1,50 @@
+package com.anthony.imageprocessing.core;
+
+/**
+ * Any position independent {@link PointEffect} as a 65536 entry table over
+ * RGB 565 pixels, one load per pixel however costly the effect is.
+ * <p/>
+ * Building the table runs the effect over every 565 color once, so it pays
+ * off for images larger than 256x256; keep the table while the parameters stay the same.
+ */
+public class Rgb565Lut implements Rgb565Effect {
+
+    private final short[] mTable;
+
+    private Rgb565Lut(short[] table) {
+        mTable = table;
+    }
+
+    /**
+     * @param effect an effect whose output does not depend on the pixel position,
+     *               i.e. not {@link SnowEffect}
+     */
+    public static Rgb565Lut of(PointEffect effect) {
+        int[] colors = new int[1 << 16];
+        for (int c = 0; c < colors.length; ++c) {
+            colors[c] = PixelFormats.rgb565ToArgb(c);
+        }
+        effect.filter(colors, 0, colors, 0, colors.length, 0, 0);
+        short[] table = new short[colors.length];
+        PixelFormats.toRgb565(colors, 0, table, 0, colors.length);
+        return new Rgb565Lut(table);
+    }
+
+    @Override
+    public int radius() {
+        return 0;
+    }
+
+    @Override
+    public void apply(Rgb565Raster src, Rgb565Raster dst, int top, int bottom) {
+        short[] table = mTable;
+        for (int y = top; y < bottom; ++y) {
+            int s = src.index(0, y);
+            int d = dst.index(0, y);
+            for (int x = 0; x < src.width; ++x) {
+                dst.pixels[d + x] = table[src.pixels[s + x] & 0xFFFF];
+            }
+        }
+    }
+
+}
@@ -0,0 +1,14 @@
+package com.anthony.imageprocessing.core;
+
+/**
+ * An effect with spatial parameters, such as a blur radius, that can be
+ * adapted to a downscaled copy of the image, e.g. for a preview.
+ */
+public interface ScalableEffect extends Effect {
+
+    /**
+     * @return the effect that gives the same look on the image shrunk by factor (> 1)
+     */
+    Effect scaled(double factor);
+
+}
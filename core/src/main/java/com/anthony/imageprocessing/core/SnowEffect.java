@@ -0,0 +1,88 @@
+package com.anthony.imageprocessing.core;
+
+/**
+ * Turn pixels whose R, G and B are all above a random threshold in
+ * [0, colorMax) into the gray (colorMax, colorMax, colorMax).
+ * <p/>
+ * The threshold of each pixel is a hash of the seed and the pixel position,
+ * the SplitMix64 output at index (y << 32) + x, so there is no generator state
+ * to share or to skip ahead: the result only depends on the seed, not on how
+ * many threads run the effect or how the image is split into strips or tiles.
+ * RGB 565 and grayscale rasters get snow on the same pixels as the ARGB image.
+ */
+public class SnowEffect extends PointEffect implements Rgb565Effect, GrayEffect {
+
+    private final int mColorMax;
+    private final int mSnowColor;
+    private final long mSeed;
+
+    public SnowEffect(int colorMax, long seed) {
+        if (colorMax <= 0) {
+            throw new IllegalArgumentException("colorMax must be positive, was " + colorMax);
+        }
+        mColorMax = colorMax;
+        mSnowColor = Argb.rgb(colorMax, colorMax, colorMax);
+        mSeed = seed;
+    }
+
+    @Override
+    public void filter(int[] src, int srcPos, int[] dst, int dstPos, int length, int x, int y) {
+        long counter = rowCounter(y) + x;
+        for (int i = 0; i < length; ++i) {
+            int pixel = src[srcPos + i];
+            // R, G and B all above the threshold is the same as their minimum being above it
+            int min = Math.min((pixel >> 16) & 0xFF, Math.min((pixel >> 8) & 0xFF, pixel & 0xFF));
+            if (min > threshold(counter + i)) {
+                pixel = mSnowColor;
+            }
+            dst[dstPos + i] = pixel;
+        }
+    }
+
+    @Override
+    public void apply(Rgb565Raster src, Rgb565Raster dst, int top, int bottom) {
+        short snow = PixelFormats.toRgb565(mSnowColor);
+        for (int y = top; y < bottom; ++y) {
+            long counter = rowCounter(src.originY + y) + src.originX;
+            int s = src.index(0, y);
+            int d = dst.index(0, y);
+            for (int x = 0; x < src.width; ++x) {
+                short pixel = src.pixels[s + x];
+                int min = Math.min(PixelFormats.red565(pixel),
+                        Math.min(PixelFormats.green565(pixel), PixelFormats.blue565(pixel)));
+                dst.pixels[d + x] = min > threshold(counter + x) ? snow : pixel;
+            }
+        }
+    }
+
+    @Override
+    public void apply(GrayRaster src, GrayRaster dst, int top, int bottom) {
+        byte snow = (byte) PixelFormats.luma(mSnowColor);
+        for (int y = top; y < bottom; ++y) {
+            long counter = rowCounter(src.originY + y) + src.originX;
+            int s = src.index(0, y);
+            int d = dst.index(0, y);
+            for (int x = 0; x < src.width; ++x) {
+                byte pixel = src.pixels[s + x];
+                dst.pixels[d + x] = (pixel & 0xFF) > threshold(counter + x) ? snow : pixel;
+            }
+        }
+    }
+
+    private long rowCounter(int y) {
+        return (long) y << 32;
+    }
+
+    /**
+     * @return the threshold of the pixel at counter, uniform in [0, colorMax)
+     */
+    private int threshold(long counter) {
+        long z = mSeed + (counter + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z ^= z >>> 31;
+        // the top 32 bits scaled to the range, without a division
+        return (int) (((z >>> 32) * mColorMax) >>> 32);
+    }
+
+}
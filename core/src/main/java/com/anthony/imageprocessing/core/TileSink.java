@@ -0,0 +1,16 @@
+package com.anthony.imageprocessing.core;
+
+import java.io.IOException;
+
+/**
+ * Receives the processed image a rectangle at a time.
+ */
+public interface TileSink {
+
+    /**
+     * Store tile as the rectangle of its size at (x, y) of the output. The tile
+     * is only valid during the call.
+     */
+    void write(int x, int y, Raster tile) throws IOException;
+
+}
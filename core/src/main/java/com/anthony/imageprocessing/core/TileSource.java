@@ -0,0 +1,19 @@
+package com.anthony.imageprocessing.core;
+
+import java.io.IOException;
+
+/**
+ * An image that can be read a rectangle at a time, without ever holding all of it in memory.
+ */
+public interface TileSource {
+
+    int getWidth();
+
+    int getHeight();
+
+    /**
+     * Read the rectangle of dst's size at (x, y) into dst.
+     */
+    void read(int x, int y, Raster dst) throws IOException;
+
+}
@@ -0,0 +1,89 @@
+package com.anthony.imageprocessing.core;
+
+import java.io.IOException;
+
+/**
+ * Runs an {@link EffectPipeline} over an image too large to hold in memory,
+ * one tile at a time.
+ * <p/>
+ * Each tile is read together with a halo of {@link EffectPipeline#radius()}
+ * pixels on every side, clamped to the image, so effects reading neighbouring
+ * pixels see the same input as for the whole image and tiles join without
+ * seams. Only the tile itself is written to the sink. Tiles carry their
+ * position in the image as origin, so position dependent effects like
+ * {@link SnowEffect} give the same result too.
+ * <p/>
+ * Memory use is two tile sized buffers plus the pipeline's scratch buffer,
+ * all taken from the pool and reused for every tile.
+ */
+public class TiledProcessor {
+
+    public static final int DEFAULT_TILE_SIZE = 512;
+
+    private final int mTileWidth;
+    private final int mTileHeight;
+    private final ParallelExecutor mExecutor;
+    private final BufferPool mPool;
+
+    public TiledProcessor(ParallelExecutor executor) {
+        this(DEFAULT_TILE_SIZE, DEFAULT_TILE_SIZE, executor, BufferPool.getDefault());
+    }
+
+    public TiledProcessor(int tileWidth, int tileHeight, ParallelExecutor executor, BufferPool pool) {
+        if (tileWidth <= 0 || tileHeight <= 0) {
+            throw new IllegalArgumentException("Invalid tile size " + tileWidth + "x" + tileHeight);
+        }
+        mTileWidth = tileWidth;
+        mTileHeight = tileHeight;
+        mExecutor = executor;
+        mPool = pool;
+    }
+
+    /**
+     * Run pipeline over source, tile by tile in row order, writing every tile to sink.
+     */
+    public void process(TileSource source, EffectPipeline pipeline, TileSink sink) throws IOException {
+        process(source, pipeline, sink, null);
+    }
+
+    /**
+     * Like {@link #process(TileSource, EffectPipeline, TileSink)}, giving up with
+     * a CancellationException once cancellation, if not null, is cancelled.
+     * Tiles written before that stay written.
+     */
+    public void process(TileSource source, EffectPipeline pipeline, TileSink sink, Cancellation cancellation)
+            throws IOException {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int halo = pipeline.radius();
+        int maxWidth = Math.min(width, mTileWidth + 2 * halo);
+        int maxHeight = Math.min(height, mTileHeight + 2 * halo);
+
+        int[] in = mPool.acquire(maxWidth * maxHeight);
+        int[] out = mPool.acquire(maxWidth * maxHeight);
+        try {
+            for (int tileY = 0; tileY < height; tileY += mTileHeight) {
+                int tileHeight = Math.min(mTileHeight, height - tileY);
+                int top = Math.max(0, tileY - halo);
+                int bottom = Math.min(height, tileY + tileHeight + halo);
+
+                for (int tileX = 0; tileX < width; tileX += mTileWidth) {
+                    int tileWidth = Math.min(mTileWidth, width - tileX);
+                    int left = Math.max(0, tileX - halo);
+                    int right = Math.min(width, tileX + tileWidth + halo);
+
+                    Raster input = new Raster(in, right - left, bottom - top, 0, right - left, left, top);
+                    Raster output = new Raster(out, right - left, bottom - top, 0, right - left, left, top);
+                    Cancellation.check(cancellation);
+                    source.read(left, top, input);
+                    pipeline.run(input, output, mExecutor, mPool, cancellation);
+                    sink.write(tileX, tileY, output.region(tileX - left, tileY - top, tileWidth, tileHeight));
+                }
+            }
+        } finally {
+            mPool.release(in);
+            mPool.release(out);
+        }
+    }
+
+}
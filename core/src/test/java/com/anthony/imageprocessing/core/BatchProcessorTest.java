@@ -0,0 +1,80 @@
+package com.anthony.imageprocessing.core;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class BatchProcessorTest {
+
+    private static final int FILES = 20;
+
+    @Test
+    public void errorsAreRecordedAndTheBatchFinishes() throws InterruptedException {
+        final Set<String> written = Collections.synchronizedSet(new HashSet<String>());
+        ImageCodec codec = new ImageCodec() {
+            @Override
+            public Raster decode(File file, BufferPool pool) {
+                Raster raster = Raster.create(8, 8);
+                // odd files fail when processed
+                raster.pixels[0] = Integer.parseInt(file.getName()) % 2;
+                return raster;
+            }
+
+            @Override
+            public void encode(Raster raster, File file) {
+                written.add(file.getName());
+            }
+        };
+        final EffectPipeline recipe = new EffectPipeline().add(new PointEffect() {
+            @Override
+            public void filter(int[] src, int srcPos, int[] dst, int dstPos, int length, int x, int y) {
+                if (src[srcPos] == 1) {
+                    throw new OutOfMemoryError("no room for the image");
+                }
+                System.arraycopy(src, srcPos, dst, dstPos, length);
+            }
+        });
+        final List<File> inputs = new ArrayList<File>();
+        for (int i = 0; i < FILES; ++i) {
+            inputs.add(new File(Integer.toString(i)));
+        }
+        final File output = new File(System.getProperty("java.io.tmpdir"), "batch-" + System.nanoTime());
+        // one thread per stage, so a processor lost to an error would stall everything
+        final BatchProcessor processor = new BatchProcessor(codec, 1, 1, new BufferPool(1 << 20));
+
+        final AtomicReference<BatchReport> report = new AtomicReference<BatchReport>();
+        Thread batch = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                report.set(processor.process(inputs, output, recipe, null));
+            }
+        });
+        batch.start();
+        batch.join(10000);
+        output.delete();
+        assertFalse("the batch did not finish", batch.isAlive());
+
+        assertNotNull(report.get());
+        assertEquals(FILES / 2, report.get().getImages());
+        assertEquals(FILES / 2, report.get().getFailures().size());
+        for (int i = 0; i < FILES; ++i) {
+            String name = Integer.toString(i);
+            assertEquals(i % 2 == 0, written.contains(name));
+            if (i % 2 == 1) {
+                assertTrue(report.get().getFailures().get(new File(name)) instanceof OutOfMemoryError);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.anthony.imageprocessing.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class BrightnessEffectTest {
+
+    @Test
+    public void pairsMatchTheChannelByChannelVersion() {
+        Random random = new Random(17);
+        int[] values = {-300, -255, -254, -128, -1, 0, 1, 77, 128, 254, 255, 256, 300};
+
+        for (int value : values) {
+            // odd lengths and positions, so the last pixel takes the scalar path
+            for (int length = 0; length < 40; ++length) {
+                int[] src = new int[length + 3];
+                for (int i = 0; i < src.length; ++i) {
+                    src[i] = random.nextInt();
+                }
+                int[] expected = new int[length];
+                for (int i = 0; i < length; ++i) {
+                    expected[i] = BrightnessEffect.brighten(src[i + 1], value);
+                }
+                int[] actual = new int[length + 2];
+                new BrightnessEffect(value).filter(src, 1, actual, 2, length, 0, 0);
+
+                int[] shown = new int[length];
+                System.arraycopy(actual, 2, shown, 0, length);
+                assertArrayEquals(expected, shown);
+            }
+        }
+    }
+
+    @Test
+    public void everyChannelValueMatchesTheChannelByChannelVersion() {
+        for (int value = -256; value <= 256; value += 3) {
+            int[] src = new int[256];
+            for (int v = 0; v < 256; ++v) {
+                src[v] = Argb.argb(255 - v, v, (v * 7) & 0xFF, 255 - v);
+            }
+            int[] expected = new int[256];
+            for (int v = 0; v < 256; ++v) {
+                expected[v] = BrightnessEffect.brighten(src[v], value);
+            }
+            int[] actual = new int[256];
+            new BrightnessEffect(value).filter(src, 0, actual, 0, 256, 0, 0);
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+}
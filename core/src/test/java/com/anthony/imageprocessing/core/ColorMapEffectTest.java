@@ -0,0 +1,88 @@
+package com.anthony.imageprocessing.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.fail;
+
+public class ColorMapEffectTest {
+
+    @Test
+    public void labCubeMatchesSearchingEveryColor() {
+        check(ColorMapEffect.SPACE_CIELAB, new Random(19));
+    }
+
+    @Test
+    public void yCbCrCubeMatchesSearchingEveryColor() {
+        check(ColorMapEffect.SPACE_YCBCR, new Random(20));
+    }
+
+    /**
+     * Run random palettes over random pixels and over pixels around the
+     * source colors, where tolerance boundaries cut through cells.
+     */
+    private static void check(int space, Random random) {
+        for (int palette = 0; palette < 12; ++palette) {
+            int colors = 1 + random.nextInt(8);
+            int[] from = new int[colors];
+            int[] to = new int[colors];
+            double[] tolerances = new double[colors];
+            for (int k = 0; k < colors; ++k) {
+                from[k] = random.nextInt() | 0xFF000000;
+                to[k] = random.nextInt();
+                tolerances[k] = 2 + random.nextDouble() * 30;
+            }
+            ColorMapEffect effect = new ColorMapEffect(from, to, tolerances, space);
+
+            int[] src = new int[20000];
+            for (int i = 0; i < src.length; ++i) {
+                if (i % 2 == 0) {
+                    src[i] = random.nextInt();
+                } else {
+                    int center = from[random.nextInt(colors)];
+                    src[i] = Argb.argb(random.nextInt(256), near(Argb.red(center), random),
+                            near(Argb.green(center), random), near(Argb.blue(center), random));
+                }
+            }
+            int[] dst = new int[src.length];
+            effect.filter(src, 0, dst, 0, src.length, 0, 0);
+
+            for (int i = 0; i < src.length; ++i) {
+                int expected = bruteForce(src[i], from, to, tolerances, space);
+                if (dst[i] != expected) {
+                    fail("Pixel " + Integer.toHexString(src[i]) + " became " + Integer.toHexString(dst[i])
+                            + ", expected " + Integer.toHexString(expected) + " in space " + space);
+                }
+            }
+        }
+    }
+
+    private static int near(int channel, Random random) {
+        return Math.max(0, Math.min(255, channel + random.nextInt(61) - 30));
+    }
+
+    /**
+     * The replacement of the nearest source color in range, the first of equally near ones.
+     */
+    private static int bruteForce(int pixel, int[] from, int[] to, double[] tolerances, int space) {
+        double[] color = new double[3];
+        double[] source = new double[3];
+        ColorMapEffect.toSpace(space, Argb.red(pixel), Argb.green(pixel), Argb.blue(pixel), color);
+        int nearest = -1;
+        double nearestDistance = Double.MAX_VALUE;
+        for (int k = 0; k < from.length; ++k) {
+            ColorMapEffect.toSpace(space, Argb.red(from[k]), Argb.green(from[k]), Argb.blue(from[k]), source);
+            double d0 = color[0] - source[0];
+            double d1 = color[1] - source[1];
+            double d2 = color[2] - source[2];
+            double distance = d0 * d0 + d1 * d1 + d2 * d2;
+            if (distance <= tolerances[k] * tolerances[k] && distance < nearestDistance) {
+                nearest = k;
+                nearestDistance = distance;
+            }
+        }
+        return nearest < 0 ? pixel : to[nearest];
+    }
+
+}
@@ -0,0 +1,167 @@
+package com.anthony.imageprocessing.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.fail;
+
+public class ConvolutionEngineTest {
+
+    @Test
+    public void compiledKernelsAreWithinOneOfTheDoubleSum() {
+        Random random = new Random(25);
+        Raster src = TestRasters.random(64, 48, random);
+
+        for (int kernel = 0; kernel < 300; ++kernel) {
+            int size = 1 + 2 * random.nextInt(5);
+            boolean integral = random.nextBoolean();
+            double[][] matrix = new double[size][size];
+            double total = 0;
+            for (int i = 0; i < size; ++i) {
+                for (int j = 0; j < size; ++j) {
+                    matrix[i][j] = integral ? random.nextInt(21) - 6
+                            : (random.nextDouble() * 4 - 1) / (random.nextBoolean() ? 1 : 37);
+                    total += matrix[i][j];
+                }
+            }
+            double factor = random.nextInt(3) == 0 || Math.abs(total) < 1e-3
+                    ? random.nextDouble() * 10 + 0.1 : total;
+            double offset = random.nextInt(3) == 0 ? random.nextInt(200) - 50 : 0;
+
+            Raster expected = src.sameSize();
+            Raster actual = src.sameSize();
+            new ConvolutionEffect(matrix, factor, offset).apply(src, expected, 0, src.height);
+            new ConvolutionEngine(matrix, factor, offset).apply(src, actual, 0, src.height);
+            assertInteriorWithin(1, expected, actual, size / 2);
+        }
+    }
+
+    @Test
+    public void integralKernelsMatchTheReferenceExactly() {
+        Random random = new Random(2);
+        Raster src = TestRasters.randomRegion(70, 45, random);
+
+        for (int kernel = 0; kernel < 100; ++kernel) {
+            int size = 1 + 2 * random.nextInt(4);
+            int[][] weights;
+            switch (kernel % 3) {
+                case 0:
+                    // smooth: ones with a heavier center
+                    weights = filled(size, 1);
+                    weights[size / 2][size / 2] = random.nextInt(40);
+                    break;
+                case 1:
+                    // emboss like: corners against the center
+                    weights = filled(size, 0);
+                    weights[0][0] = weights[0][size - 1] = weights[size - 1][0] = weights[size - 1][size - 1] = -1;
+                    weights[size / 2][size / 2] = 4;
+                    break;
+                default:
+                    weights = filled(size, 0);
+                    for (int[] column : weights) {
+                        for (int j = 0; j < size; ++j) {
+                            column[j] = random.nextInt(11) - 4;
+                        }
+                    }
+                    break;
+            }
+
+            double[][] matrix = new double[size][size];
+            int total = 0;
+            for (int i = 0; i < size; ++i) {
+                for (int j = 0; j < size; ++j) {
+                    matrix[i][j] = weights[i][j];
+                    total += weights[i][j];
+                }
+            }
+            double factor = total != 0 && random.nextBoolean() ? total : 1 + random.nextInt(12);
+            if (random.nextInt(4) == 0) {
+                factor = -factor;
+            }
+            double offset = random.nextInt(3) == 0 ? 127 : random.nextInt(5);
+
+            Raster expected = src.sameSize();
+            Raster actual = src.sameSize();
+            new ConvolutionEffect(matrix, factor, offset).apply(src, expected, 0, src.height);
+            new ConvolutionEngine(matrix, factor, offset).apply(src, actual, 0, src.height);
+            assertInteriorWithin(0, expected, actual, size / 2);
+        }
+    }
+
+    @Test
+    public void tinyNormalizedWeightsAreWithinOne() {
+        Random random = new Random(7);
+        Raster src = TestRasters.random(40, 30, random);
+        double[][] matrix = new double[9][9];
+        for (double[] column : matrix) {
+            for (int j = 0; j < column.length; ++j) {
+                column[j] = 1e-4 * (1 + random.nextDouble());
+            }
+        }
+        double factor = 81 * 1.5e-4;
+
+        Raster expected = src.sameSize();
+        Raster actual = src.sameSize();
+        new ConvolutionEffect(matrix, factor, 0).apply(src, expected, 0, src.height);
+        new ConvolutionEngine(matrix, factor, 0).apply(src, actual, 0, src.height);
+        assertInteriorWithin(1, expected, actual, 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void weightOutsideIntIsRejected() {
+        new ConvolutionEngine(new double[][]{{3e9}}, 1, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fractionalWeightTooLargeToScaleIsRejected() {
+        new ConvolutionEngine(new double[][]{{1e7 + 0.5}}, 1, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void overflowingSumIsRejected() {
+        double[][] matrix = new double[9][9];
+        for (double[] column : matrix) {
+            java.util.Arrays.fill(column, 1e6);
+        }
+        new ConvolutionEngine(matrix, 1, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonFiniteWeightIsRejected() {
+        new ConvolutionEngine(new double[][]{{0, 0, 0}, {0, Double.NaN, 0}, {0, 0, 0}}, 1, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroFactorIsRejected() {
+        new ConvolutionEngine(new double[][]{{1}}, 0, 0);
+    }
+
+    private static int[][] filled(int size, int value) {
+        int[][] weights = new int[size][size];
+        for (int[] column : weights) {
+            java.util.Arrays.fill(column, value);
+        }
+        return weights;
+    }
+
+    /**
+     * Compare R, G, B and alpha of every pixel at least border away from the
+     * edge, where {@link ConvolutionEffect} computes anything.
+     */
+    static void assertInteriorWithin(int tolerance, Raster expected, Raster actual, int border) {
+        for (int y = border; y < expected.height - border; ++y) {
+            for (int x = border; x < expected.width - border; ++x) {
+                int e = expected.getPixel(x, y);
+                int a = actual.getPixel(x, y);
+                for (int shift = 0; shift < 32; shift += 8) {
+                    if (Math.abs(((e >>> shift) & 0xFF) - ((a >>> shift) & 0xFF)) > tolerance) {
+                        fail("Pixel (" + x + ", " + y + ") is " + Integer.toHexString(a) + ", expected "
+                                + Integer.toHexString(e) + " within " + tolerance);
+                    }
+                }
+            }
+        }
+    }
+
+}
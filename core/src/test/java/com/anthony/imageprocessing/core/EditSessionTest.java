@@ -0,0 +1,119 @@
+package com.anthony.imageprocessing.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class EditSessionTest {
+
+    private ParallelExecutor mExecutor;
+    private EditSession mSession;
+    private Raster mSource;
+
+    @Before
+    public void setUp() {
+        mExecutor = new ParallelExecutor(2);
+        mSource = TestRasters.randomRegion(61, 47, new Random(22));
+        mSession = new EditSession(mSource, mExecutor, new BufferPool(1 << 20));
+    }
+
+    @After
+    public void tearDown() {
+        mSession.release();
+        mExecutor.shutdown();
+    }
+
+    @Test
+    public void hueMatchesHueEffect() {
+        for (int level : new int[]{0, 1, 2, 3, 5, 10, 100}) {
+            Raster expected = mSource.sameSize();
+            new HueEffect(level).apply(mSource, expected, 0, mSource.height);
+            Raster actual = mSource.sameSize();
+            mSession.hue(level, actual, null);
+            assertSamePixels("hue " + level, expected, actual);
+        }
+    }
+
+    @Test
+    public void smoothMatchesConvolutionEngine() {
+        for (int size : new int[]{1, 3, 5, 9}) {
+            for (double center : new double[]{0, 1, 2.5, 7, 50}) {
+                double factor = center + size * size - 1;
+                if (factor == 0) {
+                    factor = 1;
+                }
+                double[][] matrix = new double[size][size];
+                for (double[] column : matrix) {
+                    Arrays.fill(column, 1);
+                }
+                matrix[size / 2][size / 2] = center;
+
+                Raster expected = mSource.sameSize();
+                new ConvolutionEngine(matrix, factor, 1).apply(mSource, expected, 0, mSource.height);
+                Raster actual = mSource.sameSize();
+                mSession.smooth(center, size, factor, 1, actual, null);
+                assertSamePixels("smooth " + size + " x " + size + " with center " + center, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void brightnessMatchesChannelLut() {
+        for (int value : new int[]{-200, -1, 0, 40, 255}) {
+            Raster expected = mSource.sameSize();
+            ChannelLut.brightness(value).apply(mSource, expected, 0, mSource.height);
+            Raster actual = mSource.sameSize();
+            mSession.brightness(value, actual, null);
+            assertSamePixels("brightness " + value, expected, actual);
+        }
+    }
+
+    @Test
+    public void cancelledIntermediatesGoBackToThePool() {
+        BufferPool pool = new BufferPool(64L << 20);
+        EditSession session = new EditSession(mSource, mExecutor, pool);
+        Cancellation cancelled = new Cancellation();
+        cancelled.cancel();
+        Raster dst = mSource.sameSize();
+
+        long allocated = 0;
+        for (int round = 0; round < 3; ++round) {
+            try {
+                session.hue(3, dst, cancelled);
+                fail("hue was not cancelled");
+            } catch (CancellationException e) {
+                // expected
+            }
+            try {
+                session.smooth(5, 3, 13, 1, dst, cancelled);
+                fail("smooth was not cancelled");
+            } catch (CancellationException e) {
+                // expected
+            }
+            if (round == 0) {
+                allocated = pool.getAllocatedBytes();
+            }
+        }
+        // later rounds took the intermediates the first one gave back
+        assertEquals(allocated, pool.getAllocatedBytes());
+    }
+
+    private static void assertSamePixels(String what, Raster expected, Raster actual) {
+        for (int y = 0; y < expected.height; ++y) {
+            for (int x = 0; x < expected.width; ++x) {
+                if (expected.getPixel(x, y) != actual.getPixel(x, y)) {
+                    fail(what + ": pixel (" + x + ", " + y + ") is " + Integer.toHexString(actual.getPixel(x, y))
+                            + ", expected " + Integer.toHexString(expected.getPixel(x, y)));
+                }
+            }
+        }
+    }
+
+}
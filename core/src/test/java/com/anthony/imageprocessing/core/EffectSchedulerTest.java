@@ -0,0 +1,240 @@
+package com.anthony.imageprocessing.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EffectSchedulerTest {
+
+    private EffectScheduler mScheduler;
+
+    @Before
+    public void setUp() {
+        mScheduler = new EffectScheduler();
+    }
+
+    @After
+    public void tearDown() {
+        mScheduler.shutdown();
+    }
+
+    @Test
+    public void failuresReachTheJobAndLaterJobsStillRun() throws InterruptedException {
+        final RuntimeException thrown = new IllegalStateException("broken effect");
+        final AtomicReference<Throwable> reported = new AtomicReference<Throwable>();
+        final CountDownLatch done = new CountDownLatch(2);
+
+        mScheduler.submit(null, EffectScheduler.PRIORITY_INTERACTIVE, new Job() {
+            @Override
+            public void run(Cancellation cancellation) {
+                throw thrown;
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                reported.set(e);
+                done.countDown();
+            }
+        });
+        mScheduler.submit(null, EffectScheduler.PRIORITY_INTERACTIVE, new Job() {
+            @Override
+            public void run(Cancellation cancellation) {
+                done.countDown();
+            }
+        });
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertSame(thrown, reported.get());
+    }
+
+    @Test
+    public void errorsReachTheJobAndLaterJobsStillRun() throws InterruptedException {
+        final Error thrown = new OutOfMemoryError("no room for the photo");
+        final AtomicReference<Throwable> reported = new AtomicReference<Throwable>();
+        final CountDownLatch done = new CountDownLatch(2);
+
+        mScheduler.submit(null, EffectScheduler.PRIORITY_INTERACTIVE, new Job() {
+            @Override
+            public void run(Cancellation cancellation) {
+                throw thrown;
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                reported.set(e);
+                done.countDown();
+            }
+        });
+        mScheduler.submit(null, EffectScheduler.PRIORITY_INTERACTIVE, new Job() {
+            @Override
+            public void run(Cancellation cancellation) {
+                done.countDown();
+            }
+        });
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertSame(thrown, reported.get());
+    }
+
+    @Test
+    public void submittingCancelsTheWaitingJobOfTheGroup() throws InterruptedException {
+        CountDownLatch release = block();
+        final AtomicInteger runs = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        Cancellation first = mScheduler.submit("screen", EffectScheduler.PRIORITY_INTERACTIVE, new Job() {
+            @Override
+            public void run(Cancellation cancellation) {
+                runs.incrementAndGet();
+            }
+        });
+        Cancellation second = mScheduler.submit("screen", EffectScheduler.PRIORITY_INTERACTIVE, new Job() {
+            @Override
+            public void run(Cancellation cancellation) {
+                done.countDown();
+            }
+        });
+        assertTrue(first.isCancelled());
+        assertFalse(second.isCancelled());
+        assertEquals(1, mScheduler.getQueueLength());
+
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    public void submittingCancelsTheRunningJobOfTheGroup() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch gaveUp = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+
+        mScheduler.submit("screen", EffectScheduler.PRIORITY_INTERACTIVE, new Job() {
+            @Override
+            public void run(Cancellation cancellation) {
+                started.countDown();
+                long end = System.currentTimeMillis() + 10000;
+                while (System.currentTimeMillis() < end) {
+                    if (cancellation.isCancelled()) {
+                        gaveUp.countDown();
+                        cancellation.check();
+                    }
+                    Thread.yield();
+                }
+            }
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        mScheduler.submit("screen", EffectScheduler.PRIORITY_INTERACTIVE, new Job() {
+            @Override
+            public void run(Cancellation cancellation) {
+                done.countDown();
+            }
+        });
+
+        assertTrue(gaveUp.await(10, TimeUnit.SECONDS));
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void moreUrgentJobsRunFirst() throws InterruptedException {
+        CountDownLatch release = block();
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch done = new CountDownLatch(3);
+
+        mScheduler.submit(null, EffectScheduler.PRIORITY_BACKGROUND, record("background", order, done));
+        mScheduler.submit(null, EffectScheduler.PRIORITY_INTERACTIVE, record("interactive", order, done));
+        mScheduler.submit(null, EffectScheduler.PRIORITY_INTERACTIVE, record("interactive later", order, done));
+
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("interactive", "interactive later", "background"), order);
+    }
+
+    @Test
+    public void givingUpIsNotAFailure() throws InterruptedException {
+        final AtomicReference<Throwable> reported = new AtomicReference<Throwable>();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        Cancellation cancellation = mScheduler.submit("screen", EffectScheduler.PRIORITY_INTERACTIVE, new Job() {
+            @Override
+            public void run(Cancellation cancellation) {
+                cancellation.cancel();
+                cancellation.check();
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                reported.set(e);
+            }
+        });
+        mScheduler.submit(null, EffectScheduler.PRIORITY_BACKGROUND, new Job() {
+            @Override
+            public void run(Cancellation cancellation) {
+                done.countDown();
+            }
+        });
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(cancellation.isCancelled());
+        assertNull(reported.get());
+    }
+
+    /**
+     * Occupy the worker until the returned latch is counted down, so jobs submitted meanwhile queue up.
+     */
+    private CountDownLatch block() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        mScheduler.submit(null, EffectScheduler.PRIORITY_INTERACTIVE, new Job() {
+            @Override
+            public void run(Cancellation cancellation) {
+                started.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        return release;
+    }
+
+    private static Job record(final String name, final List<String> order, final CountDownLatch done) {
+        return new Job() {
+            @Override
+            public void run(Cancellation cancellation) {
+                order.add(name);
+                done.countDown();
+            }
+        };
+    }
+
+    /**
+     * A job that fails the test if it fails.
+     */
+    private abstract static class Job implements EffectScheduler.Job {
+
+        @Override
+        public void onFailure(Throwable e) {
+            throw new AssertionError(e);
+        }
+
+    }
+
+}
@@ -0,0 +1,129 @@
+package com.anthony.imageprocessing.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the accuracy {@link FastHsv} documents against the float conversion
+ * of {@link Hsv}: conversions and {@link HueEffect} over every opaque color,
+ * {@link HsvAdjustEffect} on a grid of colors every 3 levels plus 255.
+ */
+public class FastHsvTest {
+
+    // for HsvAdjustEffect, about 650 thousand colors of every alpha
+    private static final int[] LEVELS = grid();
+
+    private static int[] grid() {
+        int[] levels = new int[87];
+        for (int i = 0; i < 86; ++i) {
+            levels[i] = 3 * i;
+        }
+        levels[86] = 255;
+        return levels;
+    }
+
+    private static int color(int r, int g, int b) {
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+
+    @Test
+    public void roundTripGivesBackEveryColor() {
+        for (int rgb = 0; rgb < 1 << 24; ++rgb) {
+            int color = 0xFF000000 | rgb;
+            int back = FastHsv.toArgb(0xFF, FastHsv.hue(color), FastHsv.saturation(color), FastHsv.value(color));
+            if (back != color) {
+                fail(Integer.toHexString(color) + " came back as " + Integer.toHexString(back));
+            }
+        }
+    }
+
+    @Test
+    public void floatHsvRoundedToFixedPointGivesTheSameColor() {
+        float[] hsv = new float[3];
+        for (int rgb = 0; rgb < 1 << 24; ++rgb) {
+            int color = 0xFF000000 | rgb;
+            Hsv.fromArgb(color, hsv);
+            int hue = Math.round(hsv[0] / 60 * FastHsv.HUE_SECTOR) % FastHsv.HUE_MAX;
+            int saturation = Math.round(hsv[1] * FastHsv.SAT_ONE);
+            int value = Math.round(hsv[2] * 255);
+            int expected = Hsv.toArgb(0xFF, hsv);
+            int actual = FastHsv.toArgb(0xFF, hue, saturation, value);
+            if (actual != expected) {
+                fail(Integer.toHexString(color) + " gave " + Integer.toHexString(actual) + ", expected "
+                        + Integer.toHexString(expected));
+            }
+        }
+    }
+
+    @Test
+    public void hueEffectMatchesTheFloatConversionForEveryColor() {
+        HueEffect[] effects = new HueEffect[11];
+        for (int level = 0; level < effects.length; ++level) {
+            effects[level] = new HueEffect(level);
+        }
+        // a row of 256 blues at a time, converted to float HSV once for every effect
+        int[] pixels = new int[256];
+        int[] out = new int[256];
+        float[][] hsv = new float[256][3];
+        float[] adjusted = new float[3];
+        for (int rg = 0; rg < 1 << 16; ++rg) {
+            for (int b = 0; b < 256; ++b) {
+                pixels[b] = 0xFF000000 | (rg << 8) | b;
+                Hsv.fromArgb(pixels[b], hsv[b]);
+            }
+            for (int level = 0; level < effects.length; ++level) {
+                effects[level].filter(pixels, 0, out, 0, pixels.length, 0, 0);
+                for (int b = 0; b < 256; ++b) {
+                    // the float HueEffect this replaced
+                    adjusted[0] = Math.max(0f, Math.min(hsv[b][0] * level, 360f));
+                    adjusted[1] = hsv[b][1];
+                    adjusted[2] = hsv[b][2];
+                    int expected = pixels[b] | Hsv.toArgb(0xFF, adjusted);
+                    if (out[b] != expected) {
+                        fail("level " + level + ", " + Integer.toHexString(pixels[b]) + " gave "
+                                + Integer.toHexString(out[b]) + ", expected " + Integer.toHexString(expected));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void hsvAdjustIsWithinOneOfTheFloatConversion() {
+        float[][] adjustments = {{0, 1, 1}, {30, 1, 1}, {-75, 0.5f, 1.2f}, {180, 1.5f, 0.8f}, {300, 0, 1}};
+        int[] pixels = new int[LEVELS.length];
+        int[] out = new int[LEVELS.length];
+        float[] hsv = new float[3];
+        for (float[] adjustment : adjustments) {
+            HsvAdjustEffect effect = new HsvAdjustEffect(adjustment[0], adjustment[1], adjustment[2]);
+            for (int r : LEVELS) {
+                for (int g : LEVELS) {
+                    for (int i = 0; i < LEVELS.length; ++i) {
+                        // vary alpha too, it has to be kept
+                        pixels[i] = (LEVELS[i] << 24) | (color(r, g, LEVELS[i]) & 0xFFFFFF);
+                    }
+                    effect.filter(pixels, 0, out, 0, pixels.length, 0, 0);
+                    for (int i = 0; i < pixels.length; ++i) {
+                        Hsv.fromArgb(pixels[i], hsv);
+                        float hue = (hsv[0] + adjustment[0]) % 360;
+                        hsv[0] = hue < 0 ? hue + 360 : hue;
+                        hsv[1] = Math.min(1f, hsv[1] * adjustment[1]);
+                        hsv[2] = Math.min(1f, hsv[2] * adjustment[2]);
+                        assertWithinOne(Hsv.toArgb(pixels[i] >>> 24, hsv), out[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void assertWithinOne(int expected, int actual) {
+        for (int shift = 0; shift < 32; shift += 8) {
+            if (Math.abs(((expected >>> shift) & 0xFF) - ((actual >>> shift) & 0xFF)) > 1) {
+                fail(Integer.toHexString(actual) + " is not within 1 of " + Integer.toHexString(expected));
+            }
+        }
+    }
+
+}
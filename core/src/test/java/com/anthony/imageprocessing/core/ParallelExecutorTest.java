@@ -0,0 +1,72 @@
+package com.anthony.imageprocessing.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class ParallelExecutorTest {
+
+    private ParallelExecutor mExecutor;
+
+    @Before
+    public void setUp() {
+        mExecutor = new ParallelExecutor(4);
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdown();
+    }
+
+    @Test
+    public void errorsAreRethrownOnceEveryStripStopped() {
+        final AtomicInteger started = new AtomicInteger();
+        final AtomicInteger finished = new AtomicInteger();
+        final Error thrown = new OutOfMemoryError("no room for the scratch rows");
+
+        try {
+            mExecutor.run(new ParallelExecutor.Strip() {
+                @Override
+                public void apply(int top, int bottom) {
+                    started.incrementAndGet();
+                    if (top <= 128 && 128 < bottom) {
+                        throw thrown;
+                    }
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {
+                        throw new AssertionError(e);
+                    }
+                    finished.incrementAndGet();
+                }
+            }, 0, 256, null);
+            fail("the error was swallowed");
+        } catch (OutOfMemoryError e) {
+            assertSame(thrown, e);
+        }
+        assertEquals(started.get() - 1, finished.get());
+    }
+
+    @Test
+    public void everyRowIsDoneOnceWithACancellation() {
+        final int[] counts = new int[1000];
+        mExecutor.run(new ParallelExecutor.Strip() {
+            @Override
+            public void apply(int top, int bottom) {
+                for (int y = top; y < bottom; ++y) {
+                    ++counts[y];
+                }
+            }
+        }, 0, counts.length, new Cancellation(), 50);
+        for (int y = 0; y < counts.length; ++y) {
+            assertEquals("row " + y, 1, counts[y]);
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.anthony.imageprocessing.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ResamplerTest {
+
+    private static final int[] FILTERS = {Resampler.FILTER_AREA, Resampler.FILTER_LANCZOS};
+
+    // source and destination sizes: whole and fractional shrinking, growing, and both at once
+    private static final int[][] SIZES = {
+            {64, 48, 16, 12},
+            {64, 48, 21, 13},
+            {37, 29, 36, 30},
+            {10, 7, 23, 17},
+            {3, 2, 20, 9},
+            {1, 1, 4, 3},
+            {50, 4, 7, 31},
+    };
+
+    @Test
+    public void flatImagesStayFlat() {
+        // extremes too, where the negative Lanczos lobes would over- or undershoot
+        int[] colors = {0xFF000000, 0xFFFFFFFF, 0x00000000, 0x80FF0000, 0xFF00FF00, 0x7F0000FF, 0xC8123456};
+        for (int filter : FILTERS) {
+            for (int[] size : SIZES) {
+                for (int color : colors) {
+                    Raster src = Raster.create(size[0], size[1]);
+                    Arrays.fill(src.pixels, color);
+                    Raster dst = Resampler.resize(src, size[2], size[3], filter);
+                    for (int pixel : dst.pixels) {
+                        if (pixel != color) {
+                            fail("Filter " + filter + " made " + Integer.toHexString(color) + " "
+                                    + Integer.toHexString(pixel) + " at " + Arrays.toString(size));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void wholeFactorAreaMatchesThePlainAverage() {
+        Random random = new Random(24);
+        int[][] factors = {{2, 2}, {4, 4}, {3, 2}, {1, 5}, {16, 16}};
+        for (int[] factor : factors) {
+            int width = 7;
+            int height = 5;
+            Raster src = TestRasters.randomRegion(width * factor[0], height * factor[1], random);
+            Raster dst = Resampler.resize(src, width, height, Resampler.FILTER_AREA);
+
+            int count = factor[0] * factor[1];
+            for (int y = 0; y < height; ++y) {
+                for (int x = 0; x < width; ++x) {
+                    int expected = 0;
+                    for (int shift = 0; shift < 32; shift += 8) {
+                        int sum = 0;
+                        for (int j = 0; j < factor[1]; ++j) {
+                            for (int i = 0; i < factor[0]; ++i) {
+                                sum += (src.getPixel(x * factor[0] + i, y * factor[1] + j) >>> shift) & 0xFF;
+                            }
+                        }
+                        expected |= ((sum + count / 2) / count) << shift;
+                    }
+                    assertEquals("factor " + Arrays.toString(factor) + " at (" + x + ", " + y + ")",
+                            expected, dst.getPixel(x, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void stripsOnSeveralThreadsMatchOneThread() {
+        Random random = new Random(5);
+        ParallelExecutor executor = new ParallelExecutor(4);
+        try {
+            int[][] sizes = {{400, 300, 133, 97}, {300, 200, 150, 100}, {120, 90, 311, 257}};
+            for (int filter : FILTERS) {
+                for (int[] size : sizes) {
+                    Raster src = TestRasters.random(size[0], size[1], random);
+                    Raster expected = Resampler.resize(src, size[2], size[3], filter);
+
+                    Raster parallel = Raster.create(size[2], size[3]);
+                    Resampler.resize(src, parallel, filter, executor, null);
+                    assertArrayEquals(expected.pixels, parallel.pixels);
+
+                    // a cancellation cuts every strip into pieces, each refilling its ring of rows
+                    Raster pieces = Raster.create(size[2], size[3]);
+                    Resampler.resize(src, pieces, filter, executor, new Cancellation());
+                    assertArrayEquals(expected.pixels, pieces.pixels);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void growingByFractionsStaysInsideTheSource() {
+        Random random = new Random(11);
+        for (int filter : FILTERS) {
+            for (int[] size : SIZES) {
+                // a region reads the same as its copy only if nothing outside it is touched
+                Raster region = TestRasters.randomRegion(size[0], size[1], random);
+                Raster fromRegion = Resampler.resize(region, size[2], size[3], filter);
+                Raster fromCopy = Resampler.resize(region.copy(), size[2], size[3], filter);
+                assertArrayEquals(fromCopy.pixels, fromRegion.pixels);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.anthony.imageprocessing.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class ResultCacheTest {
+
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = File.createTempFile("results", "");
+        mDirectory.delete();
+        mDirectory.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void spilledResultsAreFoundAfterARestart() {
+        Random random = new Random(12);
+        Raster first = TestRasters.random(20, 10, random);
+        Raster second = TestRasters.random(20, 10, random);
+        // keys as ImageProcessor makes them for the color map, with characters no file name should have
+        String firstKey = ResultCache.key(1, "colorMap", Arrays.toString(new int[]{1, 2}), "[3, 4]");
+        String secondKey = ResultCache.key(1, "colorMap", Arrays.toString(new int[]{1, 2}), "[3, 5]");
+
+        // room for one result in memory, so putting the second spills the first
+        ResultCache cache = new ResultCache(4 * 20 * 10, mDirectory, 1 << 20);
+        cache.put(firstKey, first);
+        cache.put(secondKey, second);
+        assertEquals(1, cache.getEvictions());
+
+        ResultCache restarted = new ResultCache(4 * 20 * 10, mDirectory, 1 << 20);
+        Raster found = restarted.get(firstKey);
+        assertNotNull(found);
+        assertArrayEquals(first.pixels, found.pixels);
+        assertEquals(1, restarted.getDiskHits());
+        assertNull(restarted.get(secondKey));
+    }
+
+    @Test
+    public void clearDeletesEveryFile() {
+        Random random = new Random(13);
+        ResultCache cache = new ResultCache(0, mDirectory, 1 << 20);
+        cache.put("a b", TestRasters.random(8, 8, random));
+        cache.put("a,b", TestRasters.random(8, 8, random));
+        assertEquals(2, mDirectory.listFiles().length / 2);
+
+        cache.clear();
+        assertEquals(0, mDirectory.listFiles().length);
+        assertEquals(0, cache.getDiskBytes());
+    }
+
+}
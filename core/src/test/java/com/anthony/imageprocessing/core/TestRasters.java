@@ -0,0 +1,32 @@
+package com.anthony.imageprocessing.core;
+
+import java.util.Random;
+
+/**
+ * Rasters for the tests to run effects on.
+ */
+final class TestRasters {
+
+    private TestRasters() {
+    }
+
+    /**
+     * @return a raster of uniformly random ARGB pixels
+     */
+    static Raster random(int width, int height, Random random) {
+        Raster raster = Raster.create(width, height);
+        for (int i = 0; i < raster.pixels.length; ++i) {
+            raster.pixels[i] = random.nextInt();
+        }
+        return raster;
+    }
+
+    /**
+     * @return a view of a random raster that is neither at offset 0 nor tightly
+     * packed, so that tests notice effects ignoring offset or stride
+     */
+    static Raster randomRegion(int width, int height, Random random) {
+        return random(width + 5, height + 3, random).region(3, 2, width, height);
+    }
+
+}